@@ -2,28 +2,47 @@ package cn.popcraft.invitesystem;
 
 import cn.popcraft.invitesystem.command.InviteCommand;
 import cn.popcraft.invitesystem.command.InviteTabCompleter;
+import cn.popcraft.invitesystem.config.PluginSettings;
 import cn.popcraft.invitesystem.database.DatabaseManager;
+import cn.popcraft.invitesystem.listener.ItemsAdderListener;
 import cn.popcraft.invitesystem.listener.PlayerJoinListener;
+import cn.popcraft.invitesystem.listener.PlayerSessionListener;
 import cn.popcraft.invitesystem.manager.AntiCheatManager;
 import cn.popcraft.invitesystem.manager.ClaimManager;
 import cn.popcraft.invitesystem.manager.InfoManager;
 import cn.popcraft.invitesystem.manager.InviteManager;
+import cn.popcraft.invitesystem.manager.RateLimitManager;
+import cn.popcraft.invitesystem.manager.SessionManager;
+import cn.popcraft.invitesystem.reward.RewardDispatcher;
 import cn.popcraft.invitesystem.reward.RewardManager;
 import cn.popcraft.invitesystem.task.CleanupTask;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 邀请系统主类
  */
 public class InviteSystem extends JavaPlugin {
     private static InviteSystem instance;
+    private volatile PluginSettings settings;
     private DatabaseManager databaseManager;
     private RewardManager rewardManager;
+    private RewardDispatcher rewardDispatcher;
     private InviteManager inviteManager;
     private ClaimManager claimManager;
     private InfoManager infoManager;
     private AntiCheatManager antiCheatManager;
+    private SessionManager sessionManager;
+    private RateLimitManager rateLimitManager;
     private CleanupTask cleanupTask;
+    private BukkitTask codeFilterTask;
+    private BukkitTask antiCheatTask;
 
     @Override
     public void onEnable() {
@@ -31,20 +50,28 @@ public class InviteSystem extends JavaPlugin {
         
         // 保存默认配置文件
         saveDefaultConfig();
+        settings = PluginSettings.load(getConfig(), getLogger());
         
         // 初始化数据库
         databaseManager = new DatabaseManager(this);
-        databaseManager.init();
+        if (!databaseManager.init()) {
+            // 存储结构的数据可能不一致，停止加载，避免继续写入
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
         
         // 初始化奖励管理器
         rewardManager = new RewardManager(this);
-        rewardManager.loadRewardsFromConfig();
+        rewardManager.loadRewardsFromConfig(getConfig());
+        rewardDispatcher = new RewardDispatcher(this);
         
         // 初始化其他管理器
         inviteManager = new InviteManager(this);
         claimManager = new ClaimManager(this);
         infoManager = new InfoManager(this);
         antiCheatManager = new AntiCheatManager(this);
+        sessionManager = new SessionManager(this);
+        rateLimitManager = new RateLimitManager(this);
         
         // 注册命令
         registerCommands();
@@ -54,12 +81,21 @@ public class InviteSystem extends JavaPlugin {
         
         // 启动定时清理任务
         startCleanupTask();
+        startCodeFilterTask();
+        startAntiCheatTask();
+        startRewardDispatcher();
         
         getLogger().info("InviteSystem插件已启用!");
     }
 
     @Override
     public void onDisable() {
+        // 发放队列中剩余的奖励
+        if (rewardDispatcher != null) {
+            rewardDispatcher.cancel();
+            rewardDispatcher.flush();
+        }
+        
         // 关闭数据库连接
         if (databaseManager != null) {
             databaseManager.close();
@@ -69,6 +105,17 @@ public class InviteSystem extends JavaPlugin {
         if (cleanupTask != null) {
             cleanupTask.cancel();
         }
+        if (codeFilterTask != null) {
+            codeFilterTask.cancel();
+        }
+        if (antiCheatTask != null) {
+            antiCheatTask.cancel();
+        }
+        
+        // 保存防作弊状态，重启后载入
+        if (antiCheatManager != null) {
+            antiCheatManager.saveSnapshot();
+        }
         
         getLogger().info("InviteSystem插件已禁用!");
     }
@@ -77,6 +124,44 @@ public class InviteSystem extends JavaPlugin {
         return instance;
     }
     
+    public PluginSettings getSettings() {
+        return settings;
+    }
+    
+    /**
+     * 在异步线程中重新读取 config.yml 并构建配置快照，完成后在主线程整体替换
+     * 不修改 Bukkit 的插件配置对象；配置文件格式错误时保留当前配置
+     * @return 新的配置快照，在主线程完成
+     */
+    public CompletableFuture<PluginSettings> reloadSettings() {
+        CompletableFuture<PluginSettings> future = new CompletableFuture<>();
+        getServer().getScheduler().runTaskAsynchronously(this, () -> {
+            YamlConfiguration config = new YamlConfiguration();
+            PluginSettings loaded;
+            try {
+                config.load(new File(getDataFolder(), "config.yml"));
+                loaded = PluginSettings.load(config, getLogger());
+            } catch (IOException | InvalidConfigurationException e) {
+                getLogger().warning("Failed to reload config.yml, keeping current settings: " + e.getMessage());
+                getServer().getScheduler().runTask(this, () -> future.completeExceptionally(e));
+                return;
+            }
+            getServer().getScheduler().runTask(this, () -> {
+                PluginSettings previous = settings;
+                settings = loaded;
+                rewardManager.loadRewardsFromConfig(config);
+                antiCheatManager.loadLimits();
+                rateLimitManager.loadConfig();
+                sessionManager.loadConfig();
+                if (loaded.getCodeFilterRebuildMinutes() != previous.getCodeFilterRebuildMinutes()) {
+                    startCodeFilterTask();
+                }
+                future.complete(loaded);
+            });
+        });
+        return future;
+    }
+    
     public DatabaseManager getDatabaseManager() {
         return databaseManager;
     }
@@ -84,6 +169,10 @@ public class InviteSystem extends JavaPlugin {
     public RewardManager getRewardManager() {
         return rewardManager;
     }
+
+    public RewardDispatcher getRewardDispatcher() {
+        return rewardDispatcher;
+    }
     
     public InviteManager getInviteManager() {
         return inviteManager;
@@ -101,6 +190,14 @@ public class InviteSystem extends JavaPlugin {
         return antiCheatManager;
     }
     
+    public SessionManager getSessionManager() {
+        return sessionManager;
+    }
+    
+    public RateLimitManager getRateLimitManager() {
+        return rateLimitManager;
+    }
+    
     private void registerCommands() {
         getCommand("invite").setExecutor(new InviteCommand(this));
         getCommand("invite").setTabCompleter(new InviteTabCompleter(this));
@@ -108,6 +205,11 @@ public class InviteSystem extends JavaPlugin {
     
     private void registerListeners() {
         getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerSessionListener(this), this);
+        if (rewardManager.isItemsAdderEnabled()) {
+            // ItemsAdder 加载完数据后解析奖励物品；未安装 ItemsAdder 时不能加载事件类
+            getServer().getPluginManager().registerEvents(new ItemsAdderListener(this), this);
+        }
     }
     
     private void startCleanupTask() {
@@ -115,4 +217,38 @@ public class InviteSystem extends JavaPlugin {
         cleanupTask = new CleanupTask(this);
         cleanupTask.runTaskTimerAsynchronously(this, 0L, 20L * 60 * 60); // 立即开始，每小时执行一次
     }
-}
\ No newline at end of file
+    
+    private void startCodeFilterTask() {
+        // 定期重建邀请码过滤器，去掉已删除的邀请码（重载配置时按新的间隔重新安排）
+        if (codeFilterTask != null) {
+            codeFilterTask.cancel();
+            codeFilterTask = null;
+        }
+        long minutes = settings.getCodeFilterRebuildMinutes();
+        if (databaseManager.getInviteCodeDAO().getFilter() == null || minutes <= 0) {
+            return;
+        }
+        long period = 20L * 60 * minutes;
+        codeFilterTask = getServer().getScheduler().runTaskTimerAsynchronously(this,
+                () -> databaseManager.getInviteCodeDAO().getFilter().rebuildAsync(), period, period);
+    }
+    
+    private void startAntiCheatTask() {
+        // 每分钟清理冷却窗口已过去的防作弊记录和已补满的限流记录，并按间隔异步保存快照
+        long[] elapsed = {0};
+        antiCheatTask = getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
+            antiCheatManager.sweep();
+            rateLimitManager.sweep();
+            long snapshotMinutes = settings.getAntiCheatSnapshotMinutes();
+            if (snapshotMinutes > 0 && ++elapsed[0] >= snapshotMinutes) {
+                elapsed[0] = 0;
+                antiCheatManager.saveSnapshot();
+            }
+        }, 20L * 60, 20L * 60);
+    }
+    
+    private void startRewardDispatcher() {
+        // 每 tick 在时间预算内发放队列中的奖励
+        rewardDispatcher.runTaskTimer(this, 1L, 1L);
+    }
+}
@@ -1,15 +1,30 @@
 package cn.popcraft.invitesystem.command;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.config.PluginSettings;
 import cn.popcraft.invitesystem.data.InviteCode;
+import cn.popcraft.invitesystem.data.PageCursor;
+import cn.popcraft.invitesystem.database.DatabaseExecutor;
+import cn.popcraft.invitesystem.database.FirstJoinBatcher;
+import cn.popcraft.invitesystem.database.FirstJoinIndex;
+import cn.popcraft.invitesystem.database.InviteCodeDAO;
+import cn.popcraft.invitesystem.database.InviteCodeFilter;
+import cn.popcraft.invitesystem.database.InviteCodeSequence;
+import cn.popcraft.invitesystem.database.WriteBatcher;
+import cn.popcraft.invitesystem.manager.AntiCheatManager;
+import cn.popcraft.invitesystem.manager.RateLimitManager;
+import cn.popcraft.invitesystem.manager.SessionManager;
+import cn.popcraft.invitesystem.reward.RewardDispatcher;
+import cn.popcraft.invitesystem.util.BloomFilter;
 import cn.popcraft.invitesystem.util.CodeGenerator;
-import cn.popcraft.invitesystem.util.TimeUtil;
+import cn.popcraft.invitesystem.util.LoadingCache;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -17,6 +32,9 @@ import java.util.concurrent.CompletableFuture;
  * 邀请系统命令执行器
  */
 public class InviteCommand implements CommandExecutor {
+    // 随机邀请码冲突时的最大尝试次数
+    private static final int MAX_CREATE_ATTEMPTS = 10;
+
     private final InviteSystem plugin;
 
     public InviteCommand(InviteSystem plugin) {
@@ -30,7 +48,14 @@ public class InviteCommand implements CommandExecutor {
             return true;
         }
 
-        switch (args[0].toLowerCase()) {
+        String subCommand = args[0].toLowerCase();
+
+        // 过于频繁的请求在执行任何数据库操作之前拒绝
+        if (sender instanceof Player && !plugin.getRateLimitManager().tryAcquire((Player) sender, subCommand)) {
+            return true;
+        }
+
+        switch (subCommand) {
             case "create":
                 handleCreateCommand(sender, args);
                 break;
@@ -49,6 +74,12 @@ public class InviteCommand implements CommandExecutor {
             case "reload":
                 handleReloadCommand(sender, args);
                 break;
+            case "stats":
+                handleStatsCommand(sender, args);
+                break;
+            case "recount":
+                handleRecountCommand(sender, args);
+                break;
             default:
                 sender.sendMessage("§c未知的子命令。使用 /invite 查看帮助。");
                 break;
@@ -62,10 +93,12 @@ public class InviteCommand implements CommandExecutor {
         sender.sendMessage("§a/invite create [code] §7- 创建邀请码");
         sender.sendMessage("§a/invite submit <code> §7- 提交邀请码");
         sender.sendMessage("§a/invite claim §7- 领取奖励");
-        sender.sendMessage("§a/invite info §7- 查看邀请信息");
+        sender.sendMessage("§a/invite info [inviter|invitee] [页码] §7- 查看邀请信息");
         if (sender.hasPermission("invite.admin")) {
             sender.sendMessage("§a/invite list §7- 查看所有邀请记录");
             sender.sendMessage("§a/invite reload §7- 重新加载配置");
+            sender.sendMessage("§a/invite stats §7- 查看运行状态");
+            sender.sendMessage("§a/invite recount §7- 重新统计邀请计数");
         }
         sender.sendMessage("§e================================");
     }
@@ -80,7 +113,7 @@ public class InviteCommand implements CommandExecutor {
         UUID playerUUID = player.getUniqueId();
         
         // 检查权限
-        if (plugin.getConfig().getBoolean("permissions.restrict-code-creation", true) 
+        if (plugin.getSettings().isRestrictCodeCreation()
                 && !player.hasPermission("invite.create")) {
             player.sendMessage("§c你没有权限创建邀请码。");
             return;
@@ -92,42 +125,30 @@ public class InviteCommand implements CommandExecutor {
             return;
         }
 
-        String code;
+        // 检查邀请码是否符合规则
+        if (args.length > 1 && !isValidCode(args[1])) {
+            player.sendMessage("§c邀请码格式不正确，只能包含字母和数字。");
+            return;
+        }
+        
+        // 记录玩家创建邀请码的时间
+        plugin.getAntiCheatManager().recordPlayerCreateInvite(playerUUID);
+        
         if (args.length > 1) {
-            code = args[1];
-            // 检查邀请码是否符合规则
-            if (!isValidCode(code)) {
-                player.sendMessage("§c邀请码格式不正确，只能包含字母和数字。");
-                return;
-            }
-            
-            // 检查邀请码是否已存在
-            try {
-                if (plugin.getDatabaseManager().getInviteCodeDAO().getInviteCode(code).get() != null) {
-                    player.sendMessage("§c邀请码已存在，请使用其他邀请码。");
-                    return;
-                }
-                createInviteCode(player, code);
-            } catch (Exception e) {
-                player.sendMessage("§c检查邀请码时出错，请稍后重试。");
-                e.printStackTrace();
-            }
+            String code = args[1];
+            // 直接插入，邀请码已存在时由主键冲突判断
+            createInviteCode(player, code).whenComplete((result, e) ->
+                    plugin.getServer().getScheduler().runTask(plugin, () -> {
+                        if (e == null && result == InviteCodeDAO.CreateResult.DUPLICATE) {
+                            player.sendMessage("§c邀请码已存在，请使用其他邀请码。");
+                        } else {
+                            sendCreateResult(player, code, e == null ? result : InviteCodeDAO.CreateResult.FAILED);
+                        }
+                    }));
         } else {
-            // 生成随机邀请码
-            int length = plugin.getConfig().getInt("invite.code-length", 8);
-            String finalCode;
-            int attempts = 0;
-            do {
-                finalCode = CodeGenerator.generateCode(length);
-                attempts++;
-                // 防止无限循环
-                if (attempts > 10) {
-                    player.sendMessage("§c生成唯一邀请码失败，请稍后重试。");
-                    return;
-                }
-            } while (isCodeExistsSync(finalCode));
-            
-            createInviteCode(player, finalCode);
+            // 生成邀请码，冲突时换一个重试
+            int length = plugin.getSettings().getCodeLength();
+            createRandomInviteCode(player, length, 1);
         }
     }
     
@@ -135,45 +156,67 @@ public class InviteCommand implements CommandExecutor {
         return code != null && code.matches("[a-zA-Z0-9]+");
     }
     
-    private boolean isCodeExistsSync(String code) {
-        try {
-            // 异步检查数据库中是否已存在该邀请码
-            return plugin.getDatabaseManager().getInviteCodeDAO().getInviteCode(code).get() != null;
-        } catch (Exception e) {
-            plugin.getLogger().severe("Error checking if code exists: " + e.getMessage());
-            return false; // 出错时假设不存在
-        }
+    private void createRandomInviteCode(Player player, int length, int attempt) {
+        // 序号模式下邀请码由序号置换得到，不会与其他生成的邀请码重复；只可能与自定义邀请码冲突
+        InviteCodeSequence sequence = plugin.getDatabaseManager().getInviteCodeSequence();
+        CompletableFuture<String> codeFuture = sequence != null
+                ? sequence.nextCode()
+                : CompletableFuture.completedFuture(CodeGenerator.generateCode(length));
+        
+        codeFuture.whenComplete((code, codeError) -> {
+            if (codeError != null) {
+                plugin.getLogger().severe("Failed to allocate invite code: " + codeError.getMessage());
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                        player.sendMessage("§c邀请码创建失败，请稍后重试。"));
+                return;
+            }
+            createInviteCode(player, code).whenComplete((result, e) -> {
+                // 防止无限重试
+                if (e == null && result == InviteCodeDAO.CreateResult.DUPLICATE && attempt < MAX_CREATE_ATTEMPTS) {
+                    createRandomInviteCode(player, length, attempt + 1);
+                    return;
+                }
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (e == null && result == InviteCodeDAO.CreateResult.DUPLICATE) {
+                        player.sendMessage("§c生成唯一邀请码失败，请稍后重试。");
+                    } else {
+                        sendCreateResult(player, code, e == null ? result : InviteCodeDAO.CreateResult.FAILED);
+                    }
+                });
+            });
+        });
     }
     
-    private void createInviteCode(Player player, String code) {
+    private CompletableFuture<InviteCodeDAO.CreateResult> createInviteCode(Player player, String code) {
         UUID creatorUuid = player.getUniqueId();
         LocalDateTime createdAt = LocalDateTime.now();
         
-        // 记录玩家创建邀请码的时间
-        plugin.getAntiCheatManager().recordPlayerCreateInvite(creatorUuid);
-        
         // 计算过期时间
-        LocalDateTime expiresAt = null;
-        String expireAfter = plugin.getConfig().getString("invite.code-expire-after", "");
-        if (!expireAfter.isEmpty()) {
-            long seconds = TimeUtil.parseTimeStringToSeconds(expireAfter);
-            if (seconds > 0) {
-                expiresAt = createdAt.plusSeconds(seconds);
-            }
-        }
+        PluginSettings settings = plugin.getSettings();
+        long expireAfter = settings.getCodeExpireAfterSeconds();
+        LocalDateTime expiresAt = expireAfter > 0 ? createdAt.plusSeconds(expireAfter) : null;
         
-        int maxUses = plugin.getConfig().getInt("invite.max-uses-per-code", 1);
+        int maxUses = settings.getMaxUsesPerCode();
         
         InviteCode inviteCode = new InviteCode(code, creatorUuid, createdAt, expiresAt, maxUses, 0);
-        
-        plugin.getDatabaseManager().getInviteCodeDAO().createInviteCode(inviteCode).thenAcceptAsync(success -> {
-            if (success) {
-                player.sendMessage("§a邀请码创建成功: §e" + code);
+        SessionManager sessionManager = plugin.getSessionManager();
+        sessionManager.beginWrite(creatorUuid);
+        return plugin.getDatabaseManager().getInviteCodeDAO().createInviteCode(inviteCode).whenComplete((result, e) -> {
+            if (e == null && result == InviteCodeDAO.CreateResult.CREATED) {
+                sessionManager.onCodeCreated(inviteCode);
             } else {
-                player.sendMessage("§c邀请码创建失败，请稍后重试。");
+                sessionManager.endWrite(creatorUuid);
             }
         });
     }
+    
+    private void sendCreateResult(Player player, String code, InviteCodeDAO.CreateResult result) {
+        if (result == InviteCodeDAO.CreateResult.CREATED) {
+            player.sendMessage("§a邀请码创建成功: §e" + code);
+        } else {
+            player.sendMessage("§c邀请码创建失败，请稍后重试。");
+        }
+    }
 
     private void handleSubmitCommand(CommandSender sender, String[] args) {
         if (!(sender instanceof Player)) {
@@ -213,8 +256,37 @@ public class InviteCommand implements CommandExecutor {
 
         Player player = (Player) sender;
         
-        // 获取邀请信息
-        plugin.getInfoManager().getPlayerInviteInfo(player);
+        if (args.length < 2) {
+            // 获取邀请概况
+            plugin.getInfoManager().getPlayerInviteInfo(player);
+            return;
+        }
+        
+        boolean isInviter;
+        switch (args[1].toLowerCase()) {
+            case "inviter":
+                isInviter = true;
+                break;
+            case "invitee":
+                isInviter = false;
+                break;
+            default:
+                player.sendMessage("§c用法: /invite info [inviter|invitee] [页码]");
+                return;
+        }
+        
+        int page = 1;
+        if (args.length > 2) {
+            try {
+                page = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                player.sendMessage("§c页码必须是数字。");
+                return;
+            }
+        }
+        
+        // 按页查看邀请记录
+        plugin.getInfoManager().getPlayerInviteDetails(player, isInviter, page);
     }
 
     private void handleListCommand(CommandSender sender, String[] args) {
@@ -235,7 +307,13 @@ public class InviteCommand implements CommandExecutor {
             try {
                 page = Integer.parseInt(args[1]);
             } catch (NumberFormatException e) {
-                player.sendMessage("§c页码必须是数字。");
+                // 不是页码时按翻页游标处理
+                PageCursor cursor = PageCursor.decode(args[1]);
+                if (cursor == null) {
+                    player.sendMessage("§c页码必须是数字。");
+                    return;
+                }
+                plugin.getInfoManager().getAllInviteRecords(player, cursor);
                 return;
             }
         }
@@ -250,8 +328,113 @@ public class InviteCommand implements CommandExecutor {
             return;
         }
 
-        plugin.reloadConfig();
-        plugin.getRewardManager().loadRewardsFromConfig();
-        sender.sendMessage("§a配置已重新加载。");
+        // 在异步线程读取配置文件，完成后在主线程替换配置快照
+        plugin.reloadSettings().whenComplete((settings, e) -> {
+            if (e != null) {
+                sender.sendMessage("§c配置文件有误，已保留当前配置: " + e.getMessage());
+            } else {
+                sender.sendMessage("§a配置已重新加载。");
+            }
+        });
+    }
+
+    private void handleStatsCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("invite.admin")) {
+            sender.sendMessage("§c你没有权限执行此命令。");
+            return;
+        }
+
+        DatabaseExecutor executor = plugin.getDatabaseManager().getExecutor();
+        sender.sendMessage("§e======= §6InviteSystem 运行状态 §e=======");
+        sender.sendMessage("§a数据库线程: §f" + executor.getActiveCount() + "/" + executor.getThreadCount() + " §7活跃");
+        for (DatabaseExecutor.Lane lane : DatabaseExecutor.Lane.values()) {
+            DatabaseExecutor.LaneStats stats = executor.getStats(lane);
+            sender.sendMessage(String.format("§a%s队列: §f%d/%d §7排队, 已完成 §f%d§7, 已拒绝 §f%d§7, 平均等待 §f%.2fms§7, 最大等待 §f%.2fms",
+                    lane == DatabaseExecutor.Lane.INTERACTIVE ? "交互" : "后台",
+                    stats.getDepth(), stats.getCapacity(), stats.getCompleted(), stats.getRejected(),
+                    stats.getAverageWaitMillis(), stats.getMaxWaitMillis()));
+        }
+        WriteBatcher writeBatcher = plugin.getDatabaseManager().getWriteBatcher();
+        if (writeBatcher != null) {
+            sender.sendMessage(String.format("§a批量写入: §f%d §7待写入, 已提交 §f%d §7批/§f%d §7条, 平均每批 §f%.1f §7条, 平均耗时 §f%.2fms§7, 失败回退 §f%d",
+                    writeBatcher.getPendingCount(), writeBatcher.getFlushedBatches(), writeBatcher.getFlushedWrites(),
+                    writeBatcher.getAverageBatchSize(), writeBatcher.getAverageFlushMillis(), writeBatcher.getFailedBatches()));
+        }
+        InviteCodeFilter codeFilter = plugin.getDatabaseManager().getInviteCodeDAO().getFilter();
+        if (codeFilter != null) {
+            BloomFilter filter = codeFilter.getActiveFilter();
+            if (filter == null) {
+                sender.sendMessage("§a邀请码过滤器: §7正在建立");
+            } else {
+                sender.sendMessage(String.format("§a邀请码过滤器: §f%d/%d §7个邀请码, %d 位 × %d 个哈希, 填充率 §f%.1f%%§7, 估算误判率 §f%.3f%%§7, 拦截 §f%d§7, 放行 §f%d§7, 上次重建 §f%dms",
+                        filter.getInsertions(), codeFilter.getCapacity(), filter.getBitCount(), filter.getHashCount(),
+                        filter.getFillRatio() * 100, filter.getEstimatedFalsePositiveRate() * 100,
+                        codeFilter.getRejected(), codeFilter.getPassed(), codeFilter.getLastBuildMillis()));
+            }
+        }
+        FirstJoinBatcher firstJoinBatcher = plugin.getDatabaseManager().getPlayerFirstJoinDAO().getBatcher();
+        if (firstJoinBatcher != null) {
+            sender.sendMessage(String.format("§a首次加入合并写入: §f%d §7待写入, 已写入 §f%d §7批/§f%d §7人, 平均每批 §f%.1f §7人, 最大 §f%d §7人, 平均耗时 §f%.2fms§7, 平均等待 §f%.2fms§7, 最大等待 §f%.2fms§7, 失败 §f%d",
+                    firstJoinBatcher.getPendingCount(), firstJoinBatcher.getFlushes(), firstJoinBatcher.getFlushedPlayers(),
+                    firstJoinBatcher.getAverageFlushSize(), firstJoinBatcher.getMaxFlushSize(), firstJoinBatcher.getAverageFlushMillis(),
+                    firstJoinBatcher.getAverageLatencyMillis(), firstJoinBatcher.getMaxLatencyMillis(), firstJoinBatcher.getFailedFlushes()));
+        }
+        FirstJoinIndex firstJoinIndex = plugin.getDatabaseManager().getPlayerFirstJoinDAO().getIndex();
+        if (firstJoinIndex != null) {
+            sender.sendMessage(String.format("§a首次加入索引: §f%d/%d §7条, 负载 §f%.1f%%",
+                    firstJoinIndex.size(), firstJoinIndex.getCapacity(),
+                    firstJoinIndex.size() * 100.0 / firstJoinIndex.getCapacity()));
+        }
+        SessionManager sessionManager = plugin.getSessionManager();
+        if (sessionManager.isEnabled()) {
+            sender.sendMessage(String.format("§a玩家会话缓存: §f%d §7人, 命中 §f%d§7, 加载 §f%d§7, 加载中被写入而丢弃 §f%d",
+                    sessionManager.size(), sessionManager.getHits(), sessionManager.getLoads(), sessionManager.getDiscarded()));
+        }
+        LoadingCache<String, InviteCode> codeCache = plugin.getDatabaseManager().getInviteCodeDAO().getCache();
+        if (codeCache != null) {
+            sender.sendMessage(String.format("§a邀请码缓存: §f%d/%d §7条, 命中率 §f%.1f%%§7 (命中 §f%d§7, 其中不存在 §f%d§7, 未命中 §f%d§7), 淘汰 §f%d§7, 过期 §f%d",
+                    codeCache.size(), codeCache.getMaxSize(), codeCache.getHitRate() * 100,
+                    codeCache.getHits(), codeCache.getNegativeHits(), codeCache.getMisses(),
+                    codeCache.getEvictions(), codeCache.getExpirations()));
+        }
+        LoadingCache<UUID, String> nameCache = plugin.getDatabaseManager().getPlayerNameDAO().getCache();
+        sender.sendMessage(String.format("§a玩家名称缓存: §f%d/%d §7条, 命中率 §f%.1f%%§7, 淘汰 §f%d",
+                nameCache.size(), nameCache.getMaxSize(), nameCache.getHitRate() * 100, nameCache.getEvictions()));
+        AntiCheatManager antiCheat = plugin.getAntiCheatManager();
+        sender.sendMessage(String.format("§a防作弊记录: §f网段 %d §7(节点 §f%d§7) / §f玩家 %d §7/ §f冷却 %d §7(每类上限 §f%d§7), 过期清理 §f%d§7, 超限淘汰 §f%d",
+                antiCheat.getIpRecordCount(), antiCheat.getIpNodeCount(), antiCheat.getTrackedPlayerCount(),
+                antiCheat.getCooldownCount(), antiCheat.getMaxEntries(), antiCheat.getExpirations(), antiCheat.getEvictions()));
+        RateLimitManager rateLimit = plugin.getRateLimitManager();
+        if (rateLimit.isEnabled()) {
+            for (Map.Entry<String, RateLimitManager.CommandLimit> entry : rateLimit.getLimits().entrySet()) {
+                RateLimitManager.CommandLimit limit = entry.getValue();
+                sender.sendMessage(String.format("§a限流 %s: §7拒绝 §f玩家 %d §7/ §fIP %d§7, 记录 §f玩家 %d §7/ §fIP %d",
+                        entry.getKey(), limit.getRejectedByPlayer(), limit.getRejectedByIp(),
+                        limit.getTrackedPlayers(), limit.getTrackedIps()));
+            }
+        }
+        RewardDispatcher dispatcher = plugin.getRewardDispatcher();
+        sender.sendMessage(String.format("§a奖励发放队列: §f%d §7个任务/§f%d §7项待发放, 玩家离线留存 §f%d§7, 已发放 §f%d§7, 上个 tick §f%.3fms§7, 平均 §f%.3fms§7, 最大 §f%.3fms§7, 顺延 §f%d §7tick",
+                dispatcher.getQueuedJobs(), dispatcher.getPendingGrants(), dispatcher.getSavedJobs(), dispatcher.getGranted(),
+                dispatcher.getLastTickMillis(), dispatcher.getAverageTickMillis(), dispatcher.getMaxTickMillis(),
+                dispatcher.getCarriedOverTicks()));
+        sender.sendMessage("§e================================");
+    }
+
+    private void handleRecountCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("invite.admin")) {
+            sender.sendMessage("§c你没有权限执行此命令。");
+            return;
+        }
+
+        sender.sendMessage("§e正在根据邀请记录重新统计计数...");
+        plugin.getDatabaseManager().getCounterDAO().rebuildAsync().whenComplete((total, e) ->
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (e != null || total < 0) {
+                        sender.sendMessage("§c重新统计失败，请查看控制台日志。");
+                    } else {
+                        sender.sendMessage("§a重新统计完成，共 §f" + total + " §a条邀请记录。");
+                    }
+                }));
     }
 }
\ No newline at end of file
@@ -38,6 +38,8 @@ public class InviteTabCompleter implements TabCompleter {
             if (sender.hasPermission("invite.admin") || !(sender instanceof Player)) {
                 commands.add("list");
                 commands.add("reload");
+                commands.add("stats");
+                commands.add("recount");
             }
             
             StringUtil.copyPartialMatches(args[0], commands, completions);
@@ -57,6 +59,11 @@ public class InviteTabCompleter implements TabCompleter {
                     commands.add("<邀请码>");
                     StringUtil.copyPartialMatches(args[1], commands, completions);
                     break;
+                case "info":
+                    // info命令可以按身份查看邀请记录
+                    commands.addAll(Arrays.asList("inviter", "invitee"));
+                    StringUtil.copyPartialMatches(args[1], commands, completions);
+                    break;
                 case "list":
                     // list命令可以补全页码
                     if (sender.hasPermission("invite.admin") || !(sender instanceof Player)) {
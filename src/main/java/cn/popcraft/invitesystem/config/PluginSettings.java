@@ -0,0 +1,225 @@
+package cn.popcraft.invitesystem.config;
+
+import cn.popcraft.invitesystem.util.TimeUtil;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * 运行时配置的不可变快照
+ * 启动和 /invite reload 时从 config.yml 构建一次：时间字符串预先解析，不合法的值记录警告后使用默认值；
+ * 各管理器只读取这里的字段，重载时整体替换。
+ * 以下配置决定连接池、线程、表结构或内存结构的创建，只在启动时读取，不在这里，修改后需要重启：
+ * database.type / table-prefix / storage-layout / mysql.* / sqlite.* / executor.* / write-batch.*、
+ * database.first-join-index.* / first-join-batch.*、database.code-cache.* / name-cache.*、
+ * database.code-filter.enabled / bits-per-code / false-positive-rate，
+ * 以及 invite.code-generator / case-sensitive / code-sequence-block-size（顺序生成器的长度也在启动时确定）
+ */
+public final class PluginSettings {
+    private static final Pattern DURATION = Pattern.compile("\\d+[smhd]?", Pattern.CASE_INSENSITIVE);
+
+    // 邀请规则
+    private final long minPlayTimeSeconds;
+    private final long maxPlayTimeSeconds;     // 0 表示无限制
+    private final int codeLength;
+    private final long codeExpireAfterSeconds; // 0 表示永不过期
+    private final int maxUsesPerCode;
+    private final boolean firstTimeOnly;
+    private final boolean notifyUnclaimedOnJoin;
+    private final long createCooldownMillis;   // 0 表示无冷却
+
+    // IP 限制（前缀长度 -> 上限，0 表示该长度没有限制）
+    private final boolean ipLimitEnabled;
+    private final long ipWindowMillis;
+    private final int[] subnetLimits4;
+    private final int[] subnetLimits6;
+
+    // 防作弊状态
+    private final int antiCheatMaxEntries;
+    private final long antiCheatSnapshotMinutes; // 0 表示只在关闭时保存
+
+    // 命令限流
+    private final boolean rateLimitEnabled;
+    private final Map<String, RateLimitBudget> rateLimits;
+
+    // 奖励发放
+    private final long rewardDispatchBudgetNanos;
+    private final boolean aggregateRewards;
+
+    // 缓存
+    private final boolean sessionCacheEnabled;
+    private final long codeFilterRebuildMinutes; // 0 表示不定期重建
+
+    // 其他
+    private final boolean restrictCodeCreation;
+    private final boolean autoCleanupExpiredCodes;
+
+    private PluginSettings(ConfigurationSection config, Logger logger) {
+        this.minPlayTimeSeconds = readDuration(config, logger, "invite.min-play-time", "10m");
+        long maxPlayTime = readDuration(config, logger, "invite.max-play-time", "-1");
+        this.maxPlayTimeSeconds = Math.max(0, maxPlayTime);
+        this.codeLength = readInt(config, logger, "invite.code-length", 8, 4, 32);
+        this.codeExpireAfterSeconds = Math.max(0, readDuration(config, logger, "invite.code-expire-after", ""));
+        this.maxUsesPerCode = readInt(config, logger, "invite.max-uses-per-code", 1, 1, Integer.MAX_VALUE);
+        this.firstTimeOnly = config.getBoolean("invite.only-allow-first-time-users", true);
+        this.notifyUnclaimedOnJoin = config.getBoolean("invite.notify-unclaimed-on-join", true);
+        this.createCooldownMillis = TimeUnit.MINUTES.toMillis(readInt(config, logger, "invite.create-cooldown-minutes", 0, 0, Integer.MAX_VALUE));
+
+        int maxInviteesPerIp = readInt(config, logger, "invite.max-invitees-per-ip", 3, -1, Integer.MAX_VALUE);
+        this.ipLimitEnabled = maxInviteesPerIp != -1;
+        this.ipWindowMillis = TimeUnit.HOURS.toMillis(readInt(config, logger, "invite.ip-cooldown-hours", 24, 0, Integer.MAX_VALUE));
+        this.subnetLimits4 = new int[33];
+        this.subnetLimits6 = new int[129];
+        if (ipLimitEnabled) {
+            subnetLimits4[32] = maxInviteesPerIp;
+            subnetLimits6[128] = maxInviteesPerIp;
+            readSubnetLimits(config, logger, "anti-cheat.subnet-limits.ipv4", subnetLimits4);
+            readSubnetLimits(config, logger, "anti-cheat.subnet-limits.ipv6", subnetLimits6);
+        }
+
+        this.antiCheatMaxEntries = readInt(config, logger, "anti-cheat.max-entries", 50000, 1, Integer.MAX_VALUE);
+        this.antiCheatSnapshotMinutes = readInt(config, logger, "anti-cheat.snapshot-interval-minutes", 5, 0, Integer.MAX_VALUE);
+
+        this.rateLimitEnabled = config.getBoolean("rate-limit.enabled", true);
+        this.rateLimits = readRateLimits(config, "rate-limit.commands");
+
+        this.rewardDispatchBudgetNanos = TimeUnit.MICROSECONDS.toNanos(
+                readInt(config, logger, "reward-dispatch.tick-budget-micros", 500, 1, 50_000));
+        this.aggregateRewards = config.getBoolean("reward-dispatch.aggregate", true);
+
+        this.sessionCacheEnabled = config.getBoolean("database.session-cache.enabled", true);
+        this.codeFilterRebuildMinutes = readInt(config, logger, "database.code-filter.rebuild-interval-minutes", 60, 0, Integer.MAX_VALUE);
+
+        this.restrictCodeCreation = config.getBoolean("permissions.restrict-code-creation", true);
+        this.autoCleanupExpiredCodes = config.getBoolean("misc.auto-cleanup-expired-codes", true);
+    }
+
+    /**
+     * 从配置构建快照
+     * @param config 配置（启动时为插件配置，重载时为重新读取的文件）
+     * @param logger 用于记录不合法的配置项
+     * @return 配置快照
+     */
+    public static PluginSettings load(ConfigurationSection config, Logger logger) {
+        return new PluginSettings(config, logger);
+    }
+
+    // === 读取与校验 ===
+
+    private static long readDuration(ConfigurationSection config, Logger logger, String path, String def) {
+        String value = config.getString(path, def);
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        value = value.trim();
+        if ("-1".equals(value)) {
+            return -1;
+        }
+        if (!DURATION.matcher(value).matches()) {
+            logger.warning("Invalid duration for " + path + ": " + value + ", using " + (def.isEmpty() ? "none" : def));
+            return "-1".equals(def) ? -1 : TimeUtil.parseTimeStringToSeconds(def);
+        }
+        return TimeUtil.parseTimeStringToSeconds(value);
+    }
+
+    private static int readInt(ConfigurationSection config, Logger logger, String path, int def, int min, int max) {
+        int value = config.getInt(path, def);
+        if (value < min || value > max) {
+            logger.warning("Invalid value for " + path + ": " + value + ", using " + def);
+            return def;
+        }
+        return value;
+    }
+
+    private static void readSubnetLimits(ConfigurationSection config, Logger logger, String path, int[] limits) {
+        ConfigurationSection section = config.getConfigurationSection(path);
+        if (section == null) {
+            return;
+        }
+        for (String key : section.getKeys(false)) {
+            try {
+                int len = Integer.parseInt(key.startsWith("/") ? key.substring(1) : key);
+                if (len < 0 || len >= limits.length) {
+                    throw new NumberFormatException();
+                }
+                limits[len] = Math.max(0, section.getInt(key));
+            } catch (NumberFormatException e) {
+                logger.warning("Invalid prefix length in " + path + ": " + key);
+            }
+        }
+    }
+
+    private static Map<String, RateLimitBudget> readRateLimits(ConfigurationSection config, String path) {
+        ConfigurationSection section = config.getConfigurationSection(path);
+        if (section == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, RateLimitBudget> budgets = new TreeMap<>();
+        for (String name : section.getKeys(false)) {
+            budgets.put(name.toLowerCase(), new RateLimitBudget(
+                    Math.max(0, section.getInt(name + ".capacity", 0)),
+                    Math.max(0, section.getLong(name + ".refill-seconds", 0)),
+                    Math.max(0, section.getInt(name + ".ip-capacity", 0)),
+                    Math.max(0, section.getLong(name + ".ip-refill-seconds", 0))));
+        }
+        return Collections.unmodifiableMap(budgets);
+    }
+
+    // === Getters ===
+    public long getMinPlayTimeSeconds() { return minPlayTimeSeconds; }
+    public long getMaxPlayTimeSeconds() { return maxPlayTimeSeconds; }
+    public int getCodeLength() { return codeLength; }
+    public long getCodeExpireAfterSeconds() { return codeExpireAfterSeconds; }
+    public int getMaxUsesPerCode() { return maxUsesPerCode; }
+    public boolean isFirstTimeOnly() { return firstTimeOnly; }
+    public boolean isNotifyUnclaimedOnJoin() { return notifyUnclaimedOnJoin; }
+    public long getCreateCooldownMillis() { return createCooldownMillis; }
+
+    public boolean isIpLimitEnabled() { return ipLimitEnabled; }
+    public long getIpWindowMillis() { return ipWindowMillis; }
+    public int[] getSubnetLimits4() { return Arrays.copyOf(subnetLimits4, subnetLimits4.length); }
+    public int[] getSubnetLimits6() { return Arrays.copyOf(subnetLimits6, subnetLimits6.length); }
+
+    public int getAntiCheatMaxEntries() { return antiCheatMaxEntries; }
+    public long getAntiCheatSnapshotMinutes() { return antiCheatSnapshotMinutes; }
+
+    public boolean isRateLimitEnabled() { return rateLimitEnabled; }
+    public Map<String, RateLimitBudget> getRateLimits() { return rateLimits; }
+
+    public long getRewardDispatchBudgetNanos() { return rewardDispatchBudgetNanos; }
+    public boolean isAggregateRewards() { return aggregateRewards; }
+
+    public boolean isSessionCacheEnabled() { return sessionCacheEnabled; }
+    public long getCodeFilterRebuildMinutes() { return codeFilterRebuildMinutes; }
+
+    public boolean isRestrictCodeCreation() { return restrictCodeCreation; }
+    public boolean isAutoCleanupExpiredCodes() { return autoCleanupExpiredCodes; }
+
+    /**
+     * 单个子命令的限流设置，容量为 0 表示不限制
+     */
+    public static final class RateLimitBudget {
+        private final int capacity;
+        private final long refillSeconds;
+        private final int ipCapacity;
+        private final long ipRefillSeconds;
+
+        public RateLimitBudget(int capacity, long refillSeconds, int ipCapacity, long ipRefillSeconds) {
+            this.capacity = capacity;
+            this.refillSeconds = refillSeconds;
+            this.ipCapacity = ipCapacity;
+            this.ipRefillSeconds = ipRefillSeconds;
+        }
+
+        public int getCapacity() { return capacity; }
+        public long getRefillSeconds() { return refillSeconds; }
+        public int getIpCapacity() { return ipCapacity; }
+        public long getIpRefillSeconds() { return ipRefillSeconds; }
+    }
+}
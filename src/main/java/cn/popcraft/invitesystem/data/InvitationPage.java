@@ -0,0 +1,25 @@
+package cn.popcraft.invitesystem.data;
+
+import java.util.List;
+
+/**
+ * 一页邀请记录，以及前后翻页的游标
+ */
+public class InvitationPage {
+    private final int page;
+    private final List<Invitation> invitations;
+    private final PageCursor next;     // null = 没有下一页
+    private final PageCursor previous; // null = 没有上一页
+
+    public InvitationPage(int page, List<Invitation> invitations, PageCursor next, PageCursor previous) {
+        this.page = page;
+        this.invitations = invitations;
+        this.next = next;
+        this.previous = previous;
+    }
+
+    public int getPage() { return page; }
+    public List<Invitation> getInvitations() { return invitations; }
+    public PageCursor getNext() { return next; }
+    public PageCursor getPrevious() { return previous; }
+}
@@ -0,0 +1,27 @@
+package cn.popcraft.invitesystem.data;
+
+/**
+ * 某玩家两种身份下的邀请记录数量
+ */
+public class InvitationSummary {
+    private final long inviterTotal;     // 累计邀请人数
+    private final long inviterUnclaimed; // 作为邀请人待领取的奖励份数
+    private final long inviteeTotal;     // 提交过的邀请码数
+    private final long inviteeUnclaimed; // 作为被邀请人待领取的奖励份数
+
+    public InvitationSummary(long inviterTotal, long inviterUnclaimed, long inviteeTotal, long inviteeUnclaimed) {
+        this.inviterTotal = inviterTotal;
+        this.inviterUnclaimed = inviterUnclaimed;
+        this.inviteeTotal = inviteeTotal;
+        this.inviteeUnclaimed = inviteeUnclaimed;
+    }
+
+    public long getInviterTotal() { return inviterTotal; }
+    public long getInviterUnclaimed() { return inviterUnclaimed; }
+    public long getInviteeTotal() { return inviteeTotal; }
+    public long getInviteeUnclaimed() { return inviteeUnclaimed; }
+
+    public long getTotal(boolean isInviter) {
+        return isInviter ? inviterTotal : inviteeTotal;
+    }
+}
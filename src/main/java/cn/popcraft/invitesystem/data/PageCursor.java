@@ -0,0 +1,58 @@
+package cn.popcraft.invitesystem.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 邀请记录列表的翻页游标
+ * 记录某一行在 (created_at DESC, id DESC) 排序中的位置，对玩家来说是一个不透明的字符串
+ */
+public class PageCursor {
+    private final int page;
+    private final boolean backward; // true = 取该位置之前（更新）的一页，即上一页
+    private final String createdAt; // created_at 在数据库中的原始值
+    private final int id;
+
+    public PageCursor(int page, boolean backward, String createdAt, int id) {
+        this.page = page;
+        this.backward = backward;
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public int getPage() { return page; }
+    public boolean isBackward() { return backward; }
+    public String getCreatedAt() { return createdAt; }
+    public int getId() { return id; }
+
+    /**
+     * 编码为命令中可携带的字符串
+     */
+    public String encode() {
+        String raw = (backward ? "P" : "N") + "|" + page + "|" + id + "|" + createdAt;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     * @param token 游标字符串
+     * @return 游标，格式不正确时返回 null
+     */
+    public static PageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4 || !("N".equals(parts[0]) || "P".equals(parts[0]))) {
+                return null;
+            }
+            int page = Integer.parseInt(parts[1]);
+            int id = Integer.parseInt(parts[2]);
+            if (page < 1) {
+                return null;
+            }
+            return new PageCursor(page, "P".equals(parts[0]), parts[3], id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
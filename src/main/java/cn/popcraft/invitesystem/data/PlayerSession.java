@@ -0,0 +1,99 @@
+package cn.popcraft.invitesystem.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 在线玩家的邀请数据快照
+ * 进服前从数据库加载，之后由本插件的写操作就地更新；只保存数量和自己的邀请码，邀请记录明细按页查询。
+ * 读取方法返回副本，可在任意线程调用
+ */
+public class PlayerSession {
+    private final UUID uuid;
+    private final List<InviteCode> ownedCodes;
+    private long inviterTotal;
+    private long inviterUnclaimed;
+    private long inviteeTotal;
+    private long inviteeUnclaimed;
+    private boolean pendingDelivery;
+
+    public PlayerSession(UUID uuid, InvitationSummary summary, List<InviteCode> ownedCodes, boolean pendingDelivery) {
+        this.uuid = uuid;
+        this.ownedCodes = new ArrayList<>(ownedCodes);
+        this.inviterTotal = summary.getInviterTotal();
+        this.inviterUnclaimed = summary.getInviterUnclaimed();
+        this.inviteeTotal = summary.getInviteeTotal();
+        this.inviteeUnclaimed = summary.getInviteeUnclaimed();
+        this.pendingDelivery = pendingDelivery;
+    }
+
+    public UUID getUuid() { return uuid; }
+
+    public synchronized InvitationSummary getSummary() {
+        return new InvitationSummary(inviterTotal, inviterUnclaimed, inviteeTotal, inviteeUnclaimed);
+    }
+
+    public synchronized List<InviteCode> getOwnedCodes() { return new ArrayList<>(ownedCodes); }
+
+    // 是否提交过邀请码
+    public synchronized boolean hasSubmitted() { return inviteeTotal > 0; }
+
+    // 两种身份下待领取的奖励份数
+    public synchronized long getUnclaimedCount() {
+        return inviterUnclaimed + inviteeUnclaimed;
+    }
+
+    // 是否有待补发的奖励
+    public synchronized boolean hasPendingDelivery() { return pendingDelivery; }
+
+    public synchronized void setPendingDelivery(boolean pendingDelivery) {
+        this.pendingDelivery = pendingDelivery;
+    }
+
+    /**
+     * 作为被邀请人提交了邀请码
+     */
+    public synchronized void addAsInvitee(Invitation invitation) {
+        inviteeTotal++;
+        if (!invitation.isClaimedInvitee()) {
+            inviteeUnclaimed++;
+        }
+    }
+
+    /**
+     * 自己的邀请码被他人使用
+     */
+    public synchronized void addAsInviter(Invitation invitation) {
+        inviterTotal++;
+        if (!invitation.isClaimedInviter()) {
+            inviterUnclaimed++;
+        }
+        for (InviteCode code : ownedCodes) {
+            if (code.getCode().equalsIgnoreCase(invitation.getCode())) {
+                code.incrementUsedCount();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 领取了奖励
+     * @param count 本次领取到的份数
+     * @param isInviter 是否为邀请人身份
+     */
+    public synchronized void removeClaimed(int count, boolean isInviter) {
+        if (isInviter) {
+            inviterUnclaimed = Math.max(0, inviterUnclaimed - count);
+        } else {
+            inviteeUnclaimed = Math.max(0, inviteeUnclaimed - count);
+        }
+    }
+
+    /**
+     * 创建了新的邀请码
+     */
+    public synchronized void addOwnedCode(InviteCode code) {
+        ownedCodes.add(code);
+    }
+}
@@ -0,0 +1,35 @@
+package cn.popcraft.invitesystem.data;
+
+import java.util.UUID;
+
+/**
+ * 待发放的奖励任务
+ * 领取奖励时与邀请记录的领取标记在同一事务中写入，奖励全部发放后才删除，
+ * 关闭或崩溃时尚未发放完的任务在玩家下次进服时继续发放
+ */
+public class RewardJob {
+    private final long id;
+    private final UUID playerUuid;
+    private final boolean inviter;
+    private final int copies;   // 奖励列表份数（本次领取到的记录数）
+    private final long progress; // 已逐项发放的奖励数
+
+    public RewardJob(long id, UUID playerUuid, boolean inviter, int copies, long progress) {
+        this.id = id;
+        this.playerUuid = playerUuid;
+        this.inviter = inviter;
+        this.copies = copies;
+        this.progress = progress;
+    }
+
+    public long getId() { return id; }
+    public UUID getPlayerUuid() { return playerUuid; }
+    public boolean isInviter() { return inviter; }
+    public int getCopies() { return copies; }
+    public long getProgress() { return progress; }
+
+    // 本次没有领取到任何记录
+    public boolean isEmpty() {
+        return copies == 0;
+    }
+}
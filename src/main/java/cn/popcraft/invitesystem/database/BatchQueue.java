@@ -0,0 +1,148 @@
+package cn.popcraft.invitesystem.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 合并写入的通用批处理循环
+ * 一个后台线程从有界队列中取出元素，在最大延迟内尽量凑满一批后交给 flush 动作处理；
+ * 关闭时停止接收新元素，并把已排队的元素处理完
+ * @param <T> 队列元素
+ */
+public class BatchQueue<T> {
+
+    private final Logger logger;
+    private final String name;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<T> queue;
+    private final Consumer<List<T>> flushAction;
+    private final Consumer<List<T>> failAction;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // 统计信息
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedItems = new LongAdder();
+    private final LongAdder totalFlushNanos = new LongAdder();
+
+    /**
+     * @param logger 日志
+     * @param name 线程名与日志中使用的名称
+     * @param maxBatchSize 每批最多元素数
+     * @param maxDelayMillis 凑满一批的最长等待时间
+     * @param maxPending 队列容量
+     * @param flushAction 处理一批元素
+     * @param failAction flush 动作抛出未捕获异常时，为这一批元素返回失败结果
+     */
+    public BatchQueue(Logger logger, String name, int maxBatchSize, long maxDelayMillis, int maxPending,
+                      Consumer<List<T>> flushAction, Consumer<List<T>> failAction) {
+        this.logger = logger;
+        this.name = name;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, maxPending));
+        this.flushAction = flushAction;
+        this.failAction = failAction;
+        this.thread = new Thread(this::loop, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 放入一个元素
+     * @return 是否放入成功（队列已满或已关闭时返回 false）
+     */
+    public boolean offer(T item) {
+        return running && queue.offer(item);
+    }
+
+    private void loop() {
+        List<T> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // 在最大延迟内尽量凑满一批
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                long start = System.nanoTime();
+                flushAction.accept(batch);
+                flushes.increment();
+                flushedItems.add(batch.size());
+                totalFlushNanos.add(System.nanoTime() - start);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Uncaught exception in " + name, t);
+                failAction.accept(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 停止接收新元素，并等待已排队的元素处理完
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @return 是否在超时前处理完
+     */
+    public boolean close(long timeout, TimeUnit unit) {
+        running = false;
+        try {
+            thread.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    // 统计信息
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    public long getFlushedItems() {
+        return flushedItems.sum();
+    }
+
+    public double getAverageFlushSize() {
+        long count = flushes.sum();
+        return count == 0 ? 0 : flushedItems.sum() / (double) count;
+    }
+
+    public double getAverageFlushMillis() {
+        long count = flushes.sum();
+        return count == 0 ? 0 : totalFlushNanos.sum() / (double) count / 1_000_000.0;
+    }
+}
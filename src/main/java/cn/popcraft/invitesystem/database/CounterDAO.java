@@ -0,0 +1,261 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.database.DatabaseExecutor.Lane;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 统计计数器数据访问对象
+ * 计数器与邀请记录的插入、领取状态更新在同一个事务中维护，查询总数时只需读取一行
+ */
+public class CounterDAO {
+
+    // 全局计数器
+    public static final String TOTAL = "total";
+    public static final String UNCLAIMED_INVITER = "unclaimed_inviter";
+    public static final String UNCLAIMED_INVITEE = "unclaimed_invitee";
+    // 单个邀请人的计数器（后接 UUID）
+    private static final String INVITER_TOTAL = "inviter_total:";
+    private static final String INVITER_UNCLAIMED = "inviter_unclaimed:";
+
+    private static final String BUILT_META_KEY = "counters_layout";
+
+    private final DatabaseManager dbManager;
+    private final StorageLayout layout;
+    private final String table;
+    private final String metaTable;
+    private final String upsertSql;
+
+    public CounterDAO(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.layout = dbManager.getStorageLayout();
+        this.table = dbManager.getTablePrefix() + "invite_counters";
+        this.metaTable = dbManager.getTablePrefix() + "plugin_meta";
+        if ("mysql".equalsIgnoreCase(dbManager.getDatabaseType())) {
+            this.upsertSql = "INSERT INTO " + table + " (counter_key, counter_value) VALUES (?, ?) " +
+                    "ON DUPLICATE KEY UPDATE counter_value = counter_value + VALUES(counter_value)";
+        } else {
+            this.upsertSql = "INSERT INTO " + table + " (counter_key, counter_value) VALUES (?, ?) " +
+                    "ON CONFLICT(counter_key) DO UPDATE SET counter_value = counter_value + excluded.counter_value";
+        }
+    }
+
+    // === 计数器变化（由写操作收集，在同一事务中应用） ===
+
+    public static void invitationCreated(Map<String, Long> deltas, UUID inviter) {
+        add(deltas, TOTAL, 1);
+        add(deltas, UNCLAIMED_INVITER, 1);
+        add(deltas, UNCLAIMED_INVITEE, 1);
+        add(deltas, INVITER_TOTAL + inviter, 1);
+        add(deltas, INVITER_UNCLAIMED + inviter, 1);
+    }
+
+    public static void inviterClaimed(Map<String, Long> deltas, UUID inviter, int count) {
+        add(deltas, UNCLAIMED_INVITER, -count);
+        add(deltas, INVITER_UNCLAIMED + inviter, -count);
+    }
+
+    public static void inviteeClaimed(Map<String, Long> deltas, int count) {
+        add(deltas, UNCLAIMED_INVITEE, -count);
+    }
+
+    private static void add(Map<String, Long> deltas, String key, long delta) {
+        deltas.merge(key, delta, Long::sum);
+    }
+
+    /**
+     * 在调用方的事务中应用计数器变化
+     * @param conn 事务所在的连接
+     * @param deltas 计数器变化
+     */
+    public void applyDeltas(Connection conn, Map<String, Long> deltas) throws SQLException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(upsertSql)) {
+            for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+                if (entry.getValue() == 0) {
+                    continue;
+                }
+                stmt.setString(1, entry.getKey());
+                stmt.setLong(2, entry.getValue());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    // === 查询 ===
+
+    public CompletableFuture<Long> getGlobal(String key) {
+        return getValue(key);
+    }
+
+    /**
+     * 在调用方的连接上读取某邀请人的计数器（两行主键查询，不扫描邀请记录）
+     * @param conn 连接
+     * @param inviter 邀请人
+     * @return [邀请总数, 未领取数]
+     */
+    long[] readInviter(Connection conn, UUID inviter) throws SQLException {
+        long[] counts = new long[2];
+        String totalKey = INVITER_TOTAL + inviter;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT counter_key, counter_value FROM " + table + " WHERE counter_key IN (?, ?)")) {
+            stmt.setString(1, totalKey);
+            stmt.setString(2, INVITER_UNCLAIMED + inviter);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts[totalKey.equals(rs.getString("counter_key")) ? 0 : 1] = rs.getLong("counter_value");
+                }
+            }
+        }
+        return counts;
+    }
+
+    private CompletableFuture<Long> getValue(String key) {
+        return dbManager.supplyAsync(() -> {
+            String sql = "SELECT counter_value FROM " + table + " WHERE counter_key = ?";
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, key);
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    return rs.getLong("counter_value");
+                }
+            } catch (SQLException e) {
+                dbManager.handleSqlException(e);
+            }
+            return 0L;
+        }, Lane.INTERACTIVE);
+    }
+
+    // === 重建 ===
+
+    /**
+     * 计数器尚未针对当前存储结构建立时，同步重建一次（启动时调用）
+     */
+    public void ensureBuilt() {
+        String layoutName = layout.isCompact() ? "compact" : "legacy";
+        try (Connection conn = dbManager.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT meta_value FROM " + metaTable + " WHERE meta_key = ?")) {
+                stmt.setString(1, BUILT_META_KEY);
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next() && layoutName.equals(rs.getString("meta_value"))) {
+                    return;
+                }
+            }
+            rebuild(conn);
+        } catch (SQLException e) {
+            dbManager.handleSqlException(e);
+        }
+    }
+
+    /**
+     * 根据邀请记录重新计算所有计数器（用于修复）
+     * @return 重建后的邀请记录总数
+     */
+    public CompletableFuture<Long> rebuildAsync() {
+        return dbManager.supplyAsync(() -> {
+            try (Connection conn = dbManager.getConnection()) {
+                return rebuild(conn);
+            } catch (SQLException e) {
+                dbManager.handleSqlException(e);
+                return -1L;
+            }
+        }, Lane.BACKGROUND);
+    }
+
+    /**
+     * 在一个事务中统计邀请记录并整体替换计数器
+     * MySQL 下普通 SELECT 是快照读，统计期间其他事务提交的邀请记录和计数器变化会在替换时丢失，
+     * 所以统计时对邀请记录加共享锁、再对计数器加排他锁（与写操作先改邀请记录再改计数器的顺序一致），
+     * 并在可重复读隔离级别下执行，让全表扫描同时锁住间隙、挡住新插入的记录，直到提交。
+     * SQLite 的写操作本身是串行的（WAL 模式下只有一个写连接，否则整库加锁），不需要额外处理
+     */
+    private long rebuild(Connection conn) throws SQLException {
+        Map<String, Long> values = new HashMap<>();
+        boolean mysql = "mysql".equalsIgnoreCase(dbManager.getDatabaseType());
+        String shareLock = mysql ? " LOCK IN SHARE MODE" : "";
+        String globalSql = "SELECT COUNT(*) AS total, " +
+                "SUM(CASE WHEN claimed_inviter = FALSE THEN 1 ELSE 0 END) AS unclaimed_inviter, " +
+                "SUM(CASE WHEN claimed_invitee = FALSE THEN 1 ELSE 0 END) AS unclaimed_invitee " +
+                "FROM " + layout.invitations() + shareLock;
+        String inviterSql = "SELECT inviter_uuid, COUNT(*) AS total, " +
+                "SUM(CASE WHEN claimed_inviter = FALSE THEN 1 ELSE 0 END) AS unclaimed " +
+                "FROM " + layout.invitations() + " GROUP BY inviter_uuid" + shareLock;
+
+        boolean autoCommit = conn.getAutoCommit();
+        int isolation = conn.getTransactionIsolation();
+        if (mysql) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        }
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(globalSql);
+                 ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    values.put(TOTAL, rs.getLong("total"));
+                    values.put(UNCLAIMED_INVITER, rs.getLong("unclaimed_inviter"));
+                    values.put(UNCLAIMED_INVITEE, rs.getLong("unclaimed_invitee"));
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(inviterSql);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    UUID inviter = layout.getUuid(rs, "inviter_uuid");
+                    values.put(INVITER_TOTAL + inviter, rs.getLong("total"));
+                    values.put(INVITER_UNCLAIMED + inviter, rs.getLong("unclaimed"));
+                }
+            }
+
+            if (mysql) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT counter_key FROM " + table + " FOR UPDATE")) {
+                    while (rs.next()) {
+                        // 只为加锁
+                    }
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM " + table);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO " + table + " (counter_key, counter_value) VALUES (?, ?)")) {
+                List<String> keys = new ArrayList<>(values.keySet());
+                for (int i = 0; i < keys.size(); i++) {
+                    stmt.setString(1, keys.get(i));
+                    stmt.setLong(2, values.get(keys.get(i)));
+                    stmt.addBatch();
+                    if (i % 1000 == 999) {
+                        stmt.executeBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "REPLACE INTO " + metaTable + " (meta_key, meta_value) VALUES (?, ?)")) {
+                stmt.setString(1, BUILT_META_KEY);
+                stmt.setString(2, layout.isCompact() ? "compact" : "legacy");
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+            if (mysql) {
+                conn.setTransactionIsolation(isolation);
+            }
+        }
+        return values.getOrDefault(TOTAL, 0L);
+    }
+}
@@ -0,0 +1,284 @@
+package cn.popcraft.invitesystem.database;
+
+import org.bukkit.Bukkit;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 数据库任务执行器
+ * 固定数量的工作线程，配合两条有界队列：交互队列（玩家命令）总是先于后台队列（清理、导出等）执行
+ */
+public class DatabaseExecutor {
+
+    /**
+     * 任务队列
+     */
+    public enum Lane {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    private final Logger logger;
+    private final Thread[] workers;
+    private final LaneQueue interactive;
+    private final LaneQueue background;
+    private final long backgroundOfferTimeoutMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    private final Executor interactiveExecutor;
+    private final Executor backgroundExecutor;
+
+    public DatabaseExecutor(Logger logger, int threads, int interactiveCapacity, int backgroundCapacity,
+                            long backgroundOfferTimeoutMillis) {
+        this.logger = logger;
+        this.interactive = new LaneQueue(Lane.INTERACTIVE, Math.max(1, interactiveCapacity));
+        this.background = new LaneQueue(Lane.BACKGROUND, Math.max(1, backgroundCapacity));
+        this.backgroundOfferTimeoutMillis = Math.max(0, backgroundOfferTimeoutMillis);
+        this.interactiveExecutor = command -> execute(Lane.INTERACTIVE, command);
+        this.backgroundExecutor = command -> execute(Lane.BACKGROUND, command);
+
+        this.workers = new Thread[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            Thread worker = new Thread(this::workerLoop, "InviteSystem-DB-" + (i + 1));
+            worker.setDaemon(true);
+            workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    /**
+     * 获取指定队列的 Executor 视图
+     * @param lane 队列
+     * @return Executor
+     */
+    public Executor lane(Lane lane) {
+        return lane == Lane.INTERACTIVE ? interactiveExecutor : backgroundExecutor;
+    }
+
+    /**
+     * 提交任务
+     * 交互队列满时立即拒绝；后台队列满时，非主线程的调用方最多等待配置的时间再拒绝
+     * @param lane 队列
+     * @param command 任务
+     * @throws RejectedExecutionException 队列已满或执行器已关闭
+     */
+    public void execute(Lane lane, Runnable command) {
+        LaneQueue queue = lane == Lane.INTERACTIVE ? interactive : background;
+        lock.lock();
+        try {
+            if (lane == Lane.BACKGROUND && backgroundOfferTimeoutMillis > 0 && !Bukkit.isPrimaryThread()) {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(backgroundOfferTimeoutMillis);
+                while (!shutdown && queue.isFull() && remaining > 0) {
+                    remaining = notFull.awaitNanos(remaining);
+                }
+            }
+            if (shutdown) {
+                queue.rejected.increment();
+                throw new RejectedExecutionException("Database executor has been shut down");
+            }
+            if (queue.isFull()) {
+                queue.rejected.increment();
+                throw new RejectedExecutionException("Database " + lane.name().toLowerCase()
+                        + " queue is full (" + queue.capacity + ")");
+            }
+            queue.tasks.addLast(new QueuedTask(command, System.nanoTime()));
+            queue.submitted.increment();
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queue.rejected.increment();
+            throw new RejectedExecutionException("Interrupted while waiting for database queue", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workerLoop() {
+        while (true) {
+            QueuedTask task;
+            LaneQueue queue;
+            lock.lock();
+            try {
+                while (interactive.tasks.isEmpty() && background.tasks.isEmpty()) {
+                    if (shutdown) {
+                        return;
+                    }
+                    notEmpty.await();
+                }
+                // 交互任务优先
+                queue = !interactive.tasks.isEmpty() ? interactive : background;
+                task = queue.tasks.pollFirst();
+                if (queue == background) {
+                    notFull.signal();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            queue.recordWait(System.nanoTime() - task.enqueuedAt);
+            activeCount.incrementAndGet();
+            try {
+                task.command.run();
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Uncaught exception in database task", t);
+            } finally {
+                activeCount.decrementAndGet();
+                queue.completed.increment();
+            }
+        }
+    }
+
+    /**
+     * 停止接收新任务，已排队的任务会继续执行完毕
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待所有工作线程退出
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @return 是否在超时前全部退出
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            worker.join(remainingMillis);
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 统计信息
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public LaneStats getStats(Lane lane) {
+        LaneQueue queue = lane == Lane.INTERACTIVE ? interactive : background;
+        int depth;
+        lock.lock();
+        try {
+            depth = queue.tasks.size();
+        } finally {
+            lock.unlock();
+        }
+        return queue.snapshot(depth);
+    }
+
+    /**
+     * 单条队列的状态（调用时的快照）
+     */
+    public static class LaneStats {
+        private final Lane lane;
+        private final int depth;
+        private final int capacity;
+        private final long submitted;
+        private final long completed;
+        private final long rejected;
+        private final double averageWaitMillis;
+        private final double maxWaitMillis;
+
+        private LaneStats(Lane lane, int depth, int capacity, long submitted, long completed, long rejected,
+                          double averageWaitMillis, double maxWaitMillis) {
+            this.lane = lane;
+            this.depth = depth;
+            this.capacity = capacity;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.averageWaitMillis = averageWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        public Lane getLane() { return lane; }
+        public int getDepth() { return depth; }
+        public int getCapacity() { return capacity; }
+        public long getSubmitted() { return submitted; }
+        public long getCompleted() { return completed; }
+        public long getRejected() { return rejected; }
+        public double getAverageWaitMillis() { return averageWaitMillis; }
+        public double getMaxWaitMillis() { return maxWaitMillis; }
+    }
+
+    private static class QueuedTask {
+        private final Runnable command;
+        private final long enqueuedAt;
+
+        private QueuedTask(Runnable command, long enqueuedAt) {
+            this.command = command;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static class LaneQueue {
+        private final Lane lane;
+        private final int capacity;
+        private final ArrayDeque<QueuedTask> tasks;
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder waitCount = new LongAdder();
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private LaneQueue(Lane lane, int capacity) {
+            this.lane = lane;
+            this.capacity = capacity;
+            this.tasks = new ArrayDeque<>(Math.min(capacity, 1024));
+        }
+
+        private boolean isFull() {
+            return tasks.size() >= capacity;
+        }
+
+        private void recordWait(long nanos) {
+            waitCount.increment();
+            totalWaitNanos.add(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private LaneStats snapshot(int depth) {
+            long count = waitCount.sum();
+            double avgMillis = count == 0 ? 0 : totalWaitNanos.sum() / (double) count / 1_000_000.0;
+            double maxMillis = maxWaitNanos.get() / 1_000_000.0;
+            return new LaneStats(lane, depth, capacity, submitted.sum(), completed.sum(), rejected.sum(),
+                    avgMillis, maxMillis);
+        }
+    }
+}
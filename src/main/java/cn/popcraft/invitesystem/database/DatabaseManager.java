@@ -1,15 +1,28 @@
 package cn.popcraft.invitesystem.database;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.data.InviteCode;
+import cn.popcraft.invitesystem.util.BloomFilter;
+import cn.popcraft.invitesystem.util.LoadingCache;
+import cn.popcraft.invitesystem.util.PermutedCodeGenerator;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -18,7 +31,11 @@ import java.util.logging.Logger;
 public class DatabaseManager {
     private final InviteSystem plugin;
     private HikariDataSource dataSource;
-    private final ExecutorService asyncExecutor;
+    // SQLite WAL 模式下的只读连接池（其他情况下为 null，读操作使用 dataSource）
+    private HikariDataSource readDataSource;
+    private DatabaseExecutor executor;
+    private WriteBatcher writeBatcher;
+    private StorageLayout storageLayout;
     private final String tablePrefix;
     private final Logger logger;
     
@@ -26,35 +43,82 @@ public class DatabaseManager {
     private InviteCodeDAO inviteCodeDAO;
     private InvitationDAO invitationDAO;
     private PlayerFirstJoinDAO playerFirstJoinDAO;
+    private CounterDAO counterDAO;
+    private PlayerNameDAO playerNameDAO;
+    private PendingRewardDAO pendingRewardDAO;
+    // 序号模式的邀请码生成（随机模式下为 null）
+    private InviteCodeSequence inviteCodeSequence;
     
     // 数据库类型
     private String databaseType;
+    // 数据库位置（用于判断本地索引文件是否属于当前数据库）
+    private String databaseLocation;
 
     public DatabaseManager(InviteSystem plugin) {
         this.plugin = plugin;
         this.logger = plugin.getLogger();
-        this.asyncExecutor = Executors.newCachedThreadPool();
         this.tablePrefix = plugin.getConfig().getString("database.table-prefix", "");
     }
 
-    public void init() {
+    /**
+     * 连接数据库并完成迁移和初始化
+     * @return 是否可以继续加载；存储结构的数据可能不一致时返回 false，插件应停止加载而不是继续写入
+     */
+    public boolean init() {
         setupDatabase();
-        createTables();
+        migrateSchema();
+        if (!setupStorageLayout()) {
+            return false;
+        }
         initDAOs();
+        counterDAO.ensureBuilt();
+        setupCodeSequence();
+        setupFirstJoinIndex();
+        setupFirstJoinBatch();
+        if (inviteCodeDAO.getFilter() != null) {
+            inviteCodeDAO.getFilter().rebuildAsync();
+        }
+        return true;
     }
 
     private void setupDatabase() {
         String type = plugin.getConfig().getString("database.type", "sqlite");
         this.databaseType = type;
         
+        int poolSize;
         if ("mysql".equalsIgnoreCase(type)) {
-            setupMySQL();
+            poolSize = setupMySQL();
         } else {
-            setupSQLite();
+            poolSize = setupSQLite();
         }
+        setupExecutor(poolSize);
+        setupWriteBatcher();
     }
 
-    private void setupMySQL() {
+    private void setupExecutor(int poolSize) {
+        // 工作线程数默认与连接池大小一致，多出的线程只会在连接池上排队
+        int threads = plugin.getConfig().getInt("database.executor.threads", poolSize);
+        int interactiveQueueSize = plugin.getConfig().getInt("database.executor.interactive-queue-size", 256);
+        int backgroundQueueSize = plugin.getConfig().getInt("database.executor.background-queue-size", 1024);
+        long backgroundOfferTimeout = plugin.getConfig().getLong("database.executor.background-offer-timeout-ms", 500);
+
+        executor = new DatabaseExecutor(logger, threads <= 0 ? poolSize : threads,
+                interactiveQueueSize, backgroundQueueSize, backgroundOfferTimeout);
+        logger.info("Database executor started with " + executor.getThreadCount() + " threads");
+    }
+
+    private void setupWriteBatcher() {
+        if (!plugin.getConfig().getBoolean("database.write-batch.enabled", true)) {
+            return;
+        }
+        int maxBatchSize = plugin.getConfig().getInt("database.write-batch.max-batch-size", 100);
+        long maxDelay = plugin.getConfig().getLong("database.write-batch.max-delay-ms", 5);
+        int maxPending = plugin.getConfig().getInt("database.write-batch.max-pending", 4096);
+        writeBatcher = new WriteBatcher(this, logger, maxBatchSize, maxDelay, maxPending);
+    }
+
+    private int setupMySQL() {
+        int poolSize = plugin.getConfig().getInt("database.mysql.pool-size", 10);
         try {
             HikariConfig config = new HikariConfig();
             String host = plugin.getConfig().getString("database.mysql.host", "localhost");
@@ -63,7 +127,6 @@ public class DatabaseManager {
             String username = plugin.getConfig().getString("database.mysql.username", "root");
             String password = plugin.getConfig().getString("database.mysql.password", "");
             boolean useSSL = plugin.getConfig().getBoolean("database.mysql.useSSL", false);
-            int poolSize = plugin.getConfig().getInt("database.mysql.pool-size", 10);
             
             config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database + "?useSSL=" + useSSL);
             config.setUsername(username);
@@ -75,20 +138,35 @@ public class DatabaseManager {
             config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
             
             dataSource = new HikariDataSource(config);
+            databaseLocation = "mysql://" + host + ":" + port + "/" + database;
             logger.info("MySQL database connected successfully");
+            return poolSize;
         } catch (Exception e) {
             logger.severe("Failed to setup MySQL database: " + e.getMessage());
             // 如果MySQL连接失败，回退到SQLite
             logger.info("Falling back to SQLite database");
-            setupSQLite();
+            this.databaseType = "sqlite";
+            return setupSQLite();
         }
     }
 
-    private void setupSQLite() {
+    private int setupSQLite() {
+        // 确保数据文件夹存在
+        if (!plugin.getDataFolder().exists()) {
+            plugin.getDataFolder().mkdirs();
+        }
+        String jdbcUrl = "jdbc:sqlite:" + new File(plugin.getDataFolder(), "invitesystem.db").getAbsolutePath();
+        databaseLocation = jdbcUrl;
+        
+        if (plugin.getConfig().getBoolean("database.sqlite.wal-mode", true)) {
+            return setupSQLiteWal(jdbcUrl);
+        }
+        
+        int poolSize = 10;
         try {
             HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:sqlite:" + new File(plugin.getDataFolder(), "invitesystem.db").getAbsolutePath());
-            config.setMaximumPoolSize(10);
+            config.setJdbcUrl(jdbcUrl);
+            config.setMaximumPoolSize(poolSize);
             config.setConnectionTestQuery("SELECT 1");
             config.addDataSourceProperty("cachePrepStmts", "true");
             config.addDataSourceProperty("prepStmtCacheSize", "250");
@@ -99,95 +177,87 @@ public class DatabaseManager {
         } catch (Exception e) {
             logger.severe("Failed to setup SQLite database: " + e.getMessage());
         }
+        return poolSize;
     }
 
-    public void createTables() {
-        // 确保数据文件夹存在
-        if (!plugin.getDataFolder().exists()) {
-            plugin.getDataFolder().mkdirs();
-        }
+    /**
+     * SQLite 高并发模式：WAL 日志 + 一个串行写连接 + 只读连接池
+     * WAL 模式下读操作不会被写操作阻塞，所有写操作排队使用同一个连接，避免 SQLITE_BUSY
+     * @return 连接总数（写连接 + 读连接）
+     */
+    private int setupSQLiteWal(String jdbcUrl) {
+        int readerPoolSize = Math.max(1, plugin.getConfig().getInt("database.sqlite.reader-pool-size", 4));
+        String synchronous = plugin.getConfig().getString("database.sqlite.synchronous", "NORMAL");
+        String cacheSize = String.valueOf(plugin.getConfig().getInt("database.sqlite.cache-size", -16000));
+        String mmapSize = String.valueOf(plugin.getConfig().getLong("database.sqlite.mmap-size", 268435456L));
+        String busyTimeout = String.valueOf(plugin.getConfig().getInt("database.sqlite.busy-timeout-ms", 5000));
         
-        // 根据数据库类型选择合适的自增主键语法
-        String autoIncrementSyntax = "mysql".equalsIgnoreCase(databaseType) ? 
-            "INTEGER PRIMARY KEY AUTO_INCREMENT" : 
-            "INTEGER PRIMARY KEY AUTOINCREMENT";
-            
-        String booleanTrue = "mysql".equalsIgnoreCase(databaseType) ? "TRUE" : "1";
-        String booleanFalse = "mysql".equalsIgnoreCase(databaseType) ? "FALSE" : "0";
-
-        String sqlInviteCodes = "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invite_codes (" +
-                "code VARCHAR(32) PRIMARY KEY," +
-                "creator_uuid CHAR(36) NOT NULL," +
-                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                "expires_at TIMESTAMP NULL," +
-                "max_uses INT NOT NULL DEFAULT 1," +
-                "used_count INT NOT NULL DEFAULT 0" +
-                ");";
-
-        String sqlInvitations = "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invitations (" +
-                "id " + autoIncrementSyntax + "," +
-                "invitee_uuid CHAR(36) NOT NULL," +
-                "inviter_uuid CHAR(36) NOT NULL," +
-                "code VARCHAR(32) NOT NULL," +
-                "play_time_seconds BIGINT NOT NULL," +
-                "claimed_inviter BOOLEAN NOT NULL DEFAULT " + booleanFalse + "," +
-                "claimed_invitee BOOLEAN NOT NULL DEFAULT " + booleanFalse + "," +
-                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ");";
-
-        String sqlFirstJoin = "CREATE TABLE IF NOT EXISTS " + tablePrefix + "player_first_join (" +
-                "uuid CHAR(36) PRIMARY KEY," +
-                "first_join TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ");";
-
-        // 同步执行表创建，确保表存在后再进行其他操作
         try {
-            executeUpdateSync(sqlInviteCodes);
-            executeUpdateSync(sqlInvitations);
-            executeUpdateSync(sqlFirstJoin);
+            // 写连接（先创建，负责建库并切换到 WAL）
+            HikariConfig writerConfig = new HikariConfig();
+            writerConfig.setPoolName("InviteSystem-SQLite-Writer");
+            writerConfig.setJdbcUrl(jdbcUrl);
+            writerConfig.setMaximumPoolSize(1);
+            writerConfig.setConnectionTestQuery("SELECT 1");
+            writerConfig.addDataSourceProperty("journal_mode", "WAL");
+            writerConfig.addDataSourceProperty("synchronous", synchronous);
+            writerConfig.addDataSourceProperty("cache_size", cacheSize);
+            writerConfig.addDataSourceProperty("mmap_size", mmapSize);
+            writerConfig.addDataSourceProperty("busy_timeout", busyTimeout);
+            dataSource = new HikariDataSource(writerConfig);
             
-            // 创建索引
-            createIndexes();
-        } catch (SQLException e) {
-            logger.severe("Failed to create tables: " + e.getMessage());
-        }
-    }
-    
-    private void createIndexes() {
-        String idxInvitee = "CREATE INDEX IF NOT EXISTS idx_invitations_invitee ON " 
-                + tablePrefix + "invitations(invitee_uuid)";
-        String idxInviter = "CREATE INDEX IF NOT EXISTS idx_invitations_inviter ON " 
-                + tablePrefix + "invitations(inviter_uuid)";
-        String idxExpires = "CREATE INDEX IF NOT EXISTS idx_invite_codes_expires ON " 
-                + tablePrefix + "invite_codes(expires_at)";
-                
-        try {
-            executeUpdateSync(idxInvitee);
-            executeUpdateSync(idxInviter);
-            executeUpdateSync(idxExpires);
-        } catch (SQLException e) {
-            logger.severe("Failed to create indexes: " + e.getMessage());
+            // 只读连接池（open_mode=1 即 SQLITE_OPEN_READONLY）
+            HikariConfig readerConfig = new HikariConfig();
+            readerConfig.setPoolName("InviteSystem-SQLite-Reader");
+            readerConfig.setJdbcUrl(jdbcUrl);
+            readerConfig.setMaximumPoolSize(readerPoolSize);
+            readerConfig.setConnectionTestQuery("SELECT 1");
+            readerConfig.addDataSourceProperty("open_mode", "1");
+            readerConfig.addDataSourceProperty("cache_size", cacheSize);
+            readerConfig.addDataSourceProperty("mmap_size", mmapSize);
+            readerConfig.addDataSourceProperty("busy_timeout", busyTimeout);
+            readDataSource = new HikariDataSource(readerConfig);
+            
+            logger.info("SQLite database connected successfully (WAL, 1 writer + " + readerPoolSize + " readers)");
+        } catch (Exception e) {
+            logger.severe("Failed to setup SQLite database: " + e.getMessage());
         }
+        return readerPoolSize + 1;
     }
 
-    private void executeUpdateSync(String sql) throws SQLException {
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.executeUpdate();
-        }
+    // 执行数据库结构迁移（建表、索引等）
+    private void migrateSchema() {
+        new SchemaMigrator(this, logger).migrate();
     }
     
-    private void executeUpdate(String sql) {
-        asyncExecutor.execute(() -> {
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.executeUpdate();
-            } catch (SQLException e) {
-                handleSqlException(e);
+    /**
+     * 选择存储结构，首次切换到紧凑结构时复制旧数据
+     * 复制失败时不回退到旧结构：回退后继续写入旧表，已复制的行会与旧表不一致，续传时也不会再复制。
+     * 复制完成后旧表不再更新，此时配置为 legacy 会读写过期的数据，同样拒绝启动
+     * @return 存储结构是否可用
+     */
+    private boolean setupStorageLayout() {
+        storageLayout = StorageLayout.legacy(tablePrefix);
+        StorageLayoutMigrator migrator = new StorageLayoutMigrator(this, logger);
+        if (!"compact".equalsIgnoreCase(plugin.getConfig().getString("database.storage-layout", "legacy"))) {
+            if (migrator.isCopyDone()) {
+                logger.severe("Data has already been moved to the compact storage layout, "
+                        + "switching back to storage-layout: legacy is not supported");
+                return false;
             }
-        });
+            // 旧表将继续写入，未完成的复制已不可信，下次切换时从头复制
+            return migrator.discardPartialCopy();
+        }
+        if (!migrator.copyLegacyData()) {
+            logger.severe("Compact storage layout is unavailable, fix the error above and restart "
+                    + "(the copy resumes where it stopped)");
+            return false;
+        }
+        storageLayout = StorageLayout.compact(tablePrefix);
+        logger.info("Using compact storage layout");
+        return true;
     }
-
+    
     public Connection getConnection() throws SQLException {
         if (dataSource != null) {
             return dataSource.getConnection();
@@ -195,13 +265,147 @@ public class DatabaseManager {
         throw new SQLException("Database not initialized");
     }
 
+    /**
+     * 获取只读连接
+     * SQLite WAL 模式下来自独立的只读连接池，其他情况下与 getConnection 相同
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (readDataSource != null) {
+            return readDataSource.getConnection();
+        }
+        return getConnection();
+    }
+
+    /**
+     * 判断异常是否由主键或唯一约束冲突引起
+     * 只按驱动给出的错误码判断：MySQL 为 SQLState 23000 且错误码 1062，
+     * SQLite 为扩展结果码 SQLITE_CONSTRAINT_UNIQUE / SQLITE_CONSTRAINT_PRIMARYKEY（其他约束失败不算重复）。
+     * 批处理异常会沿着异常链查找实际出错的语句
+     */
+    public boolean isUniqueViolation(SQLException e) {
+        boolean mysql = "mysql".equalsIgnoreCase(databaseType);
+        for (Throwable t = e; t != null; t = nextCause(t)) {
+            if (!(t instanceof SQLException)) {
+                continue;
+            }
+            SQLException sql = (SQLException) t;
+            if (mysql) {
+                if ("23000".equals(sql.getSQLState()) && sql.getErrorCode() == 1062) {
+                    return true;
+                }
+            } else if (sql instanceof SQLiteException) {
+                SQLiteErrorCode code = ((SQLiteException) sql).getResultCode();
+                if (code == SQLiteErrorCode.SQLITE_CONSTRAINT_UNIQUE
+                        || code == SQLiteErrorCode.SQLITE_CONSTRAINT_PRIMARYKEY) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Throwable nextCause(Throwable t) {
+        if (t instanceof SQLException && ((SQLException) t).getNextException() != null) {
+            return ((SQLException) t).getNextException();
+        }
+        return t.getCause() == t ? null : t.getCause();
+    }
+
+    // 遇到重复键时跳过的插入语句开头
+    public String insertIgnore() {
+        return "mysql".equalsIgnoreCase(databaseType) ? "INSERT IGNORE" : "INSERT OR IGNORE";
+    }
+
     public void handleSqlException(SQLException e) {
         logger.severe("Database error: " + e.getMessage());
         e.printStackTrace();
     }
 
-    public ExecutorService getAsyncExecutor() {
-        return asyncExecutor;
+    /**
+     * 在指定队列上异步执行数据库任务
+     * 队列已满时返回失败的 Future（RejectedExecutionException），而不是在调用线程抛出异常
+     * @param task 任务
+     * @param lane 队列
+     * @return 任务结果
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task, DatabaseExecutor.Lane lane) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor.lane(lane));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 异步执行一条写语句
+     * 启用批量写入时交给 WriteBatcher 合并提交，否则直接在交互队列上执行
+     * @param sql SQL 语句
+     * @param binder 参数绑定
+     * @return 影响的行数（失败时为 0）
+     */
+    public CompletableFuture<Integer> executeWrite(String sql, WriteBatcher.StatementBinder binder) {
+        return executeWrite(sql, binder, null);
+    }
+
+    /**
+     * 异步执行一条写语句，并在同一事务中更新计数器
+     * @param sql SQL 语句
+     * @param binder 参数绑定
+     * @param changes 计数器变化，为 null 表示不更新计数器
+     * @return 影响的行数（失败时为 0）
+     */
+    public CompletableFuture<Integer> executeWrite(String sql, WriteBatcher.StatementBinder binder,
+                                                   WriteBatcher.CounterChanges changes) {
+        if (writeBatcher != null) {
+            return writeBatcher.submit(sql, binder, changes);
+        }
+        return supplyAsync(() -> {
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    binder.bind(stmt);
+                    int count = stmt.executeUpdate();
+                    if (changes != null && count > 0) {
+                        Map<String, Long> deltas = new HashMap<>();
+                        changes.collect(count, deltas);
+                        counterDAO.applyDeltas(conn, deltas);
+                    }
+                    conn.commit();
+                    return count;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                handleSqlException(e);
+                return 0;
+            }
+        }, DatabaseExecutor.Lane.INTERACTIVE);
+    }
+
+    // 交互队列（玩家命令）
+    public Executor getAsyncExecutor() {
+        return executor.lane(DatabaseExecutor.Lane.INTERACTIVE);
+    }
+
+    // 后台队列（清理、导出等）
+    public Executor getBackgroundExecutor() {
+        return executor.lane(DatabaseExecutor.Lane.BACKGROUND);
+    }
+
+    public DatabaseExecutor getExecutor() {
+        return executor;
+    }
+
+    // 未启用批量写入时为 null
+    public WriteBatcher getWriteBatcher() {
+        return writeBatcher;
+    }
+
+    public Logger getLogger() {
+        return logger;
     }
 
     public String getTablePrefix() {
@@ -209,17 +413,112 @@ public class DatabaseManager {
     }
 
     public void close() {
+        // 先让已排队的任务执行完毕，再关闭连接池
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.warning("Timed out waiting for pending database tasks");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writeBatcher != null) {
+            writeBatcher.close(10, TimeUnit.SECONDS);
+        }
+        if (playerFirstJoinDAO != null) {
+            playerFirstJoinDAO.closeBatching();
+            playerFirstJoinDAO.closeIndex();
+        }
+        if (readDataSource != null && !readDataSource.isClosed()) {
+            readDataSource.close();
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
         }
-        asyncExecutor.shutdown();
     }
     
     // 初始化DAO
     private void initDAOs() {
-        inviteCodeDAO = new InviteCodeDAO(this);
+        inviteCodeDAO = new InviteCodeDAO(this, createCodeCache(), createCodeFilter());
         invitationDAO = new InvitationDAO(this);
         playerFirstJoinDAO = new PlayerFirstJoinDAO(this);
+        counterDAO = new CounterDAO(this);
+        playerNameDAO = new PlayerNameDAO(this, createNameCache());
+        pendingRewardDAO = new PendingRewardDAO(this);
+    }
+    
+    private void setupCodeSequence() {
+        if (!"sequence".equalsIgnoreCase(plugin.getConfig().getString("invite.code-generator", "random"))) {
+            return;
+        }
+        // 数据库不区分大小写时只用大写字母和数字，避免只有大小写不同的邀请码冲突
+        boolean caseSensitive = !"mysql".equalsIgnoreCase(databaseType)
+                && plugin.getConfig().getBoolean("invite.case-sensitive", true);
+        String alphabet = caseSensitive ? PermutedCodeGenerator.BASE62 : PermutedCodeGenerator.BASE36;
+        try {
+            InviteCodeSequence sequence = new InviteCodeSequence(this,
+                    plugin.getConfig().getInt("invite.code-sequence-block-size", 100));
+            sequence.init(alphabet, plugin.getConfig().getInt("invite.code-length", 8));
+            inviteCodeSequence = sequence;
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.severe("Failed to setup invite code sequence, falling back to random codes: " + e.getMessage());
+        }
+    }
+
+    private void setupFirstJoinIndex() {
+        if (!plugin.getConfig().getBoolean("database.first-join-index.enabled", true)) {
+            return;
+        }
+        // 换了数据库、表前缀或存储结构时索引文件作废
+        long fingerprint = UUID.nameUUIDFromBytes((databaseLocation + "|" + storageLayout.firstJoin())
+                .getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+        playerFirstJoinDAO.loadIndex(new File(plugin.getDataFolder(), "first-join.idx"), fingerprint);
+    }
+
+    private void setupFirstJoinBatch() {
+        if (!plugin.getConfig().getBoolean("database.first-join-batch.enabled", true)) {
+            return;
+        }
+        int maxBatchSize = plugin.getConfig().getInt("database.first-join-batch.max-batch-size", 200);
+        long maxDelay = plugin.getConfig().getLong("database.first-join-batch.max-delay-ms", 50);
+        int maxPending = plugin.getConfig().getInt("database.first-join-batch.max-pending", 4096);
+        playerFirstJoinDAO.startBatching(maxBatchSize, maxDelay, maxPending);
+    }
+
+    // 邀请码读取缓存，未启用时返回 null
+    private LoadingCache<String, InviteCode> createCodeCache() {
+        if (!plugin.getConfig().getBoolean("database.code-cache.enabled", true)) {
+            return null;
+        }
+        return new LoadingCache<>(
+                plugin.getConfig().getInt("database.code-cache.max-size", 1000),
+                plugin.getConfig().getLong("database.code-cache.ttl-seconds", 60),
+                plugin.getConfig().getLong("database.code-cache.negative-ttl-seconds", 5),
+                TimeUnit.SECONDS);
+    }
+    
+    // 玩家名称缓存（名称在玩家进服时更新，缓存时间可以较长）
+    private LoadingCache<UUID, String> createNameCache() {
+        return new LoadingCache<>(
+                plugin.getConfig().getInt("database.name-cache.max-size", 2000),
+                plugin.getConfig().getLong("database.name-cache.ttl-minutes", 60),
+                plugin.getConfig().getLong("database.name-cache.negative-ttl-minutes", 5),
+                TimeUnit.MINUTES);
+    }
+    
+    // 邀请码布隆过滤器，未启用时返回 null
+    private InviteCodeFilter createCodeFilter() {
+        if (!plugin.getConfig().getBoolean("database.code-filter.enabled", true)) {
+            return null;
+        }
+        double bitsPerCode = plugin.getConfig().getDouble("database.code-filter.bits-per-code", 0);
+        if (bitsPerCode <= 0) {
+            bitsPerCode = BloomFilter.bitsPerElement(
+                    plugin.getConfig().getDouble("database.code-filter.false-positive-rate", 0.01));
+        }
+        return new InviteCodeFilter(this, logger, bitsPerCode);
     }
     
     // Getter方法
@@ -235,6 +534,27 @@ public class DatabaseManager {
         return playerFirstJoinDAO;
     }
     
+    // 随机模式下为 null
+    public InviteCodeSequence getInviteCodeSequence() {
+        return inviteCodeSequence;
+    }
+    
+    public CounterDAO getCounterDAO() {
+        return counterDAO;
+    }
+
+    public PlayerNameDAO getPlayerNameDAO() {
+        return playerNameDAO;
+    }
+    
+    public PendingRewardDAO getPendingRewardDAO() {
+        return pendingRewardDAO;
+    }
+
+    public StorageLayout getStorageLayout() {
+        return storageLayout;
+    }
+    
     public String getDatabaseType() {
         return databaseType;
     }
@@ -0,0 +1,146 @@
+package cn.popcraft.invitesystem.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * 首次加入记录合并写入
+ * 重启或代理切换后大量玩家会在几秒内同时进服，这里把短时间内的首次加入记录合并为一条多行插入语句，
+ * 每个玩家仍然拿到自己的结果
+ */
+public class FirstJoinBatcher {
+
+    /**
+     * 写入一批玩家的首次加入记录（已存在的记录保持不变）
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        void write(List<UUID> uuids) throws SQLException;
+    }
+
+    private final Logger logger;
+    private final BatchWriter writer;
+    private final BatchQueue<PendingJoin> queue;
+
+    // 统计信息
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxFlushSize = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public FirstJoinBatcher(Logger logger, BatchWriter writer, int maxBatchSize, long maxDelayMillis, int maxPending) {
+        this.logger = logger;
+        this.writer = writer;
+        this.queue = new BatchQueue<>(logger, "InviteSystem-FirstJoin", maxBatchSize, maxDelayMillis, maxPending,
+                this::flush, batch -> batch.forEach(join -> join.future.complete(false)));
+    }
+
+    /**
+     * 提交一名玩家的首次加入记录
+     * @param uuid 玩家 UUID
+     * @return 是否写入成功；队列已满时返回 null，由调用方直接写入
+     */
+    public CompletableFuture<Boolean> submit(UUID uuid) {
+        PendingJoin join = new PendingJoin(uuid);
+        if (!queue.offer(join)) {
+            return null;
+        }
+        return join.future;
+    }
+
+    private void flush(List<PendingJoin> batch) {
+        // 同一玩家短时间内重复进服时只写一次
+        Map<UUID, List<PendingJoin>> players = new LinkedHashMap<>();
+        for (PendingJoin join : batch) {
+            players.computeIfAbsent(join.uuid, k -> new ArrayList<>()).add(join);
+        }
+
+        boolean success;
+        try {
+            writer.write(new ArrayList<>(players.keySet()));
+            success = true;
+        } catch (SQLException e) {
+            failedFlushes.increment();
+            logger.warning("Failed to write first-join batch of " + players.size() + " players: " + e.getMessage());
+            success = false;
+        }
+
+        long end = System.nanoTime();
+        for (PendingJoin join : batch) {
+            long latency = end - join.queuedAt;
+            totalLatencyNanos.add(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            join.future.complete(success);
+        }
+        maxFlushSize.accumulateAndGet(players.size(), Math::max);
+    }
+
+    /**
+     * 停止接收新记录，并等待已排队的记录落盘
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     */
+    public void close(long timeout, TimeUnit unit) {
+        if (!queue.close(timeout, unit)) {
+            logger.warning("Timed out waiting for pending first-join records");
+        }
+    }
+
+    // 统计信息
+    public int getPendingCount() {
+        return queue.getPendingCount();
+    }
+
+    public long getFlushes() {
+        return queue.getFlushes();
+    }
+
+    public long getFlushedPlayers() {
+        return queue.getFlushedItems();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    public long getMaxFlushSize() {
+        return maxFlushSize.get();
+    }
+
+    public double getAverageFlushSize() {
+        return queue.getAverageFlushSize();
+    }
+
+    public double getAverageFlushMillis() {
+        return queue.getAverageFlushMillis();
+    }
+
+    // 从进服到记录落盘的等待时间
+    public double getAverageLatencyMillis() {
+        long players = queue.getFlushedItems();
+        return players == 0 ? 0 : totalLatencyNanos.sum() / (double) players / 1_000_000.0;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+
+    private static class PendingJoin {
+        private final UUID uuid;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private PendingJoin(UUID uuid) {
+            this.uuid = uuid;
+        }
+    }
+}
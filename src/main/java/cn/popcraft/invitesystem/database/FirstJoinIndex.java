@@ -0,0 +1,240 @@
+package cn.popcraft.invitesystem.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 首次加入时间索引（堆外内存映射文件）
+ * UUID -> 首次加入时间（毫秒时间戳）的开放寻址哈希表，数据保存在插件目录的文件中，只占用很少的堆内存。
+ * 索引只作为数据库的前置缓存：查不到时仍以数据库为准。
+ * 文件在正常关闭时标记为完整；未正常关闭、容量不足或数据库不匹配时需要从数据表重建
+ */
+public class FirstJoinIndex {
+
+    private static final int MAGIC = 0x494E464A; // "INFJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24; // UUID 高 64 位 + 低 64 位 + 时间
+    private static final int MIN_CAPACITY = 1 << 16;
+    // 单个映射最大 2GB
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    // 头部字段偏移
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CLEAN = 8;
+    private static final int OFFSET_CAPACITY = 16;
+    private static final int OFFSET_SIZE = 24;
+    private static final int OFFSET_FINGERPRINT = 32;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private int size;
+    private boolean closed;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FirstJoinIndex(RandomAccessFile file, MappedByteBuffer buffer, int capacity, int size) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.size = size;
+    }
+
+    /**
+     * 打开已有的索引文件
+     * @param path 文件
+     * @param fingerprint 数据库标识，与文件中记录的不同时视为无效
+     * @return 索引；文件不存在、未正常关闭、负载过高或数据库不匹配时返回 null（需要重建）
+     */
+    public static FirstJoinIndex open(File path, long fingerprint) throws IOException {
+        if (!path.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(path, "rw");
+        try {
+            // 先读取头部，确认有效后再映射，无效的文件之后可以直接覆盖
+            if (raf.length() < HEADER_SIZE) {
+                raf.close();
+                return null;
+            }
+            raf.seek(OFFSET_MAGIC);
+            int magic = raf.readInt();
+            int version = raf.readInt();
+            int clean = raf.readInt();
+            raf.seek(OFFSET_CAPACITY);
+            long capacity = raf.readLong();
+            long size = raf.readLong();
+            long storedFingerprint = raf.readLong();
+            if (magic != MAGIC || version != VERSION || clean != 1 || storedFingerprint != fingerprint
+                    || capacity < MIN_CAPACITY || capacity > MAX_CAPACITY || Long.bitCount(capacity) != 1
+                    || raf.length() != HEADER_SIZE + capacity * SLOT_SIZE
+                    || size * 2 > capacity) {
+                raf.close();
+                return null;
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            FirstJoinIndex index = new FirstJoinIndex(raf, buffer, (int) capacity, (int) size);
+            index.markDirty();
+            return index;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 新建（覆盖）索引文件
+     * @param path 文件
+     * @param fingerprint 数据库标识
+     * @param expectedEntries 预计条目数，容量按 4 倍预留
+     */
+    public static FirstJoinIndex create(File path, long fingerprint, long expectedEntries) throws IOException {
+        long wanted = Math.max(MIN_CAPACITY, expectedEntries * 4);
+        int capacity = (int) Math.min(MAX_CAPACITY, Long.highestOneBit(wanted - 1) << 1);
+
+        RandomAccessFile raf = new RandomAccessFile(path, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            buffer.putInt(OFFSET_MAGIC, MAGIC);
+            buffer.putInt(OFFSET_VERSION, VERSION);
+            buffer.putLong(OFFSET_CAPACITY, capacity);
+            buffer.putLong(OFFSET_SIZE, 0);
+            buffer.putLong(OFFSET_FINGERPRINT, fingerprint);
+            FirstJoinIndex index = new FirstJoinIndex(raf, buffer, capacity, 0);
+            index.markDirty();
+            return index;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 查询首次加入时间
+     * @param uuid 玩家 UUID
+     * @return 毫秒时间戳，不在索引中时返回 -1
+     */
+    public long get(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return -1;
+            }
+            int slot = slotOf(msb, lsb);
+            while (true) {
+                int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                long slotMsb = buffer.getLong(offset);
+                long slotLsb = buffer.getLong(offset + 8);
+                if (slotMsb == 0 && slotLsb == 0) {
+                    return -1;
+                }
+                if (slotMsb == msb && slotLsb == lsb) {
+                    return buffer.getLong(offset + 16);
+                }
+                slot = (slot + 1) & mask;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入首次加入时间（已存在时保持不变）
+     * @param uuid 玩家 UUID
+     * @param epochMillis 毫秒时间戳
+     * @return 是否写入；负载过高时不再写入，下次启动会扩容重建
+     */
+    public boolean put(UUID uuid, long epochMillis) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            return false; // 全零用于表示空位
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed || (size + 1) * 4L > capacity * 3L) {
+                return false;
+            }
+            int slot = slotOf(msb, lsb);
+            while (true) {
+                int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                long slotMsb = buffer.getLong(offset);
+                long slotLsb = buffer.getLong(offset + 8);
+                if (slotMsb == msb && slotLsb == lsb) {
+                    return true;
+                }
+                if (slotMsb == 0 && slotLsb == 0) {
+                    buffer.putLong(offset + 16, epochMillis);
+                    buffer.putLong(offset + 8, lsb);
+                    buffer.putLong(offset, msb);
+                    size++;
+                    buffer.putLong(OFFSET_SIZE, size);
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int slotOf(long msb, long lsb) {
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // 使用期间标记为未正常关闭，异常退出后下次启动会重建
+    private void markDirty() {
+        buffer.putInt(OFFSET_CLEAN, 0);
+        buffer.force();
+    }
+
+    /**
+     * 写回磁盘并标记为完整
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            buffer.force();
+            buffer.putInt(OFFSET_CLEAN, 1);
+            buffer.force();
+            file.close();
+        } catch (IOException e) {
+            // 文件未标记为完整，下次启动会重建
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -1,141 +1,429 @@
 package cn.popcraft.invitesystem.database;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.database.DatabaseExecutor.Lane;
 import cn.popcraft.invitesystem.data.Invitation;
+import cn.popcraft.invitesystem.data.InvitationPage;
+import cn.popcraft.invitesystem.data.InvitationSummary;
+import cn.popcraft.invitesystem.data.PageCursor;
+import cn.popcraft.invitesystem.data.RewardJob;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * 邀请关系数据访问对象
  */
 public class InvitationDAO {
 
+    /**
+     * 提交邀请码的结果
+     */
+    public enum SubmitResult {
+        SUCCESS,
+        CODE_UNAVAILABLE,  // 邀请码不存在、已过期或已用完
+        ALREADY_SUBMITTED, // 玩家已经提交过邀请码
+        FAILED
+    }
+
     private final DatabaseManager dbManager;
-    private final String tablePrefix;
+    private final StorageLayout layout;
+    private final boolean mysql;
 
     public InvitationDAO(DatabaseManager dbManager) {
         this.dbManager = dbManager;
-        this.tablePrefix = dbManager.getTablePrefix();
+        this.layout = dbManager.getStorageLayout();
+        this.mysql = "mysql".equalsIgnoreCase(dbManager.getDatabaseType());
     }
 
     // 记录一次成功邀请
     public CompletableFuture<Boolean> createInvitation(Invitation inv) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "INSERT INTO " + tablePrefix + "invitations " +
-                    "(invitee_uuid, inviter_uuid, code, play_time_seconds, claimed_inviter, claimed_invitee) " +
-                    "VALUES (?, ?, ?, ?, ?, ?)";
-            try (Connection conn = dbManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                stmt.setString(1, inv.getInviteeUuid().toString());
-                stmt.setString(2, inv.getInviterUuid().toString());
-                stmt.setString(3, inv.getCode());
-                stmt.setLong(4, inv.getPlayTimeSeconds());
-                stmt.setBoolean(5, inv.isClaimedInviter());
-                stmt.setBoolean(6, inv.isClaimedInvitee());
-                return stmt.executeUpdate() > 0;
+        return dbManager.executeWrite(insertSql(), stmt -> bindInsert(stmt, inv), (count, deltas) -> {
+            CounterDAO.invitationCreated(deltas, inv.getInviterUuid());
+            if (inv.isClaimedInviter()) {
+                CounterDAO.inviterClaimed(deltas, inv.getInviterUuid(), 1);
+            }
+            if (inv.isClaimedInvitee()) {
+                CounterDAO.inviteeClaimed(deltas, 1);
+            }
+        }).thenApply(count -> count > 0);
+    }
+
+    /**
+     * 在一个事务中完成邀请码提交：按条件预留一次使用次数、写入被邀请人标记、插入邀请记录并更新计数器
+     * 使用次数只在 used_count < max_uses 且未过期时增加，并发提交不会超出上限；
+     * 被邀请人标记表以 UUID 为主键，重复提交由主键冲突拒绝，任一步失败时整个事务回滚
+     * @param inv 邀请记录
+     * @param firstTimeOnly 是否只允许每个玩家提交一次
+     * @return 提交结果
+     */
+    public CompletableFuture<SubmitResult> submitInvitation(Invitation inv, boolean firstTimeOnly) {
+        return dbManager.supplyAsync(() -> {
+            String reserveSql = "UPDATE " + layout.inviteCodes() + " SET used_count = used_count + 1 " +
+                    "WHERE code = ? AND used_count < max_uses AND (expires_at IS NULL OR expires_at > ?)";
+            // 不限制重复提交时仍然记录标记，之后开启限制也能正确判断
+            String markerSql = (firstTimeOnly ? "INSERT" : dbManager.insertIgnore()) +
+                    " INTO " + layout.invitees() + " (invitee_uuid) VALUES (?)";
+
+            try (Connection conn = dbManager.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    try (PreparedStatement stmt = conn.prepareStatement(reserveSql)) {
+                        stmt.setString(1, inv.getCode());
+                        layout.setTime(stmt, 2, LocalDateTime.now());
+                        if (stmt.executeUpdate() == 0) {
+                            conn.rollback();
+                            return SubmitResult.CODE_UNAVAILABLE;
+                        }
+                    }
+
+                    try (PreparedStatement stmt = conn.prepareStatement(markerSql)) {
+                        layout.setUuid(stmt, 1, inv.getInviteeUuid());
+                        stmt.executeUpdate();
+                    } catch (SQLException e) {
+                        if (dbManager.isUniqueViolation(e)) {
+                            conn.rollback();
+                            return SubmitResult.ALREADY_SUBMITTED;
+                        }
+                        throw e;
+                    }
+
+                    try (PreparedStatement stmt = conn.prepareStatement(insertSql())) {
+                        bindInsert(stmt, inv);
+                        stmt.executeUpdate();
+                    }
+
+                    Map<String, Long> deltas = new HashMap<>();
+                    CounterDAO.invitationCreated(deltas, inv.getInviterUuid());
+                    dbManager.getCounterDAO().applyDeltas(conn, deltas);
+                    conn.commit();
+                    return SubmitResult.SUCCESS;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
             } catch (SQLException e) {
                 dbManager.handleSqlException(e);
-                return false;
+                return SubmitResult.FAILED;
+            } finally {
+                // 使用次数可能已变化
+                dbManager.getInviteCodeDAO().invalidate(inv.getCode());
             }
-        }, dbManager.getAsyncExecutor());
+        }, Lane.INTERACTIVE);
+    }
+
+    private String insertSql() {
+        return "INSERT INTO " + layout.invitations() + " " +
+                "(invitee_uuid, inviter_uuid, code, play_time_seconds, claimed_inviter, claimed_invitee" +
+                layout.insertTimeColumn("created_at") + ") " +
+                "VALUES (?, ?, ?, ?, ?, ?" + layout.insertTimeParam() + ")";
+    }
+
+    private void bindInsert(PreparedStatement stmt, Invitation inv) throws SQLException {
+        layout.setUuid(stmt, 1, inv.getInviteeUuid());
+        layout.setUuid(stmt, 2, inv.getInviterUuid());
+        stmt.setString(3, inv.getCode());
+        stmt.setLong(4, inv.getPlayTimeSeconds());
+        stmt.setBoolean(5, inv.isClaimedInviter());
+        stmt.setBoolean(6, inv.isClaimedInvitee());
+        layout.bindInsertTime(stmt, 7, inv.getCreatedAt());
     }
 
     // 获取某玩家作为被邀请人、未领取的记录
     public CompletableFuture<List<Invitation>> getUnclaimedAsInvitee(UUID playerUuid) {
-        return queryInvitations("invitee_uuid = ? AND claimed_invitee = FALSE", playerUuid.toString());
+        return queryInvitations("invitee_uuid = ? AND claimed_invitee = FALSE", playerUuid);
     }
 
     // 获取某玩家作为邀请人、未领取的记录
     public CompletableFuture<List<Invitation>> getUnclaimedAsInviter(UUID playerUuid) {
-        return queryInvitations("inviter_uuid = ? AND claimed_inviter = FALSE", playerUuid.toString());
+        return queryInvitations("inviter_uuid = ? AND claimed_inviter = FALSE", playerUuid);
     }
 
-    private CompletableFuture<List<Invitation>> queryInvitations(String whereClause, String uuidStr) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT * FROM " + tablePrefix + "invitations WHERE " + whereClause;
+    private CompletableFuture<List<Invitation>> queryInvitations(String whereClause, UUID playerUuid) {
+        return dbManager.supplyAsync(() -> {
+            String sql = "SELECT * FROM " + layout.invitations() + " WHERE " + whereClause;
             List<Invitation> list = new ArrayList<>();
-            try (Connection conn = dbManager.getConnection();
+            try (Connection conn = dbManager.getReadConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, uuidStr);
+                layout.setUuid(stmt, 1, playerUuid);
                 ResultSet rs = stmt.executeQuery();
                 while (rs.next()) {
                     list.add(mapResultSetToInvitation(rs));
                 }
             } catch (SQLException e) {
+                // 以异常结束，避免把查询失败当作"没有记录"缓存到玩家会话中
                 dbManager.handleSqlException(e);
+                throw new CompletionException(e);
             }
             return list;
-        }, dbManager.getAsyncExecutor());
+        }, Lane.INTERACTIVE);
     }
 
-    // 更新领取状态（原子）
-    public CompletableFuture<Boolean> markClaimed(int invitationId, boolean isInviter) {
-        return CompletableFuture.supplyAsync(() -> {
-            String column = isInviter ? "claimed_inviter" : "claimed_invitee";
-            String sql = "UPDATE " + tablePrefix + "invitations SET " + column + " = TRUE WHERE id = ?";
-            try (Connection conn = dbManager.getConnection();
+    /**
+     * 统计某玩家两种身份下的记录数量
+     * 邀请人部分读取计数器（与邀请记录在同一事务中维护），不随邀请人数增长；
+     * 被邀请人最多只有一条记录，按 (invitee_uuid, claimed_invitee) 复合索引分组计数
+     * @param playerUuid 玩家 UUID
+     */
+    public CompletableFuture<InvitationSummary> getSummary(UUID playerUuid) {
+        return dbManager.supplyAsync(() -> {
+            String sql = "SELECT claimed_invitee AS claimed, COUNT(*) AS total FROM " + layout.invitations() +
+                    " WHERE invitee_uuid = ? GROUP BY claimed_invitee";
+            long inviteeTotal = 0;
+            long inviteeUnclaimed = 0;
+            long[] inviter;
+            try (Connection conn = dbManager.getReadConnection()) {
+                inviter = dbManager.getCounterDAO().readInviter(conn, playerUuid);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    layout.setUuid(stmt, 1, playerUuid);
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        long total = rs.getLong("total");
+                        inviteeTotal += total;
+                        if (!rs.getBoolean("claimed")) {
+                            inviteeUnclaimed += total;
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                dbManager.handleSqlException(e);
+                throw new CompletionException(e);
+            }
+            return new InvitationSummary(inviter[0], inviter[1], inviteeTotal, inviteeUnclaimed);
+        }, Lane.INTERACTIVE);
+    }
+
+    /**
+     * 按页获取某玩家在某一身份下的邀请记录（按 created_at DESC, id DESC 排序）
+     * 使用 (uuid, created_at, id) 索引，每页只读取 limit 行
+     * @param playerUuid 玩家 UUID
+     * @param isInviter true 表示以邀请人身份查询
+     * @param offset 跳过的条数
+     * @param limit 每页条数
+     */
+    public CompletableFuture<List<Invitation>> getPlayerInvitations(UUID playerUuid, boolean isInviter, int offset, int limit) {
+        return dbManager.supplyAsync(() -> {
+            String uuidColumn = isInviter ? "inviter_uuid" : "invitee_uuid";
+            String sql = "SELECT * FROM " + layout.invitations() + " WHERE " + uuidColumn + " = ?" +
+                    " ORDER BY created_at DESC, id DESC LIMIT ? OFFSET ?";
+            List<Invitation> list = new ArrayList<>();
+            try (Connection conn = dbManager.getReadConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, invitationId);
-                return stmt.executeUpdate() > 0;
+                layout.setUuid(stmt, 1, playerUuid);
+                stmt.setInt(2, limit);
+                stmt.setInt(3, offset);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    list.add(mapResultSetToInvitation(rs));
+                }
             } catch (SQLException e) {
                 dbManager.handleSqlException(e);
-                return false;
+                throw new CompletionException(e);
             }
-        }, dbManager.getAsyncExecutor());
+            return list;
+        }, Lane.INTERACTIVE);
+    }
+
+    // 更新领取状态（原子，只有从未领取变为已领取时才返回 true 并更新计数器）
+    public CompletableFuture<Boolean> markClaimed(Invitation invitation, boolean isInviter) {
+        String column = isInviter ? "claimed_inviter" : "claimed_invitee";
+        String sql = "UPDATE " + layout.invitations() + " SET " + column + " = TRUE WHERE id = ? AND " + column + " = FALSE";
+        return dbManager.executeWrite(sql, stmt -> stmt.setInt(1, invitation.getId()), (count, deltas) -> {
+            if (isInviter) {
+                CounterDAO.inviterClaimed(deltas, invitation.getInviterUuid(), count);
+            } else {
+                CounterDAO.inviteeClaimed(deltas, count);
+            }
+        }).thenApply(count -> count > 0);
     }
     
-    // 获取总记录数
-    public CompletableFuture<Integer> getTotalCount() {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT COUNT(*) AS total FROM " + tablePrefix + "invitations";
-            try (Connection conn = dbManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("total");
+    /**
+     * 领取某玩家在某一身份下所有未领取的记录
+     * 用一条条件更新把记录标记为已领取，只返回本次调用实际标记的记录；并发领取时每条记录只会被一个调用拿到。
+     * SQLite 使用 UPDATE ... RETURNING 一条语句完成；MySQL 在事务中先 SELECT ... FOR UPDATE 锁定，再更新同一批行。
+     * 领取到记录时在同一事务中写入奖励任务，奖励发放完成前任务一直保存在数据库中
+     * @param playerUuid 玩家 UUID
+     * @param isInviter true 表示以邀请人身份领取
+     * @return 本次领取产生的奖励任务，没有领取到记录时份数为 0
+     */
+    public CompletableFuture<RewardJob> claimAll(UUID playerUuid, boolean isInviter) {
+        return dbManager.supplyAsync(() -> {
+            String uuidColumn = isInviter ? "inviter_uuid" : "invitee_uuid";
+            String claimedColumn = isInviter ? "claimed_inviter" : "claimed_invitee";
+            String where = " WHERE " + uuidColumn + " = ? AND " + claimedColumn + " = FALSE";
+            String update = "UPDATE " + layout.invitations() + " SET " + claimedColumn + " = TRUE" + where;
+
+            List<Invitation> claimed = new ArrayList<>();
+            RewardJob job = new RewardJob(0, playerUuid, isInviter, 0, 0);
+            try (Connection conn = dbManager.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    if (mysql) {
+                        try (PreparedStatement stmt = conn.prepareStatement(
+                                "SELECT * FROM " + layout.invitations() + where + " FOR UPDATE")) {
+                            layout.setUuid(stmt, 1, playerUuid);
+                            ResultSet rs = stmt.executeQuery();
+                            while (rs.next()) {
+                                claimed.add(mapResultSetToInvitation(rs));
+                            }
+                        }
+                        if (!claimed.isEmpty()) {
+                            try (PreparedStatement stmt = conn.prepareStatement(update)) {
+                                layout.setUuid(stmt, 1, playerUuid);
+                                stmt.executeUpdate();
+                            }
+                        }
+                    } else {
+                        try (PreparedStatement stmt = conn.prepareStatement(update + " RETURNING *")) {
+                            layout.setUuid(stmt, 1, playerUuid);
+                            ResultSet rs = stmt.executeQuery();
+                            while (rs.next()) {
+                                claimed.add(mapResultSetToInvitation(rs));
+                            }
+                        }
+                    }
+
+                    if (!claimed.isEmpty()) {
+                        Map<String, Long> deltas = new HashMap<>();
+                        if (isInviter) {
+                            CounterDAO.inviterClaimed(deltas, playerUuid, claimed.size());
+                        } else {
+                            CounterDAO.inviteeClaimed(deltas, claimed.size());
+                        }
+                        dbManager.getCounterDAO().applyDeltas(conn, deltas);
+                        job = dbManager.getPendingRewardDAO().insertJob(conn, playerUuid, isInviter, claimed.size());
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
                 }
             } catch (SQLException e) {
                 dbManager.handleSqlException(e);
+                throw new CompletionException(e);
             }
-            return 0;
-        }, dbManager.getAsyncExecutor());
+            return job;
+        }, Lane.INTERACTIVE);
     }
     
-    // 分页获取所有邀请记录
-    public CompletableFuture<List<Invitation>> getAllWithPagination(int offset, int limit) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT * FROM " + tablePrefix + "invitations ORDER BY created_at DESC LIMIT ? OFFSET ?";
-            List<Invitation> list = new ArrayList<>();
-            try (Connection conn = dbManager.getConnection();
+    // 获取总记录数（读取计数器，不扫描表）
+    public CompletableFuture<Integer> getTotalCount() {
+        return dbManager.getCounterDAO().getGlobal(CounterDAO.TOTAL).thenApply(Long::intValue);
+    }
+    
+    // 按页码获取邀请记录（OFFSET 方式，仅用于直接跳页；连续翻页请使用游标）
+    public CompletableFuture<InvitationPage> getAllWithPagination(int offset, int limit) {
+        return dbManager.supplyAsync(() -> {
+            String sql = "SELECT * FROM " + layout.invitations() + " ORDER BY created_at DESC, id DESC LIMIT ? OFFSET ?";
+            try (Connection conn = dbManager.getReadConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, limit);
+                stmt.setInt(1, limit + 1);
                 stmt.setInt(2, offset);
                 ResultSet rs = stmt.executeQuery();
-                while (rs.next()) {
-                    list.add(mapResultSetToInvitation(rs));
+                return readPage(rs, offset / limit + 1, limit, false);
+            } catch (SQLException e) {
+                dbManager.handleSqlException(e);
+            }
+            return new InvitationPage(offset / limit + 1, new ArrayList<>(), null, null);
+        }, Lane.INTERACTIVE);
+    }
+    
+    /**
+     * 按游标获取一页邀请记录（按 created_at DESC, id DESC 排序）
+     * 使用 (created_at, id) 索引直接定位，翻到多深都只读取一页的行
+     * @param cursor 游标，null 表示第一页
+     * @param limit 每页条数
+     */
+    public CompletableFuture<InvitationPage> getPage(PageCursor cursor, int limit) {
+        return dbManager.supplyAsync(() -> {
+            String sql;
+            if (cursor == null) {
+                sql = "SELECT * FROM " + layout.invitations() + " ORDER BY created_at DESC, id DESC LIMIT ?";
+            } else if (!cursor.isBackward()) {
+                sql = "SELECT * FROM " + layout.invitations() +
+                        " WHERE created_at < ? OR (created_at = ? AND id < ?)" +
+                        " ORDER BY created_at DESC, id DESC LIMIT ?";
+            } else {
+                sql = "SELECT * FROM " + layout.invitations() +
+                        " WHERE created_at > ? OR (created_at = ? AND id > ?)" +
+                        " ORDER BY created_at ASC, id ASC LIMIT ?";
+            }
+            int page = cursor != null ? cursor.getPage() : 1;
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                if (cursor == null) {
+                    stmt.setInt(1, limit + 1);
+                } else {
+                    layout.setRawTime(stmt, 1, cursor.getCreatedAt());
+                    layout.setRawTime(stmt, 2, cursor.getCreatedAt());
+                    stmt.setInt(3, cursor.getId());
+                    stmt.setInt(4, limit + 1);
                 }
+                ResultSet rs = stmt.executeQuery();
+                return readPage(rs, page, limit, cursor != null && cursor.isBackward());
             } catch (SQLException e) {
                 dbManager.handleSqlException(e);
             }
-            return list;
-        }, dbManager.getAsyncExecutor());
+            return new InvitationPage(page, new ArrayList<>(), null, null);
+        }, Lane.INTERACTIVE);
+    }
+    
+    // 读取 limit + 1 行，多出的一行只用于判断是否还有更多
+    private InvitationPage readPage(ResultSet rs, int page, int limit, boolean backward) throws SQLException {
+        List<Invitation> list = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        boolean hasMore = false;
+        while (rs.next()) {
+            if (list.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            list.add(mapResultSetToInvitation(rs));
+            keys.add(layout.getRawTime(rs, "created_at"));
+        }
+        if (backward) {
+            // 反向查询得到的是升序结果，翻转为降序显示
+            Collections.reverse(list);
+            Collections.reverse(keys);
+        }
+        if (list.isEmpty()) {
+            return new InvitationPage(page, list, null, null);
+        }
+        
+        // 向后翻页时多出的一行在更新的一侧，表示还有上一页；向前翻页时表示还有下一页
+        boolean hasNext = backward || hasMore;
+        boolean hasPrevious = backward ? hasMore : page > 1;
+        int last = list.size() - 1;
+        PageCursor next = hasNext ? new PageCursor(page + 1, false, keys.get(last), list.get(last).getId()) : null;
+        PageCursor previous = hasPrevious
+                ? new PageCursor(Math.max(1, page - 1), true, keys.get(0), list.get(0).getId()) : null;
+        return new InvitationPage(page, list, next, previous);
     }
 
     private Invitation mapResultSetToInvitation(ResultSet rs) throws SQLException {
         int id = rs.getInt("id");
-        UUID invitee = UUID.fromString(rs.getString("invitee_uuid"));
-        UUID inviter = UUID.fromString(rs.getString("inviter_uuid"));
+        UUID invitee = layout.getUuid(rs, "invitee_uuid");
+        UUID inviter = layout.getUuid(rs, "inviter_uuid");
         String code = rs.getString("code");
         long playTime = rs.getLong("play_time_seconds");
         boolean claimedInviter = rs.getBoolean("claimed_inviter");
         boolean claimedInvitee = rs.getBoolean("claimed_invitee");
-        Timestamp createdAtTs = rs.getTimestamp("created_at");
-        LocalDateTime createdAt = createdAtTs != null ? createdAtTs.toLocalDateTime() : LocalDateTime.now();
+        LocalDateTime createdAt = layout.getTime(rs, "created_at");
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
 
         return new Invitation(id, invitee, inviter, code, playTime, claimedInviter, claimedInvitee, createdAt);
     }
@@ -1,103 +1,199 @@
 package cn.popcraft.invitesystem.database;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.database.DatabaseExecutor.Lane;
 import cn.popcraft.invitesystem.data.InviteCode;
+import cn.popcraft.invitesystem.util.LoadingCache;
 
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * 邀请码数据访问对象
  */
 public class InviteCodeDAO {
 
+    /**
+     * 创建邀请码的结果
+     */
+    public enum CreateResult {
+        CREATED,
+        DUPLICATE, // 邀请码已存在（主键冲突）
+        FAILED
+    }
+
     private final DatabaseManager dbManager;
-    private final String tablePrefix;
+    private final StorageLayout layout;
+    // 邀请码读取缓存（为 null 表示未启用）
+    private final LoadingCache<String, InviteCode> cache;
+    // 邀请码布隆过滤器（为 null 表示未启用）
+    private final InviteCodeFilter filter;
 
-    public InviteCodeDAO(DatabaseManager dbManager) {
+    public InviteCodeDAO(DatabaseManager dbManager, LoadingCache<String, InviteCode> cache, InviteCodeFilter filter) {
         this.dbManager = dbManager;
-        this.tablePrefix = dbManager.getTablePrefix();
+        this.layout = dbManager.getStorageLayout();
+        this.cache = cache;
+        this.filter = filter;
     }
 
-    // 创建邀请码
-    public CompletableFuture<Boolean> createInviteCode(InviteCode code) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "INSERT INTO " + tablePrefix + "invite_codes " +
-                    "(code, creator_uuid, expires_at, max_uses, used_count) VALUES (?, ?, ?, ?, 0)";
+    // 创建邀请码（直接插入，由主键判断是否已存在）
+    public CompletableFuture<CreateResult> createInviteCode(InviteCode code) {
+        // 在写入前加入过滤器，写入完成后立即提交的玩家不会被误判为不存在
+        if (filter != null) {
+            filter.add(code.getCode());
+        }
+        return dbManager.supplyAsync(() -> {
+            String sql = "INSERT INTO " + layout.inviteCodes() + " " +
+                    "(code, creator_uuid, expires_at, max_uses, used_count" + layout.insertTimeColumn("created_at") + ") " +
+                    "VALUES (?, ?, ?, ?, 0" + layout.insertTimeParam() + ")";
             try (Connection conn = dbManager.getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setString(1, code.getCode());
-                stmt.setString(2, code.getCreatorUuid().toString());
-                stmt.setTimestamp(3, code.getExpiresAt() != null ? Timestamp.valueOf(code.getExpiresAt()) : null);
+                layout.setUuid(stmt, 2, code.getCreatorUuid());
+                layout.setTime(stmt, 3, code.getExpiresAt());
                 stmt.setInt(4, code.getMaxUses());
-                return stmt.executeUpdate() > 0;
+                layout.bindInsertTime(stmt, 5, code.getCreatedAt());
+                return stmt.executeUpdate() > 0 ? CreateResult.CREATED : CreateResult.FAILED;
             } catch (SQLException e) {
+                if (dbManager.isUniqueViolation(e)) {
+                    return CreateResult.DUPLICATE;
+                }
                 dbManager.handleSqlException(e);
-                return false;
+                return CreateResult.FAILED;
+            } finally {
+                // 清除可能存在的"不存在"缓存
+                invalidate(code.getCode());
             }
-        }, dbManager.getAsyncExecutor());
+        }, Lane.INTERACTIVE);
     }
 
-    // 通过 code 查询（用于提交时验证）
+    // 通过 code 查询（用于提交时验证），优先读取缓存
     public CompletableFuture<InviteCode> getInviteCode(String code) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT * FROM " + tablePrefix + "invite_codes WHERE code = ?";
-            try (Connection conn = dbManager.getConnection();
+        if (cache == null) {
+            return loadInviteCode(code);
+        }
+        return cache.get(code, this::loadInviteCode);
+    }
+
+    private CompletableFuture<InviteCode> loadInviteCode(String code) {
+        return dbManager.supplyAsync(() -> {
+            String sql = "SELECT * FROM " + layout.inviteCodes() + " WHERE code = ?";
+            try (Connection conn = dbManager.getReadConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setString(1, code);
                 ResultSet rs = stmt.executeQuery();
                 if (rs.next()) {
                     return mapResultSetToInviteCode(rs);
                 }
+                return null;
             } catch (SQLException e) {
+                // 以异常结束，避免把查询失败当作"不存在"缓存起来
                 dbManager.handleSqlException(e);
+                throw new CompletionException(e);
             }
-            return null;
-        }, dbManager.getAsyncExecutor());
+        }, Lane.INTERACTIVE);
     }
 
-    // 增加使用次数（原子操作）
-    public CompletableFuture<Boolean> incrementUsedCount(String code) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "UPDATE " + tablePrefix + "invite_codes SET used_count = used_count + 1 WHERE code = ?";
-            try (Connection conn = dbManager.getConnection();
+    // 查询某玩家创建的所有邀请码
+    public CompletableFuture<List<InviteCode>> getCodesByCreator(UUID creator) {
+        return dbManager.supplyAsync(() -> {
+            String sql = "SELECT * FROM " + layout.inviteCodes() + " WHERE creator_uuid = ?";
+            List<InviteCode> codes = new ArrayList<>();
+            try (Connection conn = dbManager.getReadConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, code);
-                return stmt.executeUpdate() > 0;
+                layout.setUuid(stmt, 1, creator);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    codes.add(mapResultSetToInviteCode(rs));
+                }
             } catch (SQLException e) {
                 dbManager.handleSqlException(e);
-                return false;
+                throw new CompletionException(e);
             }
-        }, dbManager.getAsyncExecutor());
+            return codes;
+        }, Lane.INTERACTIVE);
+    }
+
+    // 增加使用次数（原子操作）
+    public CompletableFuture<Boolean> incrementUsedCount(String code) {
+        String sql = "UPDATE " + layout.inviteCodes() + " SET used_count = used_count + 1 WHERE code = ?";
+        return dbManager.executeWrite(sql, stmt -> stmt.setString(1, code))
+                .thenApply(count -> {
+                    invalidate(code);
+                    return count > 0;
+                });
     }
 
     // 清理过期码（可选）
     public CompletableFuture<Integer> cleanupExpiredCodes() {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "DELETE FROM " + tablePrefix + "invite_codes WHERE expires_at IS NOT NULL AND expires_at < ?";
+        return dbManager.supplyAsync(() -> {
+            String sql = "DELETE FROM " + layout.inviteCodes() + " WHERE expires_at IS NOT NULL AND expires_at < ?";
             try (Connection conn = dbManager.getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
-                return stmt.executeUpdate();
+                layout.setTime(stmt, 1, LocalDateTime.now());
+                int deleted = stmt.executeUpdate();
+                if (deleted > 0) {
+                    if (cache != null) {
+                        cache.invalidateAll();
+                    }
+                    // 过滤器无法删除单个邀请码，重建以去掉已删除的邀请码
+                    if (filter != null) {
+                        filter.rebuildAsync();
+                    }
+                }
+                return deleted;
             } catch (SQLException e) {
                 dbManager.handleSqlException(e);
                 return 0;
             }
-        }, dbManager.getAsyncExecutor());
+        }, Lane.BACKGROUND);
+    }
+
+    /**
+     * 判断邀请码是否可能存在（只检查内存中的过滤器，不访问数据库）
+     * @param code 邀请码
+     * @return false 表示一定不存在
+     */
+    public boolean mightExist(String code) {
+        return filter == null || filter.mightExist(code);
+    }
+
+    /**
+     * 邀请码被修改后清除其缓存
+     * @param code 邀请码
+     */
+    public void invalidate(String code) {
+        if (cache != null) {
+            cache.invalidate(code);
+        }
+    }
+
+    // 未启用缓存时为 null
+    public LoadingCache<String, InviteCode> getCache() {
+        return cache;
+    }
+
+    // 未启用过滤器时为 null
+    public InviteCodeFilter getFilter() {
+        return filter;
     }
 
     private InviteCode mapResultSetToInviteCode(ResultSet rs) throws SQLException {
         String code = rs.getString("code");
-        UUID creator = UUID.fromString(rs.getString("creator_uuid"));
-        Timestamp createdAtTs = rs.getTimestamp("created_at");
-        Timestamp expiresAtTs = rs.getTimestamp("expires_at");
+        UUID creator = layout.getUuid(rs, "creator_uuid");
+        LocalDateTime createdAt = layout.getTime(rs, "created_at");
+        LocalDateTime expiresAt = layout.getTime(rs, "expires_at");
         int maxUses = rs.getInt("max_uses");
         int usedCount = rs.getInt("used_count");
 
-        LocalDateTime createdAt = createdAtTs != null ? createdAtTs.toLocalDateTime() : LocalDateTime.now();
-        LocalDateTime expiresAt = expiresAtTs != null ? expiresAtTs.toLocalDateTime() : null;
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
 
         return new InviteCode(code, creator, createdAt, expiresAt, maxUses, usedCount);
     }
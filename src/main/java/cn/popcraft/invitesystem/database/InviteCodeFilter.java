@@ -0,0 +1,200 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.database.DatabaseExecutor.Lane;
+import cn.popcraft.invitesystem.util.BloomFilter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * 邀请码布隆过滤器
+ * 在内存中记录所有已存在的邀请码，提交时可以不查询数据库就判定邀请码一定不存在；
+ * 布隆过滤器不支持删除，过期邀请码被清理后需要定期重建
+ */
+public class InviteCodeFilter {
+
+    // 重建时预留的容量倍数和最小容量
+    private static final int CAPACITY_FACTOR = 2;
+    private static final int MIN_CAPACITY = 1024;
+    // 新增邀请码的保留时间：超过这个时间的写入早已提交，重建扫描一定能读到，不需要再补入
+    private static final long RECENT_ADD_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final DatabaseManager dbManager;
+    private final Logger logger;
+    private final double bitsPerCode;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // 未建立完成时为 null，此时所有邀请码都按"可能存在"处理
+    private volatile BloomFilter active;
+    private volatile long capacity;
+    // 最近新增的邀请码，重建完成时补入新的过滤器（避免写入尚未提交或重建扫描期间新增的邀请码被漏掉）；
+    // 不在重建时只保留最近一段时间的记录，重建被关闭时也不会无限增长
+    private Deque<RecentAdd> recentAdds = new ArrayDeque<>();
+
+    // 统计信息
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+    private volatile long lastBuildMillis;
+
+    public InviteCodeFilter(DatabaseManager dbManager, Logger logger, double bitsPerCode) {
+        this.dbManager = dbManager;
+        this.logger = logger;
+        this.bitsPerCode = bitsPerCode;
+    }
+
+    /**
+     * 判断邀请码是否可能存在
+     * @param code 邀请码
+     * @return false 表示一定不存在
+     */
+    public boolean mightExist(String code) {
+        BloomFilter filter = active;
+        if (filter == null || filter.mightContain(normalize(code))) {
+            passed.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * 记录新建的邀请码（在写入数据库之前调用）
+     * @param code 邀请码
+     */
+    public void add(String code) {
+        String key = normalize(code);
+        boolean overflow;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            recentAdds.addLast(new RecentAdd(key, now));
+            if (!rebuilding.get()) {
+                while (recentAdds.peekFirst().addedAt < now - RECENT_ADD_RETENTION_MILLIS) {
+                    recentAdds.removeFirst();
+                }
+            }
+            BloomFilter filter = active;
+            if (filter == null) {
+                return;
+            }
+            filter.add(key);
+            overflow = filter.getInsertions() > capacity;
+        }
+        // 实际数量超过预留容量时误判率会迅速上升，提前重建
+        if (overflow) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * 根据数据库中的邀请码重新建立过滤器（已在重建时直接返回）
+     */
+    public CompletableFuture<Void> rebuildAsync() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = dbManager.supplyAsync(() -> {
+            long start = System.currentTimeMillis();
+            Deque<RecentAdd> pending;
+            synchronized (this) {
+                pending = recentAdds;
+                recentAdds = new ArrayDeque<>();
+            }
+            try {
+                String table = dbManager.getStorageLayout().inviteCodes();
+                try (Connection conn = dbManager.getReadConnection()) {
+                    long count = 0;
+                    try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) AS total FROM " + table);
+                         ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            count = rs.getLong("total");
+                        }
+                    }
+
+                    long newCapacity = Math.max(MIN_CAPACITY, count * CAPACITY_FACTOR);
+                    BloomFilter filter = new BloomFilter(newCapacity, bitsPerCode);
+                    try (PreparedStatement stmt = conn.prepareStatement("SELECT code FROM " + table);
+                         ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            filter.add(normalize(rs.getString("code")));
+                        }
+                    }
+
+                    synchronized (this) {
+                        for (RecentAdd add : pending) {
+                            filter.add(add.code);
+                        }
+                        for (RecentAdd add : recentAdds) {
+                            filter.add(add.code);
+                        }
+                        capacity = newCapacity;
+                        active = filter;
+                    }
+                    lastBuildMillis = System.currentTimeMillis() - start;
+                    logger.info(String.format("Invite code filter rebuilt: %d codes, %d bits, fill ratio %.3f (%d ms)",
+                            count, filter.getBitCount(), filter.getFillRatio(), lastBuildMillis));
+                }
+            } catch (SQLException e) {
+                // 重建失败时保留待补入的邀请码，下次重建时一起处理
+                synchronized (this) {
+                    pending.addAll(recentAdds);
+                    recentAdds = pending;
+                }
+                dbManager.handleSqlException(e);
+            } finally {
+                rebuilding.set(false);
+            }
+            return (Void) null;
+        }, Lane.BACKGROUND);
+        if (future.isCompletedExceptionally()) {
+            // 后台队列已满，任务没有执行
+            rebuilding.set(false);
+        }
+        return future;
+    }
+
+    // MySQL 默认排序规则不区分大小写，统一按小写记录，避免把存在的邀请码误判为不存在
+    private static String normalize(String code) {
+        return code.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class RecentAdd {
+        private final String code;
+        private final long addedAt;
+
+        private RecentAdd(String code, long addedAt) {
+            this.code = code;
+            this.addedAt = addedAt;
+        }
+    }
+
+    // 统计信息
+    public BloomFilter getActiveFilter() {
+        return active;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getPassed() {
+        return passed.sum();
+    }
+
+    public long getLastBuildMillis() {
+        return lastBuildMillis;
+    }
+}
@@ -0,0 +1,138 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.database.DatabaseExecutor.Lane;
+import cn.popcraft.invitesystem.util.PermutedCodeGenerator;
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 邀请码序号分配
+ * 序号保存在 plugin_meta 中，每次按块预留一段（比较并交换更新，多台服务器共用 MySQL 时也不会重复），
+ * 块内的序号在内存中依次取用；序号经过置换后编码为邀请码，生成时不需要检查是否已存在
+ */
+public class InviteCodeSequence {
+
+    private static final String SEQUENCE_KEY = "code_sequence";
+    private static final String SECRET_KEY = "code_secret";
+    // 并发预留时比较并交换失败的最大重试次数
+    private static final int MAX_RESERVE_ATTEMPTS = 20;
+
+    private final DatabaseManager dbManager;
+    private final String metaTable;
+    private final int blockSize;
+    private PermutedCodeGenerator generator;
+
+    // 当前块中下一个可用序号和块的结束位置（不含）
+    private long next;
+    private long end;
+    // 正在预留的新块，同一时间只预留一次
+    private CompletableFuture<Void> reserving;
+
+    public InviteCodeSequence(DatabaseManager dbManager, int blockSize) {
+        this.dbManager = dbManager;
+        this.metaTable = dbManager.getTablePrefix() + "plugin_meta";
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * 读取（首次使用时生成）置换密钥，启动时调用
+     * @param alphabet 字符集
+     * @param length 邀请码长度
+     */
+    public void init(String alphabet, int length) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            byte[] random = new byte[16];
+            new SecureRandom().nextBytes(random);
+            // 多台服务器同时首次启动时只有一个密钥会写入成功，之后都读取同一个
+            insertIfAbsent(conn, SECRET_KEY, Base64.getEncoder().encodeToString(random));
+            insertIfAbsent(conn, SEQUENCE_KEY, "0");
+            String secret = readMeta(conn, SECRET_KEY);
+            this.generator = new PermutedCodeGenerator(secret, alphabet, length);
+        }
+    }
+
+    /**
+     * 取下一个邀请码，当前块用完时异步预留新块
+     * @return 邀请码
+     */
+    public CompletableFuture<String> nextCode() {
+        CompletableFuture<Void> pending;
+        synchronized (this) {
+            if (next < end) {
+                return CompletableFuture.completedFuture(generator.generate(next++));
+            }
+            if (reserving == null) {
+                reserving = reserveBlock().thenAccept(start -> {
+                    synchronized (this) {
+                        next = start;
+                        end = start + blockSize;
+                    }
+                }).whenComplete((v, e) -> {
+                    synchronized (this) {
+                        reserving = null;
+                    }
+                });
+            }
+            pending = reserving;
+        }
+        // 新块预留完成后重新取号（块可能已被其他调用取完，此时会再预留一块）
+        return pending.thenCompose(v -> nextCode());
+    }
+
+    private CompletableFuture<Long> reserveBlock() {
+        return dbManager.supplyAsync(() -> {
+            try (Connection conn = dbManager.getConnection()) {
+                for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++) {
+                    String current = readMeta(conn, SEQUENCE_KEY);
+                    long start = Long.parseLong(current);
+                    if (start + blockSize > generator.getCapacity()) {
+                        throw new CompletionException(new IllegalStateException(
+                                "Invite code sequence exhausted, increase invite.code-length"));
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "UPDATE " + metaTable + " SET meta_value = ? WHERE meta_key = ? AND meta_value = ?")) {
+                        stmt.setString(1, String.valueOf(start + blockSize));
+                        stmt.setString(2, SEQUENCE_KEY);
+                        stmt.setString(3, current);
+                        if (stmt.executeUpdate() > 0) {
+                            return start;
+                        }
+                    }
+                }
+                throw new CompletionException(new IllegalStateException("Failed to reserve an invite code sequence block"));
+            } catch (SQLException e) {
+                dbManager.handleSqlException(e);
+                throw new CompletionException(e);
+            }
+        }, Lane.INTERACTIVE);
+    }
+
+    private void insertIfAbsent(Connection conn, String key, String value) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                dbManager.insertIgnore() + " INTO " + metaTable + " (meta_key, meta_value) VALUES (?, ?)")) {
+            stmt.setString(1, key);
+            stmt.setString(2, value);
+            stmt.executeUpdate();
+        }
+    }
+
+    private String readMeta(Connection conn, String key) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT meta_value FROM " + metaTable + " WHERE meta_key = ?")) {
+            stmt.setString(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Missing plugin_meta entry: " + key);
+                }
+                return rs.getString("meta_value");
+            }
+        }
+    }
+}
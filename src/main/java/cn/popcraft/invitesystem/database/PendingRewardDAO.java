@@ -0,0 +1,208 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.data.RewardJob;
+import cn.popcraft.invitesystem.database.DatabaseExecutor.Lane;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 待补发奖励数据访问对象
+ * 合并发放时背包放不下的物品按“物品原型（序列化后的文本）+ 数量”保存，玩家之后领取时一次取出并删除；
+ * 已领取但尚未发放完的奖励任务保存在 reward_jobs 表中，发放完成后删除
+ */
+public class PendingRewardDAO {
+
+    private final DatabaseManager dbManager;
+    private final StorageLayout layout;
+    private final boolean mysql;
+
+    public PendingRewardDAO(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.layout = dbManager.getStorageLayout();
+        this.mysql = "mysql".equalsIgnoreCase(dbManager.getDatabaseType());
+    }
+
+    /**
+     * 保存待补发的物品
+     * @param playerUuid 玩家 UUID
+     * @param items 物品原型 -> 数量
+     * @return 写入失败的物品（全部写入时为空）
+     */
+    public CompletableFuture<Map<String, Long>> add(UUID playerUuid, Map<String, Long> items) {
+        String sql = "INSERT INTO " + layout.pendingRewards() + " (player_uuid, item_data, amount) VALUES (?, ?, ?)";
+        Map<String, CompletableFuture<Integer>> writes = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : items.entrySet()) {
+            writes.put(entry.getKey(), dbManager.executeWrite(sql, stmt -> {
+                layout.setUuid(stmt, 1, playerUuid);
+                stmt.setString(2, entry.getKey());
+                stmt.setLong(3, entry.getValue());
+            }));
+        }
+        return CompletableFuture.allOf(writes.values().toArray(new CompletableFuture[0])).handle((v, e) -> {
+            Map<String, Long> failed = new LinkedHashMap<>();
+            writes.forEach((data, write) -> {
+                if (write.isCompletedExceptionally() || write.join() == 0) {
+                    failed.put(data, items.get(data));
+                }
+            });
+            return failed;
+        });
+    }
+
+    /**
+     * 玩家是否有待补发的物品或未发放完的奖励任务（只读查询，会话加载时和未启用会话缓存时使用，避免每次都开启写事务）
+     * @param playerUuid 玩家 UUID
+     */
+    public CompletableFuture<Boolean> hasPending(UUID playerUuid) {
+        return dbManager.supplyAsync(() -> {
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(
+                         "SELECT 1 FROM " + layout.pendingRewards() + " WHERE player_uuid = ?" +
+                                 " UNION ALL SELECT 1 FROM " + layout.rewardJobs() + " WHERE player_uuid = ?")) {
+                layout.setUuid(stmt, 1, playerUuid);
+                layout.setUuid(stmt, 2, playerUuid);
+                stmt.setMaxRows(1);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            } catch (SQLException e) {
+                dbManager.handleSqlException(e);
+                throw new CompletionException(e);
+            }
+        }, Lane.INTERACTIVE);
+    }
+
+    /**
+     * 取出并删除玩家所有待补发的物品
+     * @param playerUuid 玩家 UUID
+     * @return 物品原型 -> 数量（相同物品已合并）
+     */
+    public CompletableFuture<Map<String, Long>> takeAll(UUID playerUuid) {
+        return dbManager.supplyAsync(() -> {
+            String where = " WHERE player_uuid = ?";
+            String delete = "DELETE FROM " + layout.pendingRewards() + where;
+
+            Map<String, Long> items = new LinkedHashMap<>();
+            try (Connection conn = dbManager.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    if (mysql) {
+                        try (PreparedStatement stmt = conn.prepareStatement(
+                                "SELECT item_data, amount FROM " + layout.pendingRewards() + where + " FOR UPDATE")) {
+                            layout.setUuid(stmt, 1, playerUuid);
+                            collect(stmt.executeQuery(), items);
+                        }
+                        if (!items.isEmpty()) {
+                            try (PreparedStatement stmt = conn.prepareStatement(delete)) {
+                                layout.setUuid(stmt, 1, playerUuid);
+                                stmt.executeUpdate();
+                            }
+                        }
+                    } else {
+                        try (PreparedStatement stmt = conn.prepareStatement(delete + " RETURNING item_data, amount")) {
+                            layout.setUuid(stmt, 1, playerUuid);
+                            collect(stmt.executeQuery(), items);
+                        }
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                dbManager.handleSqlException(e);
+                throw new CompletionException(e);
+            }
+            return items;
+        }, Lane.INTERACTIVE);
+    }
+
+    private void collect(ResultSet rs, Map<String, Long> items) throws SQLException {
+        try (ResultSet results = rs) {
+            while (results.next()) {
+                items.merge(results.getString("item_data"), results.getLong("amount"), Long::sum);
+            }
+        }
+    }
+
+    // === 奖励任务 ===
+
+    /**
+     * 在领取奖励的事务中写入奖励任务
+     * @param conn 领取事务的连接
+     * @return 任务
+     */
+    RewardJob insertJob(Connection conn, UUID playerUuid, boolean inviter, int copies) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO " + layout.rewardJobs() + " (player_uuid, inviter, copies, progress) VALUES (?, ?, ?, 0)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            layout.setUuid(stmt, 1, playerUuid);
+            stmt.setBoolean(2, inviter);
+            stmt.setInt(3, copies);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("No id generated for reward job");
+                }
+                return new RewardJob(keys.getLong(1), playerUuid, inviter, copies, 0);
+            }
+        }
+    }
+
+    /**
+     * 查询玩家未发放完的奖励任务
+     * @param playerUuid 玩家 UUID
+     */
+    public CompletableFuture<List<RewardJob>> getJobs(UUID playerUuid) {
+        return dbManager.supplyAsync(() -> {
+            List<RewardJob> jobs = new ArrayList<>();
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(
+                         "SELECT id, inviter, copies, progress FROM " + layout.rewardJobs() +
+                                 " WHERE player_uuid = ? ORDER BY id")) {
+                layout.setUuid(stmt, 1, playerUuid);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        jobs.add(new RewardJob(rs.getLong("id"), playerUuid, rs.getBoolean("inviter"),
+                                rs.getInt("copies"), rs.getLong("progress")));
+                    }
+                }
+            } catch (SQLException e) {
+                dbManager.handleSqlException(e);
+                throw new CompletionException(e);
+            }
+            return jobs;
+        }, Lane.INTERACTIVE);
+    }
+
+    /**
+     * 奖励已全部发放，删除任务
+     */
+    public CompletableFuture<Integer> completeJob(long id) {
+        return dbManager.executeWrite("DELETE FROM " + layout.rewardJobs() + " WHERE id = ?",
+                stmt -> stmt.setLong(1, id));
+    }
+
+    /**
+     * 保存逐项发放的进度（玩家在发放途中离线或插件关闭时调用；删除已发放完的任务失败时标记为已发放完）
+     */
+    public CompletableFuture<Integer> saveJobProgress(long id, long progress) {
+        return dbManager.executeWrite("UPDATE " + layout.rewardJobs() + " SET progress = ? WHERE id = ?", stmt -> {
+            stmt.setLong(1, progress);
+            stmt.setLong(2, id);
+        });
+    }
+}
@@ -1,76 +1,233 @@
 package cn.popcraft.invitesystem.database;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.database.DatabaseExecutor.Lane;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 玩家首次加入数据访问对象
+ * 启用首次加入索引时，已记录过的玩家直接由内存映射索引回答，不访问数据库；
+ * 新记录合并为多行插入写入，已存在的记录由 INSERT IGNORE / INSERT OR IGNORE 跳过
  */
 public class PlayerFirstJoinDAO {
 
+    // SQLite 旧版本每条语句最多 999 个参数，插入每行最多占 2 个
+    private static final int MAX_BATCH_SIZE = 400;
+
     private final DatabaseManager dbManager;
-    private final String tablePrefix;
+    private final StorageLayout layout;
+    // 首次加入索引（未启用或尚未建立完成时为 null）
+    private volatile FirstJoinIndex index;
+    // 首次加入记录合并写入（未启用时为 null）
+    private volatile FirstJoinBatcher batcher;
 
     public PlayerFirstJoinDAO(DatabaseManager dbManager) {
         this.dbManager = dbManager;
-        this.tablePrefix = dbManager.getTablePrefix();
+        this.layout = dbManager.getStorageLayout();
     }
 
-    public CompletableFuture<Boolean> ensureFirstJoinRecord(UUID uuid) {
-        return CompletableFuture.supplyAsync(() -> {
-            // 首先检查记录是否已存在
-            String checkSql = "SELECT uuid FROM " + tablePrefix + "player_first_join WHERE uuid = ?";
-            try (Connection conn = dbManager.getConnection();
-                 PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-                checkStmt.setString(1, uuid.toString());
-                ResultSet rs = checkStmt.executeQuery();
-                if (rs.next()) {
-                    // 记录已存在
-                    return true;
+    /**
+     * 打开首次加入索引，文件无效时在后台从数据表重建
+     * @param file 索引文件
+     * @param fingerprint 数据库标识
+     */
+    public void loadIndex(File file, long fingerprint) {
+        try {
+            FirstJoinIndex existing = FirstJoinIndex.open(file, fingerprint);
+            if (existing != null) {
+                index = existing;
+                dbManager.getLogger().info("Loaded first-join index with " + existing.size() + " players");
+                return;
+            }
+        } catch (IOException e) {
+            dbManager.getLogger().warning("Failed to open first-join index, rebuilding: " + e.getMessage());
+        }
+
+        dbManager.supplyAsync(() -> {
+            long start = System.currentTimeMillis();
+            try (Connection conn = dbManager.getReadConnection()) {
+                long count = 0;
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) AS total FROM " + layout.firstJoin());
+                     ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        count = rs.getLong("total");
+                    }
                 }
+                FirstJoinIndex built = FirstJoinIndex.create(file, fingerprint, count);
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT uuid, first_join FROM " + layout.firstJoin());
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        LocalDateTime firstJoin = layout.getTime(rs, "first_join");
+                        if (firstJoin != null) {
+                            built.put(layout.getUuid(rs, "uuid"), StorageLayout.toEpochMillis(firstJoin));
+                        }
+                    }
+                }
+                index = built;
+                dbManager.getLogger().info("Built first-join index with " + built.size() + " players in "
+                        + (System.currentTimeMillis() - start) + " ms");
             } catch (SQLException e) {
                 dbManager.handleSqlException(e);
-                return false;
+            } catch (IOException e) {
+                dbManager.getLogger().warning("Failed to build first-join index: " + e.getMessage());
             }
-            
-            // 记录不存在，插入新记录
-            String insertSql = "INSERT INTO " + tablePrefix + "player_first_join (uuid) VALUES (?)";
-            try (Connection conn = dbManager.getConnection();
-                 PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
-                insertStmt.setString(1, uuid.toString());
-                insertStmt.executeUpdate();
+            return (Void) null;
+        }, Lane.BACKGROUND);
+    }
+
+    /**
+     * 启用首次加入记录合并写入
+     * @param maxBatchSize 每批最多合并的玩家数
+     * @param maxDelayMillis 第一名玩家最多等待多少毫秒再写入
+     * @param maxPending 最多排队的玩家数
+     */
+    public void startBatching(int maxBatchSize, long maxDelayMillis, int maxPending) {
+        batcher = new FirstJoinBatcher(dbManager.getLogger(), this::writeBatch,
+                Math.min(maxBatchSize, MAX_BATCH_SIZE), maxDelayMillis, maxPending);
+    }
+
+    public void closeBatching() {
+        FirstJoinBatcher current = batcher;
+        batcher = null;
+        if (current != null) {
+            current.close(10, TimeUnit.SECONDS);
+        }
+    }
+
+    // 未启用时为 null
+    public FirstJoinBatcher getBatcher() {
+        return batcher;
+    }
+
+    public void closeIndex() {
+        FirstJoinIndex current = index;
+        index = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    // 未启用或尚未建立完成时为 null
+    public FirstJoinIndex getIndex() {
+        return index;
+    }
+
+    public CompletableFuture<Boolean> ensureFirstJoinRecord(UUID uuid) {
+        // 已记录过的玩家直接返回
+        FirstJoinIndex current = index;
+        if (current != null && current.get(uuid) >= 0) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        FirstJoinBatcher pending = batcher;
+        if (pending != null) {
+            CompletableFuture<Boolean> future = pending.submit(uuid);
+            if (future != null) {
+                return future;
+            }
+        }
+
+        // 未启用合并写入或队列已满时单独写入
+        return dbManager.supplyAsync(() -> {
+            try {
+                writeBatch(Collections.singletonList(uuid));
                 return true;
             } catch (SQLException e) {
-                // 再次检查是否是因为并发导致的重复记录
-                if (e.getErrorCode() == 19 || e.getMessage().contains("UNIQUE")) {
-                    // 已存在，正常
-                    return true;
-                }
                 dbManager.handleSqlException(e);
                 return false;
             }
-        }, dbManager.getAsyncExecutor());
+        }, Lane.BACKGROUND);
+    }
+
+    /**
+     * 写入一批玩家的首次加入记录，已存在的记录保持不变；启用索引时同时把实际的首次加入时间写入索引
+     * @param uuids 玩家 UUID（不重复）
+     */
+    private void writeBatch(List<UUID> uuids) throws SQLException {
+        StringBuilder insertSql = new StringBuilder(dbManager.insertIgnore())
+                .append(" INTO ").append(layout.firstJoin())
+                .append(" (uuid").append(layout.insertTimeColumn("first_join")).append(") VALUES ");
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < uuids.size(); i++) {
+            if (i > 0) {
+                insertSql.append(", ");
+                placeholders.append(", ");
+            }
+            insertSql.append("(?").append(layout.insertTimeParam()).append(")");
+            placeholders.append("?");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        try (Connection conn = dbManager.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(insertSql.toString())) {
+                int param = 1;
+                for (UUID uuid : uuids) {
+                    layout.setUuid(stmt, param++, uuid);
+                    if (!layout.insertTimeParam().isEmpty()) {
+                        layout.bindInsertTime(stmt, param++, now);
+                    }
+                }
+                stmt.executeUpdate();
+            }
+
+            if (index == null) {
+                return;
+            }
+            // 已存在的玩家保留原来的首次加入时间，旧表结构的时间由数据库生成，都需要读回
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT uuid, first_join FROM " + layout.firstJoin()
+                    + " WHERE uuid IN (" + placeholders + ")")) {
+                for (int i = 0; i < uuids.size(); i++) {
+                    layout.setUuid(stmt, i + 1, uuids.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        remember(layout.getUuid(rs, "uuid"), layout.getTime(rs, "first_join"));
+                    }
+                }
+            }
+        }
     }
 
     public CompletableFuture<LocalDateTime> getFirstJoinTime(UUID uuid) {
-        return CompletableFuture.supplyAsync(() -> {
-            String sql = "SELECT first_join FROM " + tablePrefix + "player_first_join WHERE uuid = ?";
-            try (Connection conn = dbManager.getConnection();
+        FirstJoinIndex current = index;
+        if (current != null) {
+            long millis = current.get(uuid);
+            if (millis >= 0) {
+                return CompletableFuture.completedFuture(StorageLayout.fromEpochMillis(millis));
+            }
+        }
+
+        return dbManager.supplyAsync(() -> {
+            String sql = "SELECT first_join FROM " + layout.firstJoin() + " WHERE uuid = ?";
+            try (Connection conn = dbManager.getReadConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, uuid.toString());
+                layout.setUuid(stmt, 1, uuid);
                 ResultSet rs = stmt.executeQuery();
                 if (rs.next()) {
-                    Timestamp ts = rs.getTimestamp("first_join");
-                    return ts != null ? ts.toLocalDateTime() : LocalDateTime.now();
+                    LocalDateTime firstJoin = layout.getTime(rs, "first_join");
+                    remember(uuid, firstJoin);
+                    return firstJoin != null ? firstJoin : LocalDateTime.now();
                 }
             } catch (SQLException e) {
                 dbManager.handleSqlException(e);
             }
             return null;
-        }, dbManager.getAsyncExecutor());
+        }, Lane.INTERACTIVE);
+    }
+
+    private void remember(UUID uuid, LocalDateTime firstJoin) {
+        FirstJoinIndex current = index;
+        if (current != null && firstJoin != null) {
+            current.put(uuid, StorageLayout.toEpochMillis(firstJoin));
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.database.DatabaseExecutor.Lane;
+import cn.popcraft.invitesystem.util.LoadingCache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 玩家名称数据访问对象
+ * 玩家进服时记录名称，列表中显示名称时先读取内存中的 LRU 缓存，未命中的玩家按页一次批量查询
+ */
+public class PlayerNameDAO {
+
+    private final DatabaseManager dbManager;
+    private final StorageLayout layout;
+    private final LoadingCache<UUID, String> cache;
+    private final String upsertSql;
+
+    public PlayerNameDAO(DatabaseManager dbManager, LoadingCache<UUID, String> cache) {
+        this.dbManager = dbManager;
+        this.layout = dbManager.getStorageLayout();
+        this.cache = cache;
+        String table = layout.playerNames();
+        if ("mysql".equalsIgnoreCase(dbManager.getDatabaseType())) {
+            this.upsertSql = "INSERT INTO " + table + " (uuid, name) VALUES (?, ?) " +
+                    "ON DUPLICATE KEY UPDATE name = VALUES(name)";
+        } else {
+            this.upsertSql = "INSERT INTO " + table + " (uuid, name) VALUES (?, ?) " +
+                    "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name";
+        }
+    }
+
+    /**
+     * 记录玩家当前名称（与缓存中的名称相同时不写入）
+     * @param uuid 玩家 UUID
+     * @param name 玩家名称
+     */
+    public CompletableFuture<Boolean> updateName(UUID uuid, String name) {
+        CompletableFuture<String> cached = cache.getIfPresent(uuid);
+        if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()
+                && Objects.equals(cached.getNow(null), name)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        cache.put(uuid, name);
+        return dbManager.executeWrite(upsertSql, stmt -> {
+            layout.setUuid(stmt, 1, uuid);
+            stmt.setString(2, name);
+        }).thenApply(count -> count > 0);
+    }
+
+    /**
+     * 批量查询玩家名称
+     * @param uuids 玩家 UUID
+     * @return UUID -> 名称，从未记录过名称的玩家不在结果中
+     */
+    public CompletableFuture<Map<UUID, String>> getNames(Collection<UUID> uuids) {
+        Map<UUID, String> names = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : new LinkedHashSet<>(uuids)) {
+            CompletableFuture<String> cached = cache.getIfPresent(uuid);
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+                String name = cached.getNow(null);
+                if (name != null) {
+                    names.put(uuid, name);
+                }
+            } else {
+                missing.add(uuid);
+            }
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(names);
+        }
+
+        return dbManager.supplyAsync(() -> {
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < missing.size(); i++) {
+                placeholders.append(i == 0 ? "?" : ", ?");
+            }
+            String sql = "SELECT uuid, name FROM " + layout.playerNames() + " WHERE uuid IN (" + placeholders + ")";
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < missing.size(); i++) {
+                    layout.setUuid(stmt, i + 1, missing.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        names.put(layout.getUuid(rs, "uuid"), rs.getString("name"));
+                    }
+                }
+            } catch (SQLException e) {
+                // 名称只用于显示，查询失败时显示 UUID
+                dbManager.handleSqlException(e);
+                return names;
+            }
+            for (UUID uuid : missing) {
+                // 没有记录的玩家也写入缓存（空结果），避免每次翻页重复查询
+                cache.put(uuid, names.get(uuid));
+            }
+            return names;
+        }, Lane.INTERACTIVE);
+    }
+
+    public LoadingCache<UUID, String> getCache() {
+        return cache;
+    }
+}
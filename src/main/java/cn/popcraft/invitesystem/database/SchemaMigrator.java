@@ -0,0 +1,393 @@
+package cn.popcraft.invitesystem.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * 数据库结构版本迁移
+ * 已执行的版本记录在 schema_version 表中，启动时按顺序执行尚未执行的迁移；
+ * 新的表结构或索引调整只需在 {@link #registerMigrations()} 末尾追加一个版本
+ */
+public class SchemaMigrator {
+
+    /**
+     * 单个迁移步骤
+     */
+    @FunctionalInterface
+    public interface MigrationStep {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final MigrationStep step;
+
+        private Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final Logger logger;
+    private final String tablePrefix;
+    private final boolean mysql;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    public SchemaMigrator(DatabaseManager dbManager, Logger logger) {
+        this.dbManager = dbManager;
+        this.logger = logger;
+        this.tablePrefix = dbManager.getTablePrefix();
+        this.mysql = "mysql".equalsIgnoreCase(dbManager.getDatabaseType());
+        registerMigrations();
+    }
+
+    private void registerMigrations() {
+        migrations.add(new Migration(1, "Create base tables", this::createBaseTables));
+        migrations.add(new Migration(2, "Composite indexes for invitation queries", this::createQueryIndexes));
+        migrations.add(new Migration(3, "Compact storage tables", this::createCompactTables));
+        migrations.add(new Migration(4, "Aggregate counters", this::createCounterTable));
+        migrations.add(new Migration(5, "Unique invitee markers", this::createInviteeTables));
+        migrations.add(new Migration(6, "Creator indexes for invite codes", this::createCreatorIndexes));
+        migrations.add(new Migration(7, "Per-player ordered invitation indexes", this::createPlayerOrderIndexes));
+        migrations.add(new Migration(8, "Player name table", this::createPlayerNameTables));
+        migrations.add(new Migration(9, "Pending reward delivery table", this::createPendingRewardTables));
+        migrations.add(new Migration(10, "Reward job table", this::createRewardJobTables));
+    }
+
+    /**
+     * 执行所有尚未执行的迁移
+     * 某个版本失败时回滚该版本并停止，后续版本不会执行
+     */
+    public void migrate() {
+        try (Connection conn = dbManager.getConnection()) {
+            execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "schema_version (" +
+                    "version INT PRIMARY KEY," +
+                    "description VARCHAR(128) NOT NULL," +
+                    "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+
+            int current = getCurrentVersion(conn);
+            for (Migration migration : migrations) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                if (!apply(conn, migration)) {
+                    return;
+                }
+                current = migration.version;
+            }
+        } catch (SQLException e) {
+            logger.severe("Failed to migrate database schema: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 当前已执行的最高版本，0 表示全新数据库
+     */
+    private int getCurrentVersion(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT MAX(version) AS version FROM " + tablePrefix + "schema_version");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt("version") : 0;
+        }
+    }
+
+    private boolean apply(Connection conn, Migration migration) {
+        // SQLite 的 DDL 支持事务；MySQL 的 DDL 会隐式提交，因此每个迁移步骤都必须可重复执行
+        try {
+            conn.setAutoCommit(false);
+            migration.step.apply(conn);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO " + tablePrefix + "schema_version (version, description) VALUES (?, ?)")) {
+                stmt.setInt(1, migration.version);
+                stmt.setString(2, migration.description);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+            logger.info("Applied database migration v" + migration.version + ": " + migration.description);
+            return true;
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignored) {}
+            logger.severe("Failed to apply database migration v" + migration.version + ": " + e.getMessage());
+            return false;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignored) {}
+        }
+    }
+
+    // === 迁移版本 ===
+
+    // v1：原有的建表语句（对已有安装是幂等的）
+    private void createBaseTables(Connection conn) throws SQLException {
+        // 根据数据库类型选择合适的自增主键语法
+        String autoIncrementSyntax = mysql ?
+            "INTEGER PRIMARY KEY AUTO_INCREMENT" :
+            "INTEGER PRIMARY KEY AUTOINCREMENT";
+
+        String booleanFalse = mysql ? "FALSE" : "0";
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invite_codes (" +
+                "code VARCHAR(32) PRIMARY KEY," +
+                "creator_uuid CHAR(36) NOT NULL," +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "expires_at TIMESTAMP NULL," +
+                "max_uses INT NOT NULL DEFAULT 1," +
+                "used_count INT NOT NULL DEFAULT 0" +
+                ")");
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invitations (" +
+                "id " + autoIncrementSyntax + "," +
+                "invitee_uuid CHAR(36) NOT NULL," +
+                "inviter_uuid CHAR(36) NOT NULL," +
+                "code VARCHAR(32) NOT NULL," +
+                "play_time_seconds BIGINT NOT NULL," +
+                "claimed_inviter BOOLEAN NOT NULL DEFAULT " + booleanFalse + "," +
+                "claimed_invitee BOOLEAN NOT NULL DEFAULT " + booleanFalse + "," +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")");
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "player_first_join (" +
+                "uuid CHAR(36) PRIMARY KEY," +
+                "first_join TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")");
+
+        createIndex(conn, "invitations", "idx_invitations_invitee", "invitee_uuid", null);
+        createIndex(conn, "invitations", "idx_invitations_inviter", "inviter_uuid", null);
+        createIndex(conn, "invite_codes", "idx_invite_codes_expires", "expires_at", null);
+    }
+
+    // v2：按 InvitationDAO 的实际查询形状建立复合索引
+    private void createQueryIndexes(Connection conn) throws SQLException {
+        // queryInvitations: WHERE invitee_uuid = ? AND claimed_invitee = FALSE
+        createIndex(conn, "invitations", "idx_invitations_invitee_claimed", "invitee_uuid, claimed_invitee", null);
+        // queryInvitations: WHERE inviter_uuid = ? AND claimed_inviter = FALSE
+        createIndex(conn, "invitations", "idx_invitations_inviter_claimed", "inviter_uuid, claimed_inviter", null);
+        // getAllWithPagination: ORDER BY created_at DESC（id 作为同一时间内的确定顺序）
+        createIndex(conn, "invitations", "idx_invitations_created", "created_at, id", null);
+
+        // SQLite 部分索引：只索引未领取的行，条件需与查询中的写法完全一致才会被规划器使用
+        createIndex(conn, "invitations", "idx_invitations_invitee_unclaimed", "invitee_uuid",
+                "claimed_invitee = FALSE");
+        createIndex(conn, "invitations", "idx_invitations_inviter_unclaimed", "inviter_uuid",
+                "claimed_inviter = FALSE");
+
+        // 复合索引的前缀已覆盖原来的单列索引
+        dropIndex(conn, "invitations", "idx_invitations_invitee");
+        dropIndex(conn, "invitations", "idx_invitations_inviter");
+    }
+
+    // v3：紧凑存储结构（二进制 UUID + 毫秒时间戳），以及记录数据复制进度的元数据表
+    private void createCompactTables(Connection conn) throws SQLException {
+        String autoIncrementSyntax = mysql ?
+            "INTEGER PRIMARY KEY AUTO_INCREMENT" :
+            "INTEGER PRIMARY KEY AUTOINCREMENT";
+        String booleanFalse = mysql ? "FALSE" : "0";
+        String uuidType = mysql ? "BINARY(16)" : "BLOB";
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "plugin_meta (" +
+                "meta_key VARCHAR(64) PRIMARY KEY," +
+                "meta_value VARCHAR(255) NOT NULL" +
+                ")");
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invite_codes_v2 (" +
+                "code VARCHAR(32) PRIMARY KEY," +
+                "creator_uuid " + uuidType + " NOT NULL," +
+                "created_at BIGINT NOT NULL," +
+                "expires_at BIGINT NULL," +
+                "max_uses INT NOT NULL DEFAULT 1," +
+                "used_count INT NOT NULL DEFAULT 0" +
+                ")");
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invitations_v2 (" +
+                "id " + autoIncrementSyntax + "," +
+                "invitee_uuid " + uuidType + " NOT NULL," +
+                "inviter_uuid " + uuidType + " NOT NULL," +
+                "code VARCHAR(32) NOT NULL," +
+                "play_time_seconds BIGINT NOT NULL," +
+                "claimed_inviter BOOLEAN NOT NULL DEFAULT " + booleanFalse + "," +
+                "claimed_invitee BOOLEAN NOT NULL DEFAULT " + booleanFalse + "," +
+                "created_at BIGINT NOT NULL" +
+                ")");
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "player_first_join_v2 (" +
+                "uuid " + uuidType + " PRIMARY KEY," +
+                "first_join BIGINT NOT NULL" +
+                ")");
+
+        // 与 v2 相同形状的索引（SQLite 的索引名在整个数据库内唯一，需要单独命名）
+        createIndex(conn, "invite_codes_v2", "idx_invite_codes_v2_expires", "expires_at", null);
+        createIndex(conn, "invitations_v2", "idx_invitations_v2_invitee_claimed", "invitee_uuid, claimed_invitee", null);
+        createIndex(conn, "invitations_v2", "idx_invitations_v2_inviter_claimed", "inviter_uuid, claimed_inviter", null);
+        createIndex(conn, "invitations_v2", "idx_invitations_v2_created", "created_at, id", null);
+        createIndex(conn, "invitations_v2", "idx_invitations_v2_invitee_unclaimed", "invitee_uuid",
+                "claimed_invitee = FALSE");
+        createIndex(conn, "invitations_v2", "idx_invitations_v2_inviter_unclaimed", "inviter_uuid",
+                "claimed_inviter = FALSE");
+    }
+
+    // v4：统计计数器（数值由 CounterDAO 在启动时根据邀请记录建立）
+    private void createCounterTable(Connection conn) throws SQLException {
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invite_counters (" +
+                "counter_key VARCHAR(64) PRIMARY KEY," +
+                "counter_value BIGINT NOT NULL DEFAULT 0" +
+                ")");
+    }
+
+    // v5：被邀请人唯一标记（主键保证每个玩家只能提交一次邀请码），并根据已有邀请记录补齐
+    private void createInviteeTables(Connection conn) throws SQLException {
+        String uuidType = mysql ? "BINARY(16)" : "BLOB";
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invitees (" +
+                "invitee_uuid CHAR(36) PRIMARY KEY" +
+                ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "invitees_v2 (" +
+                "invitee_uuid " + uuidType + " PRIMARY KEY" +
+                ")");
+
+        // MySQL 下中途失败时已插入的标记不会回滚，重新执行时跳过已有的行
+        execute(conn, dbManager.insertIgnore() + " INTO " + tablePrefix + "invitees (invitee_uuid) " +
+                "SELECT DISTINCT invitee_uuid FROM " + tablePrefix + "invitations");
+        execute(conn, dbManager.insertIgnore() + " INTO " + tablePrefix + "invitees_v2 (invitee_uuid) " +
+                "SELECT DISTINCT invitee_uuid FROM " + tablePrefix + "invitations_v2");
+    }
+
+    // v6：按创建者查询邀请码（玩家会话缓存加载自己的邀请码）
+    private void createCreatorIndexes(Connection conn) throws SQLException {
+        createIndex(conn, "invite_codes", "idx_invite_codes_creator", "creator_uuid", null);
+        createIndex(conn, "invite_codes_v2", "idx_invite_codes_v2_creator", "creator_uuid", null);
+    }
+
+    // v7：分页查看某玩家的邀请记录时按索引顺序读取，不需要排序
+    private void createPlayerOrderIndexes(Connection conn) throws SQLException {
+        createIndex(conn, "invitations", "idx_invitations_inviter_created", "inviter_uuid, created_at, id", null);
+        createIndex(conn, "invitations", "idx_invitations_invitee_created", "invitee_uuid, created_at, id", null);
+        createIndex(conn, "invitations_v2", "idx_invitations_v2_inviter_created", "inviter_uuid, created_at, id", null);
+        createIndex(conn, "invitations_v2", "idx_invitations_v2_invitee_created", "invitee_uuid, created_at, id", null);
+    }
+
+    // v8：玩家名称（玩家进服时更新，列表显示名称时按页批量查询）
+    private void createPlayerNameTables(Connection conn) throws SQLException {
+        String uuidType = mysql ? "BINARY(16)" : "BLOB";
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "player_names (" +
+                "uuid CHAR(36) PRIMARY KEY," +
+                "name VARCHAR(16) NOT NULL" +
+                ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "player_names_v2 (" +
+                "uuid " + uuidType + " PRIMARY KEY," +
+                "name VARCHAR(16) NOT NULL" +
+                ")");
+    }
+
+    // v9：待补发的奖励物品（合并发放时背包放不下的部分，按物品原型和数量保存）
+    private void createPendingRewardTables(Connection conn) throws SQLException {
+        String autoIncrementSyntax = mysql ?
+            "INTEGER PRIMARY KEY AUTO_INCREMENT" :
+            "INTEGER PRIMARY KEY AUTOINCREMENT";
+        String uuidType = mysql ? "BINARY(16)" : "BLOB";
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "pending_rewards (" +
+                "id " + autoIncrementSyntax + "," +
+                "player_uuid CHAR(36) NOT NULL," +
+                "item_data TEXT NOT NULL," +
+                "amount BIGINT NOT NULL" +
+                ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "pending_rewards_v2 (" +
+                "id " + autoIncrementSyntax + "," +
+                "player_uuid " + uuidType + " NOT NULL," +
+                "item_data TEXT NOT NULL," +
+                "amount BIGINT NOT NULL" +
+                ")");
+        createIndex(conn, "pending_rewards", "idx_pending_rewards_player", "player_uuid", null);
+        createIndex(conn, "pending_rewards_v2", "idx_pending_rewards_v2_player", "player_uuid", null);
+    }
+
+    // v10：已领取但尚未发放完的奖励任务（与领取标记在同一事务中写入，发放完成后删除）
+    private void createRewardJobTables(Connection conn) throws SQLException {
+        String autoIncrementSyntax = mysql ?
+            "INTEGER PRIMARY KEY AUTO_INCREMENT" :
+            "INTEGER PRIMARY KEY AUTOINCREMENT";
+        String uuidType = mysql ? "BINARY(16)" : "BLOB";
+
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "reward_jobs (" +
+                "id " + autoIncrementSyntax + "," +
+                "player_uuid CHAR(36) NOT NULL," +
+                "inviter BOOLEAN NOT NULL," +
+                "copies INT NOT NULL," +
+                "progress BIGINT NOT NULL DEFAULT 0" +
+                ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + tablePrefix + "reward_jobs_v2 (" +
+                "id " + autoIncrementSyntax + "," +
+                "player_uuid " + uuidType + " NOT NULL," +
+                "inviter BOOLEAN NOT NULL," +
+                "copies INT NOT NULL," +
+                "progress BIGINT NOT NULL DEFAULT 0" +
+                ")");
+        createIndex(conn, "reward_jobs", "idx_reward_jobs_player", "player_uuid", null);
+        createIndex(conn, "reward_jobs_v2", "idx_reward_jobs_v2_player", "player_uuid", null);
+    }
+
+    // === 工具方法 ===
+
+    void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * 创建索引（已存在时跳过）
+     * @param table 不带前缀的表名
+     * @param name 索引名
+     * @param columns 列
+     * @param sqliteWhere SQLite 部分索引条件，为 null 表示普通索引；MySQL 不支持部分索引，会直接跳过
+     */
+    void createIndex(Connection conn, String table, String name, String columns, String sqliteWhere)
+            throws SQLException {
+        if (mysql) {
+            if (sqliteWhere != null || indexExists(conn, tablePrefix + table, name)) {
+                return;
+            }
+            execute(conn, "CREATE INDEX " + name + " ON " + tablePrefix + table + "(" + columns + ")");
+        } else {
+            execute(conn, "CREATE INDEX IF NOT EXISTS " + name + " ON " + tablePrefix + table + "(" + columns + ")"
+                    + (sqliteWhere != null ? " WHERE " + sqliteWhere : ""));
+        }
+    }
+
+    void dropIndex(Connection conn, String table, String name) throws SQLException {
+        if (mysql) {
+            if (indexExists(conn, tablePrefix + table, name)) {
+                execute(conn, "DROP INDEX " + name + " ON " + tablePrefix + table);
+            }
+        } else {
+            execute(conn, "DROP INDEX IF EXISTS " + name);
+        }
+    }
+
+    boolean indexExists(Connection conn, String table, String name) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,183 @@
+package cn.popcraft.invitesystem.database;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+
+/**
+ * 数据存储结构
+ * LEGACY：UUID 为 CHAR(36) 字符串，时间为 TIMESTAMP（原有结构）
+ * COMPACT：UUID 为 16 字节二进制，时间为 BIGINT 毫秒时间戳，读取时不需要任何字符串解析
+ * 两种结构的列名完全一致，DAO 只需通过本类读写 UUID 和时间列
+ */
+public class StorageLayout {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final boolean compact;
+    private final String inviteCodesTable;
+    private final String invitationsTable;
+    private final String firstJoinTable;
+    private final String inviteesTable;
+    private final String playerNamesTable;
+    private final String pendingRewardsTable;
+    private final String rewardJobsTable;
+
+    private StorageLayout(boolean compact, String tablePrefix) {
+        this.compact = compact;
+        String suffix = compact ? "_v2" : "";
+        this.inviteCodesTable = tablePrefix + "invite_codes" + suffix;
+        this.invitationsTable = tablePrefix + "invitations" + suffix;
+        this.firstJoinTable = tablePrefix + "player_first_join" + suffix;
+        this.inviteesTable = tablePrefix + "invitees" + suffix;
+        this.playerNamesTable = tablePrefix + "player_names" + suffix;
+        this.pendingRewardsTable = tablePrefix + "pending_rewards" + suffix;
+        this.rewardJobsTable = tablePrefix + "reward_jobs" + suffix;
+    }
+
+    public static StorageLayout legacy(String tablePrefix) {
+        return new StorageLayout(false, tablePrefix);
+    }
+
+    public static StorageLayout compact(String tablePrefix) {
+        return new StorageLayout(true, tablePrefix);
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    // 完整表名（含前缀）
+    public String inviteCodes() {
+        return inviteCodesTable;
+    }
+
+    public String invitations() {
+        return invitationsTable;
+    }
+
+    public String firstJoin() {
+        return firstJoinTable;
+    }
+
+    public String invitees() {
+        return inviteesTable;
+    }
+
+    public String playerNames() {
+        return playerNamesTable;
+    }
+
+    public String pendingRewards() {
+        return pendingRewardsTable;
+    }
+
+    public String rewardJobs() {
+        return rewardJobsTable;
+    }
+
+    // === UUID ===
+
+    public void setUuid(PreparedStatement stmt, int index, UUID uuid) throws SQLException {
+        if (compact) {
+            stmt.setBytes(index, toBytes(uuid));
+        } else {
+            stmt.setString(index, uuid.toString());
+        }
+    }
+
+    public UUID getUuid(ResultSet rs, String column) throws SQLException {
+        if (compact) {
+            byte[] bytes = rs.getBytes(column);
+            return bytes != null ? fromBytes(bytes) : null;
+        }
+        String value = rs.getString(column);
+        return value != null ? UUID.fromString(value) : null;
+    }
+
+    public static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    // === 时间 ===
+
+    public void setTime(PreparedStatement stmt, int index, LocalDateTime time) throws SQLException {
+        if (compact) {
+            if (time != null) {
+                stmt.setLong(index, toEpochMillis(time));
+            } else {
+                stmt.setNull(index, Types.BIGINT);
+            }
+        } else {
+            stmt.setTimestamp(index, time != null ? Timestamp.valueOf(time) : null);
+        }
+    }
+
+    public LocalDateTime getTime(ResultSet rs, String column) throws SQLException {
+        if (compact) {
+            long millis = rs.getLong(column);
+            return rs.wasNull() ? null : fromEpochMillis(millis);
+        }
+        Timestamp ts = rs.getTimestamp(column);
+        return ts != null ? ts.toLocalDateTime() : null;
+    }
+
+    public static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    public static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE);
+    }
+
+    // === 游标翻页用的原始时间值 ===
+    // 旧结构在 SQLite 中以文本保存默认时间，按原始值比较才能与 ORDER BY 的顺序一致
+
+    public String getRawTime(ResultSet rs, String column) throws SQLException {
+        return compact ? String.valueOf(rs.getLong(column)) : rs.getString(column);
+    }
+
+    public void setRawTime(PreparedStatement stmt, int index, String raw) throws SQLException {
+        if (compact) {
+            try {
+                stmt.setLong(index, Long.parseLong(raw));
+            } catch (NumberFormatException e) {
+                throw new SQLException("Invalid time value: " + raw);
+            }
+        } else {
+            stmt.setString(index, raw);
+        }
+    }
+
+    // === 插入时的创建时间列 ===
+    // 旧结构沿用数据库默认值 CURRENT_TIMESTAMP；新结构的 BIGINT 列没有通用的默认值写法，需要显式写入
+
+    public String insertTimeColumn(String column) {
+        return compact ? ", " + column : "";
+    }
+
+    public String insertTimeParam() {
+        return compact ? ", ?" : "";
+    }
+
+    public void bindInsertTime(PreparedStatement stmt, int index, LocalDateTime time) throws SQLException {
+        if (compact) {
+            setTime(stmt, index, time != null ? time : LocalDateTime.now());
+        }
+    }
+}
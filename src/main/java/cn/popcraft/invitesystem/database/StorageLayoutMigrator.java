@@ -0,0 +1,275 @@
+package cn.popcraft.invitesystem.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * 旧存储结构到紧凑结构的数据复制
+ * 按主键分批复制，每批与复制进度在同一个事务中提交；中途停服后下次启动会从断点继续，
+ * 旧表不会被修改或删除，可作为备份保留。
+ * 续传只复制断点之后的行，所以复制开始后旧表不能再写入：复制失败时插件停止加载，
+ * 改回 legacy 启动时丢弃未完成的复制，复制完成后不能再改回 legacy
+ */
+public class StorageLayoutMigrator {
+
+    private static final String DONE_KEY = "compact_copy_done";
+    private static final String CURSOR_KEY_PREFIX = "compact_copy_";
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * 把一行旧数据绑定到紧凑结构的插入语句
+     */
+    @FunctionalInterface
+    private interface RowCopier {
+        void copy(ResultSet rs, PreparedStatement insert) throws SQLException;
+    }
+
+    private final DatabaseManager dbManager;
+    private final Logger logger;
+    private final StorageLayout legacy;
+    private final StorageLayout compact;
+    private final String metaTable;
+
+    public StorageLayoutMigrator(DatabaseManager dbManager, Logger logger) {
+        this.dbManager = dbManager;
+        this.logger = logger;
+        this.legacy = StorageLayout.legacy(dbManager.getTablePrefix());
+        this.compact = StorageLayout.compact(dbManager.getTablePrefix());
+        this.metaTable = dbManager.getTablePrefix() + "plugin_meta";
+    }
+
+    /**
+     * 数据是否已全部复制到紧凑结构
+     * 读取失败时按未复制处理（数据库不可用时旧结构同样无法使用，由后续操作报错）
+     */
+    public boolean isCopyDone() {
+        try (Connection conn = dbManager.getConnection()) {
+            return "true".equals(getMeta(conn, DONE_KEY));
+        } catch (SQLException e) {
+            logger.severe("Failed to read the compact storage copy state: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 清空未完成的复制（紧凑结构的表和复制进度），下次切换到紧凑结构时从头复制
+     * @return 是否已清空（没有未完成的复制时也返回 true）
+     */
+    public boolean discardPartialCopy() {
+        try (Connection conn = dbManager.getConnection()) {
+            boolean started;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT 1 FROM " + metaTable + " WHERE meta_key LIKE ?")) {
+                stmt.setString(1, CURSOR_KEY_PREFIX + "%");
+                try (ResultSet rs = stmt.executeQuery()) {
+                    started = rs.next();
+                }
+            }
+            if (!started) {
+                return true;
+            }
+
+            conn.setAutoCommit(false);
+            try {
+                for (String table : new String[]{compact.inviteCodes(), compact.invitations(), compact.firstJoin(),
+                        compact.invitees(), compact.playerNames(), compact.pendingRewards(), compact.rewardJobs()}) {
+                    try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table)) {
+                        stmt.executeUpdate();
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "DELETE FROM " + metaTable + " WHERE meta_key LIKE ?")) {
+                    stmt.setString(1, CURSOR_KEY_PREFIX + "%");
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            logger.warning("Discarded an unfinished copy to the compact storage layout, "
+                    + "it will start over the next time storage-layout: compact is used");
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Failed to discard the unfinished compact storage copy: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 将旧结构中的数据复制到紧凑结构（已完成时直接返回）
+     * @return 紧凑结构中的数据是否完整可用
+     */
+    public boolean copyLegacyData() {
+        try (Connection conn = dbManager.getConnection()) {
+            if ("true".equals(getMeta(conn, DONE_KEY))) {
+                return true;
+            }
+
+            logger.info("Copying data to the compact storage layout, this may take a while...");
+            long codes = copyTable(conn, "compact_copy_invite_codes", false,
+                    "SELECT * FROM " + legacy.inviteCodes() + " WHERE code > ? ORDER BY code LIMIT ?", "code",
+                    "INSERT INTO " + compact.inviteCodes() +
+                            " (code, creator_uuid, created_at, expires_at, max_uses, used_count) VALUES (?, ?, ?, ?, ?, ?)",
+                    (rs, insert) -> {
+                        insert.setString(1, rs.getString("code"));
+                        compact.setUuid(insert, 2, UUID.fromString(rs.getString("creator_uuid")));
+                        compact.setTime(insert, 3, orNow(rs.getTimestamp("created_at")));
+                        Timestamp expiresAt = rs.getTimestamp("expires_at");
+                        compact.setTime(insert, 4, expiresAt != null ? expiresAt.toLocalDateTime() : null);
+                        insert.setInt(5, rs.getInt("max_uses"));
+                        insert.setInt(6, rs.getInt("used_count"));
+                    });
+
+            long invitations = copyTable(conn, "compact_copy_invitations", true,
+                    "SELECT * FROM " + legacy.invitations() + " WHERE id > ? ORDER BY id LIMIT ?", "id",
+                    "INSERT INTO " + compact.invitations() +
+                            " (id, invitee_uuid, inviter_uuid, code, play_time_seconds, claimed_inviter, claimed_invitee, created_at)" +
+                            " VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                    (rs, insert) -> {
+                        insert.setInt(1, rs.getInt("id"));
+                        compact.setUuid(insert, 2, UUID.fromString(rs.getString("invitee_uuid")));
+                        compact.setUuid(insert, 3, UUID.fromString(rs.getString("inviter_uuid")));
+                        insert.setString(4, rs.getString("code"));
+                        insert.setLong(5, rs.getLong("play_time_seconds"));
+                        insert.setBoolean(6, rs.getBoolean("claimed_inviter"));
+                        insert.setBoolean(7, rs.getBoolean("claimed_invitee"));
+                        compact.setTime(insert, 8, orNow(rs.getTimestamp("created_at")));
+                    });
+
+            long firstJoins = copyTable(conn, "compact_copy_first_join", false,
+                    "SELECT * FROM " + legacy.firstJoin() + " WHERE uuid > ? ORDER BY uuid LIMIT ?", "uuid",
+                    "INSERT INTO " + compact.firstJoin() + " (uuid, first_join) VALUES (?, ?)",
+                    (rs, insert) -> {
+                        compact.setUuid(insert, 1, UUID.fromString(rs.getString("uuid")));
+                        compact.setTime(insert, 2, orNow(rs.getTimestamp("first_join")));
+                    });
+
+            copyTable(conn, "compact_copy_invitees", false,
+                    "SELECT * FROM " + legacy.invitees() + " WHERE invitee_uuid > ? ORDER BY invitee_uuid LIMIT ?",
+                    "invitee_uuid",
+                    // 中断过的复制可能已由 v5 迁移补齐了部分标记，重复的行直接跳过
+                    dbManager.insertIgnore() + " INTO " + compact.invitees() + " (invitee_uuid) VALUES (?)",
+                    (rs, insert) -> compact.setUuid(insert, 1, UUID.fromString(rs.getString("invitee_uuid"))));
+
+            copyTable(conn, "compact_copy_player_names", false,
+                    "SELECT * FROM " + legacy.playerNames() + " WHERE uuid > ? ORDER BY uuid LIMIT ?", "uuid",
+                    dbManager.insertIgnore() + " INTO " + compact.playerNames() + " (uuid, name) VALUES (?, ?)",
+                    (rs, insert) -> {
+                        compact.setUuid(insert, 1, UUID.fromString(rs.getString("uuid")));
+                        insert.setString(2, rs.getString("name"));
+                    });
+
+            copyTable(conn, "compact_copy_pending_rewards", true,
+                    "SELECT * FROM " + legacy.pendingRewards() + " WHERE id > ? ORDER BY id LIMIT ?", "id",
+                    "INSERT INTO " + compact.pendingRewards() + " (id, player_uuid, item_data, amount) VALUES (?, ?, ?, ?)",
+                    (rs, insert) -> {
+                        insert.setInt(1, rs.getInt("id"));
+                        compact.setUuid(insert, 2, UUID.fromString(rs.getString("player_uuid")));
+                        insert.setString(3, rs.getString("item_data"));
+                        insert.setLong(4, rs.getLong("amount"));
+                    });
+
+            copyTable(conn, "compact_copy_reward_jobs", true,
+                    "SELECT * FROM " + legacy.rewardJobs() + " WHERE id > ? ORDER BY id LIMIT ?", "id",
+                    "INSERT INTO " + compact.rewardJobs() + " (id, player_uuid, inviter, copies, progress) VALUES (?, ?, ?, ?, ?)",
+                    (rs, insert) -> {
+                        insert.setInt(1, rs.getInt("id"));
+                        compact.setUuid(insert, 2, UUID.fromString(rs.getString("player_uuid")));
+                        insert.setBoolean(3, rs.getBoolean("inviter"));
+                        insert.setInt(4, rs.getInt("copies"));
+                        insert.setLong(5, rs.getLong("progress"));
+                    });
+
+            setMeta(conn, DONE_KEY, "true");
+            logger.info("Compact storage copy finished: " + codes + " codes, " + invitations + " invitations, "
+                    + firstJoins + " first-join records");
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Failed to copy data to the compact storage layout: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private long copyTable(Connection conn, String cursorKey, boolean numericKey, String selectSql, String keyColumn,
+                           String insertSql, RowCopier copier) throws SQLException {
+        String cursor = getMeta(conn, cursorKey);
+        long total = 0;
+
+        conn.setAutoCommit(false);
+        try {
+            while (true) {
+                int rows = 0;
+                String last = null;
+                try (PreparedStatement select = conn.prepareStatement(selectSql);
+                     PreparedStatement insert = conn.prepareStatement(insertSql)) {
+                    if (numericKey) {
+                        select.setLong(1, cursor != null ? Long.parseLong(cursor) : -1L);
+                    } else {
+                        select.setString(1, cursor != null ? cursor : "");
+                    }
+                    select.setInt(2, CHUNK_SIZE);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            copier.copy(rs, insert);
+                            insert.addBatch();
+                            last = rs.getString(keyColumn);
+                            rows++;
+                        }
+                    }
+                    if (rows == 0) {
+                        break;
+                    }
+                    insert.executeBatch();
+                }
+
+                // 复制进度与本批数据一起提交
+                setMeta(conn, cursorKey, last);
+                conn.commit();
+                total += rows;
+                cursor = last;
+                if (rows < CHUNK_SIZE) {
+                    break;
+                }
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        return total;
+    }
+
+    private static LocalDateTime orNow(Timestamp ts) {
+        return ts != null ? ts.toLocalDateTime() : LocalDateTime.now();
+    }
+
+    private String getMeta(Connection conn, String key) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT meta_value FROM " + metaTable + " WHERE meta_key = ?")) {
+            stmt.setString(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString("meta_value") : null;
+            }
+        }
+    }
+
+    private void setMeta(Connection conn, String key, String value) throws SQLException {
+        // REPLACE INTO 在 MySQL 和 SQLite 中均可用
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "REPLACE INTO " + metaTable + " (meta_key, meta_value) VALUES (?, ?)")) {
+            stmt.setString(1, key);
+            stmt.setString(2, value);
+            stmt.executeUpdate();
+        }
+    }
+}
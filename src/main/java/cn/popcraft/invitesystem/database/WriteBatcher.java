@@ -0,0 +1,209 @@
+package cn.popcraft.invitesystem.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * 批量写入管道
+ * 将短时间内的写操作合并为 JDBC 批处理，在同一个事务中提交；每个调用方仍然拿到自己那条语句的影响行数。
+ * 写操作附带的计数器变化会合并后在同一事务中更新，计数器与数据始终一致
+ */
+public class WriteBatcher {
+
+    /**
+     * 为单条写操作绑定参数
+     */
+    @FunctionalInterface
+    public interface StatementBinder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * 根据写语句实际影响的行数，收集需要更新的计数器
+     */
+    @FunctionalInterface
+    public interface CounterChanges {
+        void collect(int updateCount, Map<String, Long> deltas);
+    }
+
+    private final DatabaseManager dbManager;
+    private final Logger logger;
+    private final BatchQueue<PendingWrite> queue;
+
+    // 统计信息
+    private final LongAdder failedBatches = new LongAdder();
+
+    public WriteBatcher(DatabaseManager dbManager, Logger logger, int maxBatchSize, long maxDelayMillis, int maxPending) {
+        this.dbManager = dbManager;
+        this.logger = logger;
+        this.queue = new BatchQueue<>(logger, "InviteSystem-DB-Writer", maxBatchSize, maxDelayMillis, maxPending,
+                this::flush, batch -> batch.forEach(write -> write.future.complete(0)));
+    }
+
+    /**
+     * 提交一条写语句
+     * @param sql SQL 语句，相同语句的写操作会合并为一个批处理
+     * @param binder 参数绑定
+     * @return 该语句影响的行数（失败时为 0）
+     */
+    public CompletableFuture<Integer> submit(String sql, StatementBinder binder) {
+        return submit(sql, binder, null);
+    }
+
+    /**
+     * 提交一条写语句，并在同一事务中更新计数器
+     * @param sql SQL 语句
+     * @param binder 参数绑定
+     * @param changes 计数器变化，为 null 表示不更新计数器
+     * @return 该语句影响的行数（失败时为 0）
+     */
+    public CompletableFuture<Integer> submit(String sql, StatementBinder binder, CounterChanges changes) {
+        PendingWrite write = new PendingWrite(sql, binder, changes);
+        if (!queue.offer(write)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Database write queue is full"));
+        }
+        return write.future;
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        // 按语句分组，保持首次出现的顺序
+        Map<String, List<PendingWrite>> groups = new LinkedHashMap<>();
+        for (PendingWrite write : batch) {
+            groups.computeIfAbsent(write.sql, k -> new ArrayList<>()).add(write);
+        }
+
+        try (Connection conn = dbManager.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, List<PendingWrite>> group : groups.entrySet()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(group.getKey())) {
+                        for (PendingWrite write : group.getValue()) {
+                            write.binder.bind(stmt);
+                            stmt.addBatch();
+                        }
+                        int[] counts = stmt.executeBatch();
+                        for (int i = 0; i < counts.length; i++) {
+                            group.getValue().get(i).result = counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i];
+                        }
+                    }
+                }
+                Map<String, Long> deltas = new HashMap<>();
+                for (PendingWrite write : batch) {
+                    write.collectChanges(deltas);
+                }
+                dbManager.getCounterDAO().applyDeltas(conn, deltas);
+                conn.commit();
+                for (PendingWrite write : batch) {
+                    write.future.complete(Math.max(0, write.result));
+                }
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                failedBatches.increment();
+                // 整批失败时逐条重试，确保只有出错的那条返回失败
+                flushIndividually(conn, batch);
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            dbManager.handleSqlException(e);
+            for (PendingWrite write : batch) {
+                write.future.complete(0);
+            }
+        }
+    }
+
+    private void flushIndividually(Connection conn, List<PendingWrite> batch) {
+        for (PendingWrite write : batch) {
+            try (PreparedStatement stmt = conn.prepareStatement(write.sql)) {
+                write.binder.bind(stmt);
+                write.result = stmt.executeUpdate();
+                Map<String, Long> deltas = new HashMap<>();
+                write.collectChanges(deltas);
+                dbManager.getCounterDAO().applyDeltas(conn, deltas);
+                conn.commit();
+                write.future.complete(write.result);
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                dbManager.handleSqlException(e);
+                write.future.complete(0);
+            }
+        }
+    }
+
+    private void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.warning("Failed to rollback write batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 停止接收新写入，并等待已排队的写入落盘
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     */
+    public void close(long timeout, TimeUnit unit) {
+        if (!queue.close(timeout, unit)) {
+            logger.warning("Timed out waiting for pending database writes");
+        }
+    }
+
+    // 统计信息
+    public int getPendingCount() {
+        return queue.getPendingCount();
+    }
+
+    public long getFlushedBatches() {
+        return queue.getFlushes();
+    }
+
+    public long getFlushedWrites() {
+        return queue.getFlushedItems();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    public double getAverageBatchSize() {
+        return queue.getAverageFlushSize();
+    }
+
+    public double getAverageFlushMillis() {
+        return queue.getAverageFlushMillis();
+    }
+
+    private static class PendingWrite {
+        private final String sql;
+        private final StatementBinder binder;
+        private final CounterChanges changes;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+        private int result;
+
+        private PendingWrite(String sql, StatementBinder binder, CounterChanges changes) {
+            this.sql = sql;
+            this.binder = binder;
+            this.changes = changes;
+        }
+
+        private void collectChanges(Map<String, Long> deltas) {
+            if (changes != null && result > 0) {
+                changes.collect(result, deltas);
+            }
+        }
+    }
+}
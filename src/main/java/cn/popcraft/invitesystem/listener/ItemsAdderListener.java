@@ -0,0 +1,23 @@
+package cn.popcraft.invitesystem.listener;
+
+import cn.popcraft.invitesystem.InviteSystem;
+import dev.lone.itemsadder.api.Events.ItemsAdderLoadDataEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+/**
+ * ItemsAdder 监听器，ItemsAdder 每次加载完物品数据后重新解析奖励中的 ItemsAdder 物品
+ * 只在 ItemsAdder 已启用时注册
+ */
+public class ItemsAdderListener implements Listener {
+    private final InviteSystem plugin;
+
+    public ItemsAdderListener(InviteSystem plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onItemsAdderLoadData(ItemsAdderLoadDataEvent event) {
+        plugin.getRewardManager().resolveItemsAdderItems();
+    }
+}
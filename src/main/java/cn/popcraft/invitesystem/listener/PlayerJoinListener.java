@@ -1,6 +1,7 @@
 package cn.popcraft.invitesystem.listener;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
@@ -21,7 +22,36 @@ public class PlayerJoinListener implements Listener {
         plugin.getDatabaseManager().getPlayerFirstJoinDAO()
             .ensureFirstJoinRecord(event.getPlayer().getUniqueId());
             
+        // 记录玩家名称（列表中显示名称时使用）
+        plugin.getDatabaseManager().getPlayerNameDAO()
+            .updateName(event.getPlayer().getUniqueId(), event.getPlayer().getName());
+            
         // 记录玩家IP地址
         plugin.getAntiCheatManager().recordPlayerIp(event.getPlayer());
+
+        // 继续发放未发放完的奖励，并补发之前背包放不下的物品（没有待补发的奖励时不访问数据库）
+        plugin.getRewardManager().deliverPending(event.getPlayer());
+
+        // 提醒玩家领取未领取的奖励（会话已在进服前加载，不需要等待数据库）
+        if (plugin.getSettings().isNotifyUnclaimedOnJoin()) {
+            notifyUnclaimedRewards(event.getPlayer());
+        }
+    }
+
+    private void notifyUnclaimedRewards(Player player) {
+        plugin.getSessionManager().getSession(player.getUniqueId()).thenAccept(session -> {
+            long unclaimed = session.getUnclaimedCount();
+            if (unclaimed <= 0) {
+                return;
+            }
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (player.isOnline()) {
+                    player.sendMessage("§a您有 §e" + unclaimed + " §a份邀请奖励待领取，输入 §6/invite claim §a领取。");
+                }
+            });
+        }).exceptionally(e -> {
+            plugin.getLogger().warning("Failed to load invite session for " + player.getName() + ": " + e.getMessage());
+            return null;
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package cn.popcraft.invitesystem.listener;
+
+import cn.popcraft.invitesystem.InviteSystem;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * 玩家会话监听器，进服前预加载邀请数据，退出时移除
+ */
+public class PlayerSessionListener implements Listener {
+    private final InviteSystem plugin;
+
+    public PlayerSessionListener(InviteSystem plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        // 其他插件拒绝登录时不加载
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            plugin.getSessionManager().preload(event.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        // 登录被拒绝（白名单、服务器已满等）时不会触发退出事件
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            plugin.getSessionManager().evict(event.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getSessionManager().evict(event.getPlayer().getUniqueId());
+    }
+}
@@ -1,34 +1,77 @@
 package cn.popcraft.invitesystem.manager;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.config.PluginSettings;
+import cn.popcraft.invitesystem.util.ExpiringMap;
+import cn.popcraft.invitesystem.util.IpPrefixTrie;
 import org.bukkit.entity.Player;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.time.LocalDateTime;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
  * 防作弊管理器
+ * IP 邀请记录按网段保存在前缀树中（同时限制单个地址和 IPv4 /24、IPv6 /64 等网段），
+ * 玩家 IP 和创建冷却保存在按过期时间淘汰的映射中，冷却窗口过去后自动清理；
+ * 状态定期异步保存到插件目录的 anti-cheat.dat，重启后重新载入
  */
 public class AntiCheatManager {
+    private static final String SNAPSHOT_FILE = "anti-cheat.dat";
+    private static final int SNAPSHOT_MAGIC = 0x49534143; // "ISAC"
+    private static final int SNAPSHOT_VERSION = 2;
+
+    // tryAcquireIpInvite 的特殊返回值：未启用 IP 限制 / 超出限制
+    public static final long IP_NOT_TRACKED = 0L;
+    public static final long IP_DENIED = -1L;
+
     private final InviteSystem plugin;
     private final Logger logger;
-    
-    // IP地址与邀请记录的映射（用于防小号）
-    private final Map<String, IpInviteRecord> ipInviteRecords = new ConcurrentHashMap<>();
-    
+    private final File snapshotFile;
+
+    // 网段 -> 冷却窗口内的邀请时间（毫秒时间戳，用于防小号）
+    private final IpPrefixTrie ipInviteRecords;
+
     // 玩家UUID与IP地址的映射
-    private final Map<UUID, String> playerIpMap = new ConcurrentHashMap<>();
-    
-    // 玩家创建邀请码的冷却时间记录
-    private final Map<UUID, LocalDateTime> playerCreateCooldown = new ConcurrentHashMap<>();
+    private final ExpiringMap<UUID, String> playerIpMap;
+
+    // 玩家上次创建邀请码的时间（毫秒时间戳）
+    private final ExpiringMap<UUID, Long> playerCreateCooldown;
+
+    // 上次保存后是否有修改
+    private volatile boolean dirty;
 
     public AntiCheatManager(InviteSystem plugin) {
         this.plugin = plugin;
         this.logger = plugin.getLogger();
+        this.snapshotFile = new File(plugin.getDataFolder(), SNAPSHOT_FILE);
+        int maxEntries = plugin.getSettings().getAntiCheatMaxEntries();
+        this.ipInviteRecords = new IpPrefixTrie(maxEntries);
+        this.playerIpMap = new ExpiringMap<>(maxEntries);
+        this.playerCreateCooldown = new ExpiringMap<>(maxEntries);
+        loadLimits();
+        loadSnapshot();
+    }
+
+    /**
+     * 按当前配置快照设置各前缀长度的邀请上限和记录数上限（重载配置时调用）
+     */
+    public void loadLimits() {
+        PluginSettings settings = plugin.getSettings();
+        ipInviteRecords.setLimits(settings.getSubnetLimits4(), settings.getSubnetLimits6());
+        ipInviteRecords.setMaxEntries(settings.getAntiCheatMaxEntries());
+        playerIpMap.setMaxSize(settings.getAntiCheatMaxEntries());
+        playerCreateCooldown.setMaxSize(settings.getAntiCheatMaxEntries());
     }
 
     /**
@@ -36,119 +79,262 @@ public class AntiCheatManager {
      * @param player 玩家
      */
     public void recordPlayerIp(Player player) {
-        InetSocketAddress address = player.getAddress();
-        if (address != null) {
-            String ip = address.getAddress().getHostAddress();
-            playerIpMap.put(player.getUniqueId(), ip);
+        String ip = getIp(player);
+        if (ip != null) {
+            playerIpMap.put(player.getUniqueId(), ip, System.currentTimeMillis() + getIpWindowMillis());
+            dirty = true;
         }
     }
 
     /**
-     * 检查IP是否允许邀请
+     * 检查IP是否允许邀请（只读取，不记录）
      * @param player 玩家
      * @return 是否允许
      */
     public boolean isIpAllowedForInvite(Player player) {
-        InetSocketAddress address = player.getAddress();
-        if (address == null) {
-            return false;
-        }
-        
-        String ip = address.getAddress().getHostAddress();
-        int maxInviteesPerIp = plugin.getConfig().getInt("invite.max-invitees-per-ip", 3);
-        int ipCooldownHours = plugin.getConfig().getInt("invite.ip-cooldown-hours", 24);
-        
         // 如果限制为-1，表示禁用IP限制
-        if (maxInviteesPerIp == -1) {
+        if (!plugin.getSettings().isIpLimitEnabled()) {
             return true;
         }
-        
-        IpInviteRecord record = ipInviteRecords.get(ip);
-        if (record == null) {
-            return true;
-        }
-        
-        // 检查邀请人数是否超过限制
-        if (record.getInviteCount() >= maxInviteesPerIp) {
+        long[] bits = getAddressBits(player);
+        if (bits == null) {
             return false;
         }
-        
-        // 检查是否在冷却期内
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime lastInviteTime = record.getLastInviteTime();
-        if (lastInviteTime != null && 
-            now.isBefore(lastInviteTime.plusHours(ipCooldownHours))) {
-            return false;
+        return ipInviteRecords.isAllowed(bits[0], bits[1], System.currentTimeMillis() - getIpWindowMillis());
+    }
+
+    /**
+     * 检查并预占一次 IP 邀请名额
+     * 检查和记录是一次原子操作，同一 IP 的并发提交不会超出限制；提交失败时调用 releaseIpInvite 归还名额
+     * @param player 玩家
+     * @return 凭证：IP_DENIED 表示超出限制，IP_NOT_TRACKED 表示未启用限制
+     */
+    public long tryAcquireIpInvite(Player player) {
+        if (!plugin.getSettings().isIpLimitEnabled()) {
+            return IP_NOT_TRACKED;
+        }
+        long[] bits = getAddressBits(player);
+        if (bits == null) {
+            return IP_DENIED;
         }
-        
-        return true;
+        long now = System.currentTimeMillis();
+        if (!ipInviteRecords.tryRecord(bits[0], bits[1], now, now - getIpWindowMillis())) {
+            return IP_DENIED;
+        }
+        dirty = true;
+        return now;
     }
 
     /**
-     * 记录IP邀请
+     * 归还预占的 IP 邀请名额
      * @param player 玩家
+     * @param ticket tryAcquireIpInvite 返回的凭证
      */
-    public void recordIpInvite(Player player) {
-        InetSocketAddress address = player.getAddress();
-        if (address == null) {
+    public void releaseIpInvite(Player player, long ticket) {
+        long[] bits = getAddressBits(player);
+        if (ticket <= IP_NOT_TRACKED || bits == null) {
             return;
         }
-        
-        String ip = address.getAddress().getHostAddress();
-        IpInviteRecord record = ipInviteRecords.computeIfAbsent(ip, k -> new IpInviteRecord());
-        record.incrementInviteCount();
-        record.setLastInviteTime(LocalDateTime.now());
+        ipInviteRecords.remove(bits[0], bits[1], ticket);
+        dirty = true;
     }
-    
+
     /**
      * 检查玩家是否在创建邀请码的冷却期内
      * @param playerUUID 玩家UUID
      * @return 是否在冷却期内
      */
     public boolean isPlayerInCreateCooldown(UUID playerUUID) {
-        int cooldownMinutes = plugin.getConfig().getInt("invite.create-cooldown-minutes", 0);
-        if (cooldownMinutes <= 0) {
+        long cooldown = plugin.getSettings().getCreateCooldownMillis();
+        if (cooldown <= 0) {
             return false; // 无冷却时间限制
         }
-        
-        LocalDateTime lastCreate = playerCreateCooldown.get(playerUUID);
+
+        Long lastCreate = playerCreateCooldown.get(playerUUID);
         if (lastCreate == null) {
-            return false; // 从未创建过邀请码
+            return false; // 从未创建过邀请码，或冷却已结束
         }
-        
-        LocalDateTime now = LocalDateTime.now();
-        return now.isBefore(lastCreate.plusMinutes(cooldownMinutes));
+
+        return System.currentTimeMillis() < lastCreate + cooldown;
     }
-    
+
     /**
      * 记录玩家创建邀请码的时间
      * @param playerUUID 玩家UUID
      */
     public void recordPlayerCreateInvite(UUID playerUUID) {
-        playerCreateCooldown.put(playerUUID, LocalDateTime.now());
+        long cooldown = plugin.getSettings().getCreateCooldownMillis();
+        if (cooldown <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        playerCreateCooldown.put(playerUUID, now, now + cooldown);
+        dirty = true;
     }
 
     /**
-     * IP邀请记录类
+     * 清理冷却窗口已过去的记录（由定时任务调用）
      */
-    private static class IpInviteRecord {
-        private int inviteCount = 0;
-        private LocalDateTime lastInviteTime = null;
+    public void sweep() {
+        int removed = ipInviteRecords.sweep(System.currentTimeMillis() - getIpWindowMillis())
+                + playerIpMap.sweep() + playerCreateCooldown.sweep();
+        if (removed > 0) {
+            dirty = true;
+        }
+    }
+
+    // === 快照 ===
 
-        public synchronized int getInviteCount() {
-            return inviteCount;
+    /**
+     * 有修改时保存快照（先写临时文件再替换，写入过程中崩溃不会损坏旧快照）
+     */
+    public synchronized void saveSnapshot() {
+        if (!dirty) {
+            return;
         }
+        dirty = false;
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp.toPath());
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+            data.writeInt(SNAPSHOT_MAGIC);
+            data.writeInt(SNAPSHOT_VERSION);
+
+            ipInviteRecords.forEach((hi, lo, len, times) -> {
+                data.writeBoolean(true);
+                data.writeLong(hi);
+                data.writeLong(lo);
+                data.writeShort(len);
+                data.writeInt(times.length);
+                for (long time : times) {
+                    data.writeLong(time);
+                }
+            });
+            data.writeBoolean(false);
+
+            playerIpMap.forEach((uuid, ip, expiresAt) -> {
+                data.writeBoolean(true);
+                writeUuid(data, uuid);
+                data.writeLong(expiresAt);
+                data.writeUTF(ip);
+            });
+            data.writeBoolean(false);
 
-        public synchronized void incrementInviteCount() {
-            this.inviteCount++;
+            playerCreateCooldown.forEach((uuid, lastCreate, expiresAt) -> {
+                data.writeBoolean(true);
+                writeUuid(data, uuid);
+                data.writeLong(expiresAt);
+                data.writeLong(lastCreate);
+            });
+            data.writeBoolean(false);
+        } catch (IOException e) {
+            dirty = true;
+            logger.warning("Failed to save anti-cheat snapshot: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            logger.warning("Failed to replace anti-cheat snapshot: " + e.getMessage());
         }
+    }
 
-        public synchronized LocalDateTime getLastInviteTime() {
-            return lastInviteTime;
+    private void loadSnapshot() {
+        if (!snapshotFile.exists()) {
+            return;
         }
+        // 载入时跳过已过期的记录（put 会忽略过期时间已过的条目）
+        try (InputStream in = Files.newInputStream(snapshotFile.toPath());
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            int version = data.readInt() == SNAPSHOT_MAGIC ? data.readInt() : -1;
+            if (version != SNAPSHOT_VERSION) {
+                logger.warning("Ignoring anti-cheat snapshot with unsupported format version " + version + ".");
+                return;
+            }
+            long since = System.currentTimeMillis() - getIpWindowMillis();
+            while (data.readBoolean()) {
+                long hi = data.readLong();
+                long lo = data.readLong();
+                int len = data.readShort();
+                ipInviteRecords.restore(hi, lo, len, readTimes(data), since);
+            }
+            while (data.readBoolean()) {
+                UUID uuid = readUuid(data);
+                long expiresAt = data.readLong();
+                playerIpMap.put(uuid, data.readUTF(), expiresAt);
+            }
+            while (data.readBoolean()) {
+                UUID uuid = readUuid(data);
+                long expiresAt = data.readLong();
+                playerCreateCooldown.put(uuid, data.readLong(), expiresAt);
+            }
+            logger.info("Loaded anti-cheat snapshot: " + ipInviteRecords.size() + " IP records, "
+                    + playerCreateCooldown.size() + " create cooldowns.");
+        } catch (IOException e) {
+            logger.warning("Failed to load anti-cheat snapshot, starting empty: " + e.getMessage());
+        }
+    }
 
-        public synchronized void setLastInviteTime(LocalDateTime lastInviteTime) {
-            this.lastInviteTime = lastInviteTime;
+    private static long[] readTimes(DataInputStream data) throws IOException {
+        long[] times = new long[data.readInt()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = data.readLong();
         }
+        return times;
+    }
+
+    private static void writeUuid(DataOutputStream data, UUID uuid) throws IOException {
+        data.writeLong(uuid.getMostSignificantBits());
+        data.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream data) throws IOException {
+        return new UUID(data.readLong(), data.readLong());
+    }
+
+    // === 工具方法 ===
+
+    private String getIp(Player player) {
+        InetSocketAddress address = player.getAddress();
+        return address == null ? null : address.getAddress().getHostAddress();
+    }
+
+    private long[] getAddressBits(Player player) {
+        InetSocketAddress address = player.getAddress();
+        return address == null || address.getAddress() == null ? null : IpPrefixTrie.toBits(address.getAddress());
+    }
+
+    private long getIpWindowMillis() {
+        return plugin.getSettings().getIpWindowMillis();
+    }
+
+    // 统计信息
+    public int getIpRecordCount() {
+        return ipInviteRecords.size();
+    }
+
+    public int getTrackedPlayerCount() {
+        return playerIpMap.size();
+    }
+
+    public int getCooldownCount() {
+        return playerCreateCooldown.size();
+    }
+
+    public int getIpNodeCount() {
+        return ipInviteRecords.getNodeCount();
+    }
+
+    public int getMaxEntries() {
+        return ipInviteRecords.getMaxEntries();
+    }
+
+    public long getExpirations() {
+        return ipInviteRecords.getExpirations() + playerIpMap.getExpirations() + playerCreateCooldown.getExpirations();
+    }
+
+    public long getEvictions() {
+        return ipInviteRecords.getEvictions() + playerIpMap.getEvictions() + playerCreateCooldown.getEvictions();
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,11 @@
 package cn.popcraft.invitesystem.manager;
 
 import cn.popcraft.invitesystem.InviteSystem;
-import cn.popcraft.invitesystem.data.Invitation;
+import cn.popcraft.invitesystem.data.RewardJob;
+import cn.popcraft.invitesystem.database.InvitationDAO;
+import cn.popcraft.invitesystem.reward.RewardDispatcher;
 import org.bukkit.entity.Player;
 
-import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
@@ -23,76 +24,49 @@ public class ClaimManager {
 
     /**
      * 处理玩家领取奖励
+     * 每个身份只执行一次条件更新，奖励只按本次实际领取到的记录发放，重复或并发领取不会重复发放
      * @param player 玩家
-     * @return 是否成功
+     * @return 是否领取到奖励
      */
     public CompletableFuture<Boolean> processClaimRewards(Player player) {
         UUID playerUUID = player.getUniqueId();
+        InvitationDAO invitationDAO = plugin.getDatabaseManager().getInvitationDAO();
+        SessionManager sessionManager = plugin.getSessionManager();
         
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // 获取玩家作为被邀请人未领取的奖励
-                List<Invitation> inviteeInvitations = plugin.getDatabaseManager().getInvitationDAO()
-                        .getUnclaimedAsInvitee(playerUUID).get();
-                
-                // 获取玩家作为邀请人未领取的奖励
-                List<Invitation> inviterInvitations = plugin.getDatabaseManager().getInvitationDAO()
-                        .getUnclaimedAsInviter(playerUUID).get();
-                
-                boolean success = true;
-                
-                // 发放被邀请人奖励
-                if (!inviteeInvitations.isEmpty()) {
-                    for (Invitation invitation : inviteeInvitations) {
-                        // 在主线程发放奖励
-                        plugin.getServer().getScheduler().runTask(plugin, () -> {
-                            plugin.getRewardManager().grantRewards(player, false); // false表示被邀请人
-                        });
-                        
-                        // 更新数据库状态
-                        boolean updated = plugin.getDatabaseManager().getInvitationDAO()
-                                .markClaimed(invitation.getId(), false).get(); // false表示被邀请人
-                        
-                        if (!updated) {
-                            logger.warning("Failed to update claim status for invitee: " + player.getName());
-                            success = false;
-                        }
-                    }
-                    player.sendMessage("§a作为被邀请人，您已成功领取奖励！");
-                }
-                
-                // 发放邀请人奖励
-                if (!inviterInvitations.isEmpty()) {
-                    for (Invitation invitation : inviterInvitations) {
-                        // 在主线程发放奖励
-                        plugin.getServer().getScheduler().runTask(plugin, () -> {
-                            plugin.getRewardManager().grantRewards(player, true); // true表示邀请人
-                        });
-                        
-                        // 更新数据库状态
-                        boolean updated = plugin.getDatabaseManager().getInvitationDAO()
-                                .markClaimed(invitation.getId(), true).get(); // true表示邀请人
-                        
-                        if (!updated) {
-                            logger.warning("Failed to update claim status for inviter: " + player.getName());
-                            success = false;
-                        }
-                    }
-                    player.sendMessage("§a作为邀请人，您已成功领取奖励！");
-                }
-                
-                if (inviteeInvitations.isEmpty() && inviterInvitations.isEmpty()) {
-                    player.sendMessage("§c您没有可领取的奖励。");
-                    return false;
-                }
-                
-                return success;
-            } catch (Exception e) {
-                logger.severe("Error processing claim rewards: " + e.getMessage());
-                e.printStackTrace();
-                player.sendMessage("§c处理奖励领取时发生错误，请联系管理员。");
+        // 补发之前背包放不下的物品（会话中没有待补发标记时不访问数据库）
+        plugin.getRewardManager().deliverPending(player);
+        
+        // 不按会话中的待领取数量跳过：多台服务器共用 MySQL 时，其他服务器写入的邀请记录不会体现在会话中
+        // 每个身份的领取单独结束会话写操作，另一个身份失败时也不会遗漏
+        sessionManager.beginWrite(playerUUID);
+        CompletableFuture<RewardJob> inviteeFuture = invitationDAO.claimAll(playerUUID, false) // false表示被邀请人
+                .whenComplete((job, e) -> sessionManager.onRewardsClaimed(playerUUID, e == null ? job.getCopies() : 0, false));
+        sessionManager.beginWrite(playerUUID);
+        CompletableFuture<RewardJob> inviterFuture = invitationDAO.claimAll(playerUUID, true) // true表示邀请人
+                .whenComplete((job, e) -> sessionManager.onRewardsClaimed(playerUUID, e == null ? job.getCopies() : 0, true));
+        
+        return inviteeFuture.thenCombine(inviterFuture, (inviteeJob, inviterJob) -> {
+            if (inviteeJob.isEmpty() && inviterJob.isEmpty()) {
+                plugin.getServer().getScheduler().runTask(plugin, () -> player.sendMessage("§c您没有可领取的奖励。"));
                 return false;
             }
+            
+            // 放入发放队列，由主线程按每 tick 的时间预算发放；任务已随领取写入数据库，发放完成后删除
+            RewardDispatcher dispatcher = plugin.getRewardDispatcher();
+            if (!inviteeJob.isEmpty()) {
+                dispatcher.submit(inviteeJob, "§a作为被邀请人，您已成功领取奖励！");
+            }
+            if (!inviterJob.isEmpty()) {
+                dispatcher.submit(inviterJob, "§a作为邀请人，您已成功领取 " + inviterJob.getCopies() + " 份奖励！");
+            }
+            return true;
+        }).exceptionally(e -> {
+            logger.severe("Error processing claim rewards: " + e.getMessage());
+            e.printStackTrace();
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                player.sendMessage("§c处理奖励领取时发生错误，请联系管理员。");
+            });
+            return false;
         });
     }
-}
\ No newline at end of file
+}
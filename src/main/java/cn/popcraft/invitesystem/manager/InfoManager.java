@@ -2,11 +2,19 @@ package cn.popcraft.invitesystem.manager;
 
 import cn.popcraft.invitesystem.InviteSystem;
 import cn.popcraft.invitesystem.data.Invitation;
-import org.bukkit.OfflinePlayer;
+import cn.popcraft.invitesystem.data.InvitationPage;
+import cn.popcraft.invitesystem.data.InvitationSummary;
+import cn.popcraft.invitesystem.data.InviteCode;
+import cn.popcraft.invitesystem.data.PageCursor;
+import cn.popcraft.invitesystem.data.PlayerSession;
 import org.bukkit.entity.Player;
 
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
@@ -15,6 +23,10 @@ import java.util.logging.Logger;
  * 信息查询管理器
  */
 public class InfoManager {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int PAGE_SIZE = 10; // 每页显示10条记录
+    private static final int MAX_CODE_LINES = 5; // 邀请概况中最多显示的邀请码数
+
     private final InviteSystem plugin;
     private final Logger logger;
 
@@ -24,130 +36,219 @@ public class InfoManager {
     }
 
     /**
-     * 获取玩家的邀请信息
+     * 获取玩家的邀请概况（数量和自己的邀请码），邀请记录明细按页查看
      * @param player 玩家
      */
     public CompletableFuture<Void> getPlayerInviteInfo(Player player) {
         UUID playerUUID = player.getUniqueId();
         
-        return CompletableFuture.runAsync(() -> {
-            try {
-                // 获取玩家作为被邀请人的记录
-                List<Invitation> inviteeInvitations = plugin.getDatabaseManager().getInvitationDAO()
-                        .getUnclaimedAsInvitee(playerUUID).get();
-                
-                // 获取玩家作为邀请人的记录
-                List<Invitation> inviterInvitations = plugin.getDatabaseManager().getInvitationDAO()
-                        .getUnclaimedAsInviter(playerUUID).get();
-                
-                // 在主线程发送消息
-                plugin.getServer().getScheduler().runTask(plugin, () -> {
-                    player.sendMessage("§e======= §6邀请信息 §e=======");
-                    
-                    // 显示作为被邀请人的信息
-                    player.sendMessage("§a作为被邀请人:");
-                    if (inviteeInvitations.isEmpty()) {
-                        player.sendMessage("  §7无记录");
-                    } else {
-                        for (Invitation invitation : inviteeInvitations) {
-                            player.sendMessage("  §7邀请码: §f" + invitation.getCode());
-                            player.sendMessage("  §7邀请人: §f" + invitation.getInviterUuid());
-                            player.sendMessage("  §7提交时间: §f" + invitation.getCreatedAt().toString());
-                            player.sendMessage("  §7奖励状态: §f" + (invitation.isClaimedInvitee() ? "§a已领取" : "§c未领取"));
-                        }
-                    }
-                    
-                    // 显示作为邀请人的信息
-                    player.sendMessage("§a作为邀请人:");
-                    if (inviterInvitations.isEmpty()) {
-                        player.sendMessage("  §7无记录");
-                    } else {
-                        for (Invitation invitation : inviterInvitations) {
-                            player.sendMessage("  §7邀请码: §f" + invitation.getCode());
-                            player.sendMessage("  §7被邀请人: §f" + invitation.getInviteeUuid());
-                            player.sendMessage("  §7邀请时间: §f" + invitation.getCreatedAt().toString());
-                            player.sendMessage("  §7奖励状态: §f" + (invitation.isClaimedInviter() ? "§a已领取" : "§c未领取"));
-                        }
-                    }
-                    
-                    player.sendMessage("§e========================");
-                });
-            } catch (Exception e) {
-                logger.severe("Error getting player invite info: " + e.getMessage());
-                e.printStackTrace();
-                plugin.getServer().getScheduler().runTask(plugin, () -> {
-                    player.sendMessage("§c获取邀请信息时发生错误，请联系管理员。");
+        // 从玩家会话读取（进服前已加载，之后随本插件的写入更新），在异步线程中生成消息
+        return plugin.getSessionManager().getSession(playerUUID)
+                .thenApply(this::renderSummary)
+                .thenAccept(lines -> sendLines(player, lines))
+                .exceptionally(e -> {
+                    logger.severe("Error getting player invite info: " + e.getMessage());
+                    e.printStackTrace();
+                    plugin.getServer().getScheduler().runTask(plugin, () -> {
+                        player.sendMessage("§c获取邀请信息时发生错误，请联系管理员。");
+                    });
+                    return null;
                 });
-            }
+    }
+
+    /**
+     * 按页查看玩家在某一身份下的邀请记录
+     * @param player 玩家
+     * @param isInviter true 表示查看自己邀请的玩家，false 表示查看自己提交的邀请码
+     * @param page 页码（从1开始）
+     */
+    public CompletableFuture<Void> getPlayerInviteDetails(Player player, boolean isInviter, int page) {
+        UUID playerUUID = player.getUniqueId();
+        
+        return plugin.getSessionManager().getSession(playerUUID).thenCompose(session -> {
+            // 总页数按会话中的数量计算，每页只读取一页的行
+            long total = session.getSummary().getTotal(isInviter);
+            int totalPages = Math.max(1, (int) Math.ceil((double) total / PAGE_SIZE));
+            int currentPage = Math.min(Math.max(1, page), totalPages);
+            return plugin.getDatabaseManager().getInvitationDAO()
+                    .getPlayerInvitations(playerUUID, isInviter, (currentPage - 1) * PAGE_SIZE, PAGE_SIZE)
+                    .thenCompose(invitations -> resolveNames(invitations)
+                            .thenApply(names -> renderDetails(isInviter, currentPage, totalPages, total, invitations, names)));
+        }).thenAccept(lines -> sendLines(player, lines)).exceptionally(e -> {
+            logger.severe("Error getting player invite details: " + e.getMessage());
+            e.printStackTrace();
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                player.sendMessage("§c获取邀请信息时发生错误，请联系管理员。");
+            });
+            return null;
         });
     }
 
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private List<String> renderSummary(PlayerSession session) {
+        InvitationSummary summary = session.getSummary();
+        List<InviteCode> ownedCodes = session.getOwnedCodes();
+        List<String> lines = new ArrayList<>();
+        
+        lines.add("§e======= §6邀请信息 §e=======");
+        lines.add("§a累计邀请: §f" + summary.getInviterTotal() + " 人  §a待领取邀请奖励: §f" + summary.getInviterUnclaimed() + " 份");
+        lines.add("§a提交邀请码: §f" + (summary.getInviteeTotal() > 0 ? "已提交" : "未提交")
+                + "  §a待领取被邀请奖励: §f" + summary.getInviteeUnclaimed() + " 份");
+        
+        // 显示自己创建的邀请码（最多显示 MAX_CODE_LINES 个）
+        lines.add("§a我的邀请码:");
+        if (ownedCodes.isEmpty()) {
+            lines.add("  §7无记录");
+        } else {
+            for (int i = 0; i < ownedCodes.size() && i < MAX_CODE_LINES; i++) {
+                InviteCode code = ownedCodes.get(i);
+                lines.add("  §f" + code.getCode() + " §7已使用 §f" + code.getUsedCount() + "/" + code.getMaxUses()
+                        + (code.isExpired() ? " §c已过期" : ""));
+            }
+            if (ownedCodes.size() > MAX_CODE_LINES) {
+                lines.add("  §7...共 " + ownedCodes.size() + " 个邀请码");
+            }
+        }
+        
+        if (summary.getInviterTotal() > 0) {
+            lines.add("§e使用 §6/invite info inviter [页码] §e查看邀请记录");
+        }
+        if (summary.getInviteeTotal() > 0) {
+            lines.add("§e使用 §6/invite info invitee [页码] §e查看提交记录");
+        }
+        if (summary.getInviterUnclaimed() + summary.getInviteeUnclaimed() > 0) {
+            lines.add("§e使用 §6/invite claim §e领取奖励");
+        }
+        lines.add("§e========================");
+        return lines;
+    }
+
+    private List<String> renderDetails(boolean isInviter, int page, int totalPages, long total,
+                                       List<Invitation> invitations, Map<UUID, String> names) {
+        List<String> lines = new ArrayList<>();
+        lines.add("§e======= §6" + (isInviter ? "邀请记录" : "提交记录") + " (第" + page + "页/共" + totalPages + "页) §e=======");
+        lines.add("§e总记录数: §f" + total);
+        
+        if (invitations.isEmpty()) {
+            lines.add("§c当前页没有邀请记录。");
+        } else {
+            int startIndex = (page - 1) * PAGE_SIZE;
+            for (int i = 0; i < invitations.size(); i++) {
+                Invitation invitation = invitations.get(i);
+                boolean claimed = isInviter ? invitation.isClaimedInviter() : invitation.isClaimedInvitee();
+                lines.add("§e" + (startIndex + i + 1) + ". §f" + (isInviter ? "被邀请人: §b" + nameOf(names, invitation.getInviteeUuid())
+                        : "邀请人: §a" + nameOf(names, invitation.getInviterUuid())) +
+                        " §f邀请码: §d" + invitation.getCode() +
+                        " §f时间: §7" + invitation.getCreatedAt().format(FORMATTER) +
+                        " " + (claimed ? "§a已领取" : "§c未领取"));
+            }
+        }
+        
+        lines.add("§e================================");
+        String role = isInviter ? "inviter" : "invitee";
+        if (page < totalPages) {
+            lines.add("§e使用 §6/invite info " + role + " " + (page + 1) + " §e查看下一页");
+        }
+        if (page > 1) {
+            lines.add("§e使用 §6/invite info " + role + " " + (page - 1) + " §e查看上一页");
+        }
+        return lines;
+    }
+
+    // 整页消息一次性交给主线程发送
+    private void sendLines(Player player, List<String> lines) {
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (player.isOnline()) {
+                player.sendMessage(lines.toArray(new String[0]));
+            }
+        });
+    }
 
     /**
-     * 获取所有邀请记录（管理员命令）
+     * 获取所有邀请记录（管理员命令，按页码跳转）
      * @param player 管理员玩家
      * @param page 页码（从1开始）
      */
     public CompletableFuture<Void> getAllInviteRecords(Player player, int page) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                int pageSize = 10; // 每页显示10条记录
-                int offset = (page - 1) * pageSize;
-
-                // 获取总记录数
-                CompletableFuture<Integer> countFuture = plugin.getDatabaseManager().getInvitationDAO()
-                        .getTotalCount();
-
-                // 获取当前页的记录
-                CompletableFuture<List<Invitation>> invitationsFuture = plugin.getDatabaseManager().getInvitationDAO()
-                        .getAllWithPagination(offset, pageSize);
-
-                // 等待两个异步操作完成
-                CompletableFuture.allOf(countFuture, invitationsFuture).join();
-
-                int totalCount = countFuture.get();
-                List<Invitation> invitations = invitationsFuture.get();
-
-                int totalPages = (int) Math.ceil((double) totalCount / pageSize);
-
-                // 在主线程中发送消息给玩家
-                plugin.getServer().getScheduler().runTask(plugin, () -> {
-                    player.sendMessage("§e======= §6所有邀请记录 (第" + page + "页/共" + totalPages + "页) §e=======");
-                    player.sendMessage("§e总记录数: §f" + totalCount);
-
-                    if (invitations.isEmpty()) {
-                        player.sendMessage("§c当前页没有邀请记录。");
-                    } else {
-                        for (int i = 0; i < invitations.size(); i++) {
-                            Invitation invitation = invitations.get(i);
-                            OfflinePlayer inviter = plugin.getServer().getOfflinePlayer(invitation.getInviterUuid());
-                            OfflinePlayer invitee = plugin.getServer().getOfflinePlayer(invitation.getInviteeUuid());
-
-                            String inviterName = inviter.getName() != null ? inviter.getName() : invitation.getInviterUuid().toString();
-                            String inviteeName = invitee.getName() != null ? invitee.getName() : invitation.getInviteeUuid().toString();
-
-                            player.sendMessage("§e" + (i + 1) + ". §f邀请人: §a" + inviterName +
-                                    " §f被邀请人: §b" + inviteeName +
-                                    " §f邀请码: §d" + invitation.getCode() +
-                                    " §f时间: §7" + invitation.getCreatedAt().format(FORMATTER));
-                        }
-                    }
-
-                    player.sendMessage("§e================================");
-                    if (page < totalPages) {
-                        player.sendMessage("§e使用 §6/invite list " + (page + 1) + " §e查看下一页");
-                    } else if (page > 1) {
-                        player.sendMessage("§e使用 §6/invite list " + (Math.max(1, page - 1)) + " §e查看上一页");
-                    }
-                });
-            } catch (Exception e) {
-                logger.severe("Error getting all invite records: " + e.getMessage());
-                e.printStackTrace();
-                plugin.getServer().getScheduler().runTask(plugin, () -> {
-                    player.sendMessage("§c获取邀请记录时发生错误，请联系管理员。");
+        // 第一页直接走游标查询，其余页码需要 OFFSET 定位
+        CompletableFuture<InvitationPage> pageFuture = page <= 1
+                ? plugin.getDatabaseManager().getInvitationDAO().getPage(null, PAGE_SIZE)
+                : plugin.getDatabaseManager().getInvitationDAO().getAllWithPagination((page - 1) * PAGE_SIZE, PAGE_SIZE);
+        return sendInviteRecords(player, pageFuture);
+    }
+
+    /**
+     * 获取所有邀请记录（管理员命令，按游标翻页）
+     * @param player 管理员玩家
+     * @param cursor 翻页游标
+     */
+    public CompletableFuture<Void> getAllInviteRecords(Player player, PageCursor cursor) {
+        return sendInviteRecords(player, plugin.getDatabaseManager().getInvitationDAO().getPage(cursor, PAGE_SIZE));
+    }
+
+    private CompletableFuture<Void> sendInviteRecords(Player player, CompletableFuture<InvitationPage> pageFuture) {
+        // 总记录数直接读取计数器，不在每次翻页时 COUNT
+        CompletableFuture<Integer> countFuture = plugin.getDatabaseManager().getInvitationDAO()
+                .getTotalCount();
+
+        // 名称按页批量解析，消息在异步线程中生成后一次交给主线程发送
+        return pageFuture.thenCompose(invitationPage -> resolveNames(invitationPage.getInvitations())
+                        .thenCombine(countFuture, (names, totalCount) -> renderRecords(invitationPage, totalCount, names)))
+                .thenAccept(lines -> sendLines(player, lines))
+                .exceptionally(e -> {
+                    logger.severe("Error getting all invite records: " + e.getMessage());
+                    e.printStackTrace();
+                    plugin.getServer().getScheduler().runTask(plugin, () -> {
+                        player.sendMessage("§c获取邀请记录时发生错误，请联系管理员。");
+                    });
+                    return null;
                 });
+    }
+
+    private List<String> renderRecords(InvitationPage invitationPage, int totalCount, Map<UUID, String> names) {
+        int page = invitationPage.getPage();
+        List<Invitation> invitations = invitationPage.getInvitations();
+        int totalPages = Math.max(1, (int) Math.ceil((double) totalCount / PAGE_SIZE));
+        List<String> lines = new ArrayList<>();
+
+        lines.add("§e======= §6所有邀请记录 (第" + page + "页/共" + totalPages + "页) §e=======");
+        lines.add("§e总记录数: §f" + totalCount);
+
+        if (invitations.isEmpty()) {
+            lines.add("§c当前页没有邀请记录。");
+        } else {
+            int startIndex = (page - 1) * PAGE_SIZE;
+            for (int i = 0; i < invitations.size(); i++) {
+                Invitation invitation = invitations.get(i);
+                lines.add("§e" + (startIndex + i + 1) + ". §f邀请人: §a" + nameOf(names, invitation.getInviterUuid()) +
+                        " §f被邀请人: §b" + nameOf(names, invitation.getInviteeUuid()) +
+                        " §f邀请码: §d" + invitation.getCode() +
+                        " §f时间: §7" + invitation.getCreatedAt().format(FORMATTER));
             }
-        });
+        }
+
+        lines.add("§e================================");
+        if (invitationPage.getNext() != null) {
+            lines.add("§e使用 §6/invite list " + invitationPage.getNext().encode() + " §e查看下一页");
+        }
+        if (invitationPage.getPrevious() != null) {
+            lines.add("§e使用 §6/invite list " + invitationPage.getPrevious().encode() + " §e查看上一页");
+        }
+        return lines;
+    }
+
+    // 一页中出现的所有玩家名称，一次批量查询
+    private CompletableFuture<Map<UUID, String>> resolveNames(List<Invitation> invitations) {
+        Set<UUID> uuids = new HashSet<>();
+        for (Invitation invitation : invitations) {
+            uuids.add(invitation.getInviterUuid());
+            uuids.add(invitation.getInviteeUuid());
+        }
+        return plugin.getDatabaseManager().getPlayerNameDAO().getNames(uuids);
+    }
+
+    // 没有记录过名称的玩家显示 UUID
+    private static String nameOf(Map<UUID, String> names, UUID uuid) {
+        String name = names.get(uuid);
+        return name != null ? name : uuid.toString();
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,20 @@
 package cn.popcraft.invitesystem.manager;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.config.PluginSettings;
 import cn.popcraft.invitesystem.data.InviteCode;
 import cn.popcraft.invitesystem.data.Invitation;
+import cn.popcraft.invitesystem.data.PlayerSession;
+import cn.popcraft.invitesystem.database.InvitationDAO;
 import cn.popcraft.invitesystem.util.TimeUtil;
 import org.bukkit.entity.Player;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -24,115 +30,150 @@ public class InviteManager {
     }
 
     /**
-     * 处理玩家提交邀请码
+     * 处理玩家提交邀请码（在主线程调用）
+     * 读取玩家状态和内存数据的检查在主线程完成；查询邀请码和写入邀请记录在数据库线程执行，
+     * 结果回到主线程后再访问玩家、发送消息
      * @param player 玩家
      * @param code 邀请码
      * @return 是否成功
      */
     public CompletableFuture<Boolean> processInviteCodeSubmission(Player player, String code) {
         UUID playerUUID = player.getUniqueId();
-        
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // 1. 检查玩家是否满足提交条件
-                if (!isPlayerEligible(player)) {
-                    player.sendMessage("§c您不满足提交邀请码的条件。");
-                    return false;
-                }
 
-                // 2. 检查邀请码是否存在且有效
-                InviteCode inviteCode = plugin.getDatabaseManager().getInviteCodeDAO().getInviteCode(code).get();
-                if (inviteCode == null) {
-                    player.sendMessage("§c邀请码不存在。");
+        // 1. 检查玩家是否满足提交条件
+        if (!isPlayerEligible(player)) {
+            player.sendMessage("§c您不满足提交邀请码的条件。");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // 玩家会话显示已经提交过邀请码时直接拒绝，不访问数据库（最终仍由提交事务判定）
+        PluginSettings settings = plugin.getSettings();
+        boolean firstTimeOnly = settings.isFirstTimeOnly();
+        PlayerSession session = plugin.getSessionManager().getLoadedSession(playerUUID);
+        if (firstTimeOnly && session != null && session.hasSubmitted()) {
+            player.sendMessage("§c您已经提交过邀请码，不能再次提交。");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // 2. 过滤器判定邀请码一定不存在时不查询数据库
+        if (!plugin.getDatabaseManager().getInviteCodeDAO().mightExist(code)) {
+            player.sendMessage("§c邀请码不存在。");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // 3. 检查IP限制（只读取，名额在写入前预占）
+        if (!isIpAllowed(player)) {
+            player.sendMessage("§c您的IP地址在冷却期内，无法提交邀请码。");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // 4. 检查在线时间（最小时间要求）
+        long requiredMinPlayTime = settings.getMinPlayTimeSeconds();
+        long playerPlayTime = getPlayerPlayTime(player) / 20; // ticks to seconds
+        if (playerPlayTime < requiredMinPlayTime) {
+            player.sendMessage("§c您需要至少在线" + TimeUtil.formatSecondsToReadable(requiredMinPlayTime) + "才能提交邀请码。");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // 5. 检查在线时间（最大时间限制）
+        long requiredMaxPlayTime = settings.getMaxPlayTimeSeconds();
+        if (requiredMaxPlayTime > 0 && playerPlayTime > requiredMaxPlayTime) {
+            player.sendMessage("§c您已超过最大允许在线时间，无法提交邀请码。");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        Executor mainThread = this::runOnMainThread;
+        return plugin.getDatabaseManager().getInviteCodeDAO().getInviteCode(code)
+                .thenComposeAsync(inviteCode -> {
+                    // 6. 检查邀请码是否有效，以及邀请人和被邀请人是否为同一人
+                    if (inviteCode == null) {
+                        player.sendMessage("§c邀请码不存在。");
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    if (!inviteCode.isUsable()) {
+                        player.sendMessage("§c邀请码已过期或已使用。");
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    if (inviteCode.getCreatorUuid().equals(playerUUID)) {
+                        player.sendMessage("§c您不能使用自己创建的邀请码。");
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    // 查询期间玩家已离线
+                    if (!isPlayerEligible(player)) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return submitInvitation(player, inviteCode, code, playerPlayTime, firstTimeOnly, mainThread);
+                }, mainThread)
+                .exceptionally(e -> {
+                    logger.log(Level.SEVERE, "Error processing invite code submission", e);
+                    runOnMainThread(() -> player.sendMessage("§c处理邀请码时发生错误，请联系管理员。"));
                     return false;
-                }
+                });
+    }
 
-                if (!inviteCode.isUsable()) {
-                    player.sendMessage("§c邀请码已过期或已使用。");
-                    return false;
-                }
-
-                // 3. 检查是否是新用户（如果配置要求）
-                if (plugin.getConfig().getBoolean("invite.only-allow-first-time-users", true)) {
-                    boolean hasSubmittedCode = hasPlayerSubmittedCode(playerUUID).get();
-                    if (hasSubmittedCode) {
-                        player.sendMessage("§c您已经提交过邀请码，不能再次提交。");
-                        return false;
+    /**
+     * 创建邀请关系（预留使用次数、检查是否为新用户、写入记录在同一事务中完成）
+     * 在主线程调用，结果在主线程处理
+     */
+    private CompletableFuture<Boolean> submitInvitation(Player player, InviteCode inviteCode, String code,
+                                                        long playerPlayTime, boolean firstTimeOnly, Executor mainThread) {
+        Invitation invitation = new Invitation(
+                0, // ID由数据库生成
+                player.getUniqueId(),
+                inviteCode.getCreatorUuid(),
+                code,
+                playerPlayTime,
+                false, // 邀请人未领取奖励
+                false, // 被邀请人未领取奖励
+                LocalDateTime.now()
+        );
+
+        // 同一 IP 的并发提交在这里原子地预占名额，提交失败时归还
+        AntiCheatManager antiCheat = plugin.getAntiCheatManager();
+        long ipTicket = antiCheat.tryAcquireIpInvite(player);
+        if (ipTicket == AntiCheatManager.IP_DENIED) {
+            player.sendMessage("§c您的IP地址在冷却期内，无法提交邀请码。");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        SessionManager sessionManager = plugin.getSessionManager();
+        sessionManager.beginWrite(invitation.getInviteeUuid());
+        sessionManager.beginWrite(invitation.getInviterUuid());
+        return plugin.getDatabaseManager().getInvitationDAO()
+                .submitInvitation(invitation, firstTimeOnly)
+                .handleAsync((result, e) -> {
+                    if (result != InvitationDAO.SubmitResult.SUCCESS) {
+                        antiCheat.releaseIpInvite(player, ipTicket);
+                        sessionManager.endWrite(invitation.getInviteeUuid());
+                        sessionManager.endWrite(invitation.getInviterUuid());
                     }
-                }
-
-                // 4. 检查IP限制
-                if (!isIpAllowed(player)) {
-                    player.sendMessage("§c您的IP地址在冷却期内，无法提交邀请码。");
-                    return false;
-                }
-
-                // 5. 检查在线时间（最小时间要求）
-                long requiredMinPlayTime = TimeUtil.parseTimeStringToSeconds(
-                        plugin.getConfig().getString("invite.min-play-time", "10m"));
-                long playerPlayTime = getPlayerPlayTime(player) / 20; // ticks to seconds
-                
-                if (playerPlayTime < requiredMinPlayTime) {
-                    player.sendMessage("§c您需要至少在线" + TimeUtil.formatSecondsToReadable(requiredMinPlayTime) + "才能提交邀请码。");
-                    return false;
-                }
-
-                // 6. 检查在线时间（最大时间限制）
-                String maxPlayTimeString = plugin.getConfig().getString("invite.max-play-time", "-1");
-                if (!"-1".equals(maxPlayTimeString)) {
-                    long requiredMaxPlayTime = TimeUtil.parseTimeStringToSeconds(maxPlayTimeString);
-                    if (requiredMaxPlayTime > 0 && playerPlayTime > requiredMaxPlayTime) {
-                        player.sendMessage("§c您已超过最大允许在线时间，无法提交邀请码。");
-                        return false;
+                    if (e != null) {
+                        throw new CompletionException(e);
+                    }
+                    switch (result) {
+                        case SUCCESS:
+                            break;
+                        case CODE_UNAVAILABLE:
+                            player.sendMessage("§c邀请码已过期或已使用。");
+                            return false;
+                        case ALREADY_SUBMITTED:
+                            player.sendMessage("§c您已经提交过邀请码，不能再次提交。");
+                            return false;
+                        default:
+                            player.sendMessage("§c邀请码提交失败，请稍后重试。");
+                            return false;
                     }
-                }
 
-                // 7. 检查邀请人和被邀请人是否为同一人
-                if (inviteCode.getCreatorUuid().equals(playerUUID)) {
-                    player.sendMessage("§c您不能使用自己创建的邀请码。");
-                    return false;
-                }
-
-                // 8. 创建邀请关系
-                Invitation invitation = new Invitation(
-                        0, // ID由数据库生成
-                        playerUUID,
-                        inviteCode.getCreatorUuid(),
-                        code,
-                        playerPlayTime,
-                        false, // 邀请人未领取奖励
-                        false, // 被邀请人未领取奖励
-                        LocalDateTime.now()
-                );
-
-                boolean invitationCreated = plugin.getDatabaseManager().getInvitationDAO()
-                        .createInvitation(invitation).get();
-                
-                if (!invitationCreated) {
-                    player.sendMessage("§c邀请码提交失败，请稍后重试。");
-                    return false;
-                }
-
-                // 9. 更新邀请码使用次数
-                boolean codeUpdated = plugin.getDatabaseManager().getInviteCodeDAO()
-                        .incrementUsedCount(code).get();
-                
-                if (!codeUpdated) {
-                    logger.warning("Failed to update invite code usage count: " + code);
-                }
-
-                // 10. 记录IP邀请
-                plugin.getAntiCheatManager().recordIpInvite(player);
-
-                player.sendMessage("§a邀请码提交成功！");
-                return true;
-            } catch (Exception e) {
-                logger.severe("Error processing invite code submission: " + e.getMessage());
-                e.printStackTrace();
-                player.sendMessage("§c处理邀请码时发生错误，请联系管理员。");
-                return false;
-            }
-        });
+                    // 8. 更新双方的玩家会话
+                    sessionManager.onInvitationSubmitted(invitation);
+
+                    player.sendMessage("§a邀请码提交成功！");
+                    return true;
+                }, mainThread);
+    }
+
+    private void runOnMainThread(Runnable task) {
+        plugin.getServer().getScheduler().runTask(plugin, task);
     }
 
     /**
@@ -145,26 +186,13 @@ public class InviteManager {
         return player != null && player.isOnline();
     }
 
-    /**
-     * 检查玩家是否已经提交过邀请码
-     * @param playerUUID 玩家UUID
-     * @return 是否已提交过
-     */
-    private CompletableFuture<Boolean> hasPlayerSubmittedCode(UUID playerUUID) {
-        return plugin.getDatabaseManager().getInvitationDAO()
-                .getUnclaimedAsInvitee(playerUUID)
-                .thenApply(list -> !list.isEmpty());
-    }
-
     /**
      * 检查玩家IP是否允许提交邀请码
      * @param player 玩家
      * @return 是否允许
      */
     private boolean isIpAllowed(Player player) {
-        // TODO: 实现IP限制检查
-        // 这里简化处理，直接返回true
-        return true;
+        return plugin.getAntiCheatManager().isIpAllowedForInvite(player);
     }
 
     /**
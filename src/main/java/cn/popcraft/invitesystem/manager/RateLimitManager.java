@@ -0,0 +1,125 @@
+package cn.popcraft.invitesystem.manager;
+
+import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.config.PluginSettings;
+import cn.popcraft.invitesystem.util.RateLimiter;
+import org.bukkit.entity.Player;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令限流管理器
+ * 每个子命令分别按玩家 UUID 和 IP 地址限流，在执行任何数据库操作之前拒绝过于频繁的请求
+ */
+public class RateLimitManager {
+    private final InviteSystem plugin;
+
+    // 子命令 -> 限流器，重载配置时整体替换；同名子命令沿用原有的限流器以保留桶的状态
+    private volatile Map<String, CommandLimit> limits = Collections.emptyMap();
+    private volatile boolean enabled;
+
+    public RateLimitManager(InviteSystem plugin) {
+        this.plugin = plugin;
+        loadConfig();
+    }
+
+    /**
+     * 按当前配置快照设置各子命令的限流（重载配置时调用）
+     */
+    public void loadConfig() {
+        PluginSettings settings = plugin.getSettings();
+        Map<String, CommandLimit> loaded = new TreeMap<>();
+        for (Map.Entry<String, PluginSettings.RateLimitBudget> entry : settings.getRateLimits().entrySet()) {
+            PluginSettings.RateLimitBudget budget = entry.getValue();
+            CommandLimit limit = limits.get(entry.getKey());
+            if (limit == null) {
+                limit = new CommandLimit();
+            }
+            limit.player.configure(budget.getCapacity(), budget.getRefillSeconds(), TimeUnit.SECONDS);
+            limit.ip.configure(budget.getIpCapacity(), budget.getIpRefillSeconds(), TimeUnit.SECONDS);
+            loaded.put(entry.getKey(), limit);
+        }
+        limits = loaded;
+        enabled = settings.isRateLimitEnabled();
+    }
+
+    /**
+     * 检查玩家是否可以执行子命令，超出限制时提示玩家
+     * @param player 玩家
+     * @param subCommand 子命令（小写）
+     * @return 是否允许执行
+     */
+    public boolean tryAcquire(Player player, String subCommand) {
+        CommandLimit limit = limits.get(subCommand);
+        if (!enabled || limit == null || player.hasPermission("invite.bypass-ratelimit")) {
+            return true;
+        }
+
+        UUID uuid = player.getUniqueId();
+        long wait = limit.player.tryAcquire(uuid);
+        if (wait == 0) {
+            InetSocketAddress address = player.getAddress();
+            InetAddress ip = address == null ? null : address.getAddress();
+            wait = ip == null ? 0 : limit.ip.tryAcquire(ip);
+            if (wait > 0) {
+                // 被 IP 限流拒绝的请求不占用玩家自己的次数
+                limit.player.refund(uuid);
+            }
+        }
+        if (wait > 0) {
+            long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+            player.sendMessage("§c操作过于频繁，请 " + seconds + " 秒后再试。");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 移除令牌已补满的限流记录（由定时任务调用）
+     */
+    public void sweep() {
+        for (CommandLimit limit : limits.values()) {
+            limit.player.sweep();
+            limit.ip.sweep();
+        }
+    }
+
+    // 统计信息
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Map<String, CommandLimit> getLimits() {
+        return limits;
+    }
+
+    /**
+     * 单个子命令的限流器
+     */
+    public static class CommandLimit {
+        private final RateLimiter<UUID> player = new RateLimiter<>(0, 0, TimeUnit.SECONDS);
+        private final RateLimiter<InetAddress> ip = new RateLimiter<>(0, 0, TimeUnit.SECONDS);
+
+        public int getTrackedPlayers() {
+            return player.size();
+        }
+
+        public int getTrackedIps() {
+            return ip.size();
+        }
+
+        public long getRejectedByPlayer() {
+            return player.getRejected();
+        }
+
+        public long getRejectedByIp() {
+            return ip.getRejected();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package cn.popcraft.invitesystem.manager;
+
+import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.data.Invitation;
+import cn.popcraft.invitesystem.data.InvitationSummary;
+import cn.popcraft.invitesystem.data.InviteCode;
+import cn.popcraft.invitesystem.data.PlayerSession;
+import cn.popcraft.invitesystem.database.DatabaseManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 玩家会话管理器
+ * 玩家进服前在 AsyncPlayerPreLoginEvent 中异步加载邀请数据，退出时移除；
+ * 本插件的写操作会就地更新在线玩家的会话，查询邀请信息时直接读取内存。
+ * 写操作开始前调用 beginWrite，完成后由对应的 on* 方法（失败时由 endWrite）结束：会话加载期间有写操作开始或完成时，
+ * 加载到的数量可能已经包含这次写入，不缓存该会话，避免写操作完成后再次累加。
+ * 多台服务器共用 MySQL 时，其他服务器的写入要等玩家重新进服后才会体现
+ */
+public class SessionManager {
+    private final InviteSystem plugin;
+    private volatile boolean enabled;
+    private final Map<UUID, CompletableFuture<PlayerSession>> sessions = new ConcurrentHashMap<>();
+    // 正在进行的写操作数（玩家 -> 数量），没有时移除
+    private final Map<UUID, Integer> writesInFlight = new ConcurrentHashMap<>();
+
+    // 统计信息
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    public SessionManager(InviteSystem plugin) {
+        this.plugin = plugin;
+        loadConfig();
+    }
+
+    /**
+     * 按当前配置快照启用或停用会话缓存（重载配置时调用），停用时丢弃已加载的会话
+     */
+    public void loadConfig() {
+        enabled = plugin.getSettings().isSessionCacheEnabled();
+        if (!enabled) {
+            sessions.clear();
+        }
+    }
+
+    /**
+     * 进服前预加载会话（此时玩家尚未在线）
+     * @param uuid 玩家 UUID
+     */
+    public void preload(UUID uuid) {
+        if (enabled) {
+            startLoad(uuid);
+        }
+    }
+
+    /**
+     * 获取玩家会话，尚未加载时从数据库加载
+     * @param uuid 玩家 UUID
+     * @return 玩家会话
+     */
+    public CompletableFuture<PlayerSession> getSession(UUID uuid) {
+        if (!enabled) {
+            return load(uuid);
+        }
+        CompletableFuture<PlayerSession> existing = sessions.get(uuid);
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+        // 不在线的玩家不会收到退出事件，只加载不保存
+        if (plugin.getServer().getPlayer(uuid) == null) {
+            return load(uuid);
+        }
+        return startLoad(uuid);
+    }
+
+    /**
+     * 获取已加载完成的玩家会话
+     * @param uuid 玩家 UUID
+     * @return 玩家会话，未启用、未加载或正在加载时返回 null
+     */
+    public PlayerSession getLoadedSession(UUID uuid) {
+        CompletableFuture<PlayerSession> future = sessions.get(uuid);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        hits.increment();
+        return future.join();
+    }
+
+    /**
+     * 玩家退出或登录被拒绝时移除会话
+     * @param uuid 玩家 UUID
+     */
+    public void evict(UUID uuid) {
+        sessions.remove(uuid);
+    }
+
+    // === 本插件的写操作 ===
+
+    /**
+     * 开始一次会改变玩家会话数量的写操作（在提交到数据库之前调用）
+     * @param uuid 玩家 UUID
+     */
+    public void beginWrite(UUID uuid) {
+        writesInFlight.merge(uuid, 1, Integer::sum);
+    }
+
+    /**
+     * 写操作失败或没有写入任何数据（成功时由对应的 on* 方法结束）
+     * @param uuid 玩家 UUID
+     */
+    public void endWrite(UUID uuid) {
+        writesInFlight.computeIfPresent(uuid, (k, count) -> count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * 邀请码提交成功，结束双方的写操作
+     */
+    public void onInvitationSubmitted(Invitation invitation) {
+        update(invitation.getInviteeUuid(), session -> session.addAsInvitee(invitation));
+        endWrite(invitation.getInviteeUuid());
+        update(invitation.getInviterUuid(), session -> session.addAsInviter(invitation));
+        endWrite(invitation.getInviterUuid());
+    }
+
+    /**
+     * 领取奖励的写操作完成
+     * @param uuid 玩家 UUID
+     * @param count 本次领取到的份数，0 表示没有领取到或领取失败
+     * @param isInviter 是否为邀请人身份
+     */
+    public void onRewardsClaimed(UUID uuid, int count, boolean isInviter) {
+        if (count > 0) {
+            update(uuid, session -> session.removeClaimed(count, isInviter));
+        }
+        endWrite(uuid);
+    }
+
+    /**
+     * 保存了待补发的奖励（物品或未发放完的奖励任务），或者开始取出待补发的奖励
+     * @param uuid 玩家 UUID
+     * @param pending 是否有待补发的奖励
+     */
+    public void onPendingDeliveryChanged(UUID uuid, boolean pending) {
+        update(uuid, session -> session.setPendingDelivery(pending));
+    }
+
+    /**
+     * 邀请码创建成功，结束创建者的写操作
+     */
+    public void onCodeCreated(InviteCode code) {
+        update(code.getCreatorUuid(), session -> session.addOwnedCode(code));
+        endWrite(code.getCreatorUuid());
+    }
+
+    private void update(UUID uuid, Consumer<PlayerSession> action) {
+        CompletableFuture<PlayerSession> future = sessions.get(uuid);
+        if (future == null) {
+            return;
+        }
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            action.accept(future.join());
+        } else if (sessions.remove(uuid, future)) {
+            // 正在加载的会话可能读不到这次写入，丢弃后下次访问时重新加载
+            discarded.increment();
+        }
+    }
+
+    private CompletableFuture<PlayerSession> startLoad(UUID uuid) {
+        CompletableFuture<PlayerSession> created = new CompletableFuture<>();
+        CompletableFuture<PlayerSession> existing = sessions.putIfAbsent(uuid, created);
+        if (existing != null) {
+            return existing;
+        }
+        load(uuid).whenComplete((session, e) -> {
+            if (e != null) {
+                // 加载失败不保存，下次访问时重试
+                sessions.remove(uuid, created);
+                created.completeExceptionally(e);
+                return;
+            }
+            // 仍有写操作未完成：加载可能已读到它的写入，完成后又会累加一次，本次结果只返回不缓存
+            if (writesInFlight.containsKey(uuid) && sessions.remove(uuid, created)) {
+                discarded.increment();
+            }
+            created.complete(session);
+        });
+        return created;
+    }
+
+    private CompletableFuture<PlayerSession> load(UUID uuid) {
+        loads.increment();
+        DatabaseManager db = plugin.getDatabaseManager();
+        CompletableFuture<InvitationSummary> summary = db.getInvitationDAO().getSummary(uuid);
+        CompletableFuture<List<InviteCode>> codes = db.getInviteCodeDAO().getCodesByCreator(uuid);
+        CompletableFuture<Boolean> pending = db.getPendingRewardDAO().hasPending(uuid);
+        return CompletableFuture.allOf(summary, codes, pending)
+                .thenApply(v -> new PlayerSession(uuid, summary.join(), codes.join(), pending.join()));
+    }
+
+    // 统计信息
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+}
@@ -0,0 +1,315 @@
+package cn.popcraft.invitesystem.reward;
+
+import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.data.RewardJob;
+import cn.popcraft.invitesystem.database.PendingRewardDAO;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 主线程奖励发放队列
+ * 领取奖励时只把发放任务放入队列（任意线程），每 tick 在配置的时间预算内逐个发放，
+ * 用完预算后剩余的任务留到下一个 tick 继续，避免大量领取集中在同一个 tick 内执行。
+ * 任务在领取的事务中已写入数据库，全部发放后才删除：玩家中途离线时保存进度并移出队列，
+ * 插件关闭或崩溃时剩余的任务都留在数据库中，玩家下次进服时由 RewardManager.deliverPending 重新提交。
+ * 删除失败时先把进度标记为已发放完并稍后重试，任务留在 activeJobs 中；刚删除的任务在一段时间内拒绝重新提交，
+ * 避免删除提交之前读到的任务被再次发放
+ */
+public class RewardDispatcher extends BukkitRunnable {
+    // 已全部发放的进度标记，重新提交时不会再发放任何奖励
+    private static final long COMPLETED_PROGRESS = Long.MAX_VALUE;
+    private static final int MAX_DELETE_ATTEMPTS = 5;
+    private static final long DELETE_RETRY_MILLIS = 5_000;
+    private static final long COMPLETED_RETENTION_MILLIS = 5 * 60_000;
+
+    private final InviteSystem plugin;
+    private final Logger logger;
+
+    // 其他线程提交的任务，每 tick 开始时移入主线程队列
+    private final ConcurrentLinkedQueue<GrantJob> incoming = new ConcurrentLinkedQueue<>();
+    // 以下只在主线程访问
+    private final ArrayDeque<GrantJob> queue = new ArrayDeque<>();
+    // 已在队列中的任务，避免同一任务被重复提交
+    private final Set<Long> activeJobs = ConcurrentHashMap.newKeySet();
+    // 最近删除的任务 -> 删除时间
+    private final Map<Long, Long> recentlyCompleted = new ConcurrentHashMap<>();
+    // 删除失败、等待重试的任务
+    private final ConcurrentLinkedQueue<DeleteRetry> failedDeletes = new ConcurrentLinkedQueue<>();
+
+    // 统计信息
+    private final AtomicInteger queuedJobs = new AtomicInteger();
+    private final AtomicLong pendingGrants = new AtomicLong();
+    private volatile long savedJobs;
+    private volatile long lastTickNanos;
+    private volatile long maxTickNanos;
+    private volatile long busyTicks;
+    private volatile long busyNanos;
+    private volatile long carriedOverTicks;
+    private volatile long granted;
+
+    public RewardDispatcher(InviteSystem plugin) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+    }
+
+    /**
+     * 提交发放任务（线程安全）
+     * @param job 数据库中的奖励任务
+     * @param completionMessage 全部发放后发送给玩家的消息，可为 null
+     */
+    public void submit(RewardJob job, String completionMessage) {
+        if (recentlyCompleted.containsKey(job.getId()) || !activeJobs.add(job.getId())) {
+            return;
+        }
+        List<RewardTemplate> rewards = plugin.getRewardManager().getRewards(job.isInviter());
+        // 逐项发放到一半的任务继续逐项发放，不能再合并
+        boolean aggregate = plugin.getSettings().isAggregateRewards() && job.getProgress() == 0;
+        GrantJob grantJob = new GrantJob(job, rewards, completionMessage, aggregate);
+        if (job.getProgress() > 0 && grantJob.remaining() == 0) {
+            // 已全部发放但上次没有删除成功的任务
+            deleteJob(job.getId(), job.getPlayerUuid(), 0);
+            return;
+        }
+        pendingGrants.addAndGet(grantJob.remaining());
+        queuedJobs.incrementAndGet();
+        incoming.add(grantJob);
+    }
+
+    @Override
+    public void run() {
+        retryFailedDeletes(System.currentTimeMillis());
+        GrantJob submitted;
+        while ((submitted = incoming.poll()) != null) {
+            queue.add(submitted);
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+
+        long budget = plugin.getSettings().getRewardDispatchBudgetNanos();
+        long start = System.nanoTime();
+        long elapsed;
+        int grants = 0;
+        // 每 tick 至少发放一项，保证预算很小时队列也能前进
+        do {
+            drainStep();
+            grants++;
+            elapsed = System.nanoTime() - start;
+        } while (!queue.isEmpty() && elapsed < budget);
+
+        // 逐项发放到一半的队首任务保存进度，崩溃后最多重复发放一个 tick 内的奖励
+        GrantJob head = queue.peek();
+        if (head != null && head.cursor != head.savedProgress) {
+            plugin.getDatabaseManager().getPendingRewardDAO().saveJobProgress(head.id, head.cursor);
+            head.savedProgress = head.cursor;
+        }
+
+        lastTickNanos = elapsed;
+        maxTickNanos = Math.max(maxTickNanos, elapsed);
+        busyNanos += elapsed;
+        busyTicks++;
+        granted += grants;
+        if (!queue.isEmpty()) {
+            carriedOverTicks++;
+        }
+    }
+
+    /**
+     * 发放队首任务的下一项奖励
+     */
+    private void drainStep() {
+        GrantJob job = queue.peek();
+        Player player = plugin.getServer().getPlayer(job.playerId);
+        if (player == null || !player.isOnline()) {
+            // 任务留在数据库中，玩家下次进服时继续发放
+            queue.poll();
+            queuedJobs.decrementAndGet();
+            pendingGrants.addAndGet(-job.remaining());
+            activeJobs.remove(job.id);
+            if (job.cursor != job.savedProgress) {
+                plugin.getDatabaseManager().getPendingRewardDAO().saveJobProgress(job.id, job.cursor);
+                job.savedProgress = job.cursor;
+            }
+            savedJobs++;
+            return;
+        }
+
+        if (job.remaining() > 0) {
+            pendingGrants.decrementAndGet();
+            try {
+                if (job.aggregate) {
+                    // 合并发放：整个任务作为一项，一次发放全部份数
+                    job.cursor = job.total;
+                    plugin.getRewardManager().grantAggregated(player, job.rewards, job.copies);
+                } else {
+                    plugin.getRewardManager().grantReward(player, job.next());
+                }
+            } catch (Exception e) {
+                logger.severe("Error granting reward to " + player.getName() + ": " + e.getMessage());
+            }
+        }
+        if (job.remaining() == 0) {
+            queue.poll();
+            queuedJobs.decrementAndGet();
+            complete(job);
+            if (job.completionMessage != null) {
+                player.sendMessage(job.completionMessage);
+            }
+        }
+    }
+
+    private void complete(GrantJob job) {
+        deleteJob(job.id, job.playerId, 0);
+    }
+
+    /**
+     * 删除已全部发放的任务，失败时把进度标记为已发放完并稍后重试
+     * 删除成功之前任务一直留在 activeJobs 中，本服不会再次发放
+     */
+    private void deleteJob(long id, UUID playerId, int attempt) {
+        PendingRewardDAO dao = plugin.getDatabaseManager().getPendingRewardDAO();
+        dao.completeJob(id).whenComplete((count, e) -> {
+            if (e == null && count > 0) {
+                long now = System.currentTimeMillis();
+                recentlyCompleted.values().removeIf(completedAt -> completedAt < now - COMPLETED_RETENTION_MILLIS);
+                recentlyCompleted.put(id, now);
+                activeJobs.remove(id);
+                return;
+            }
+            // 写入队列已满或语句失败：删除不一定成功，先保证任务被重新提交时不会再发放
+            dao.saveJobProgress(id, COMPLETED_PROGRESS);
+            if (attempt + 1 < MAX_DELETE_ATTEMPTS) {
+                failedDeletes.add(new DeleteRetry(id, playerId, attempt + 1,
+                        System.currentTimeMillis() + DELETE_RETRY_MILLIS * (attempt + 1)));
+            } else {
+                logger.warning("Failed to remove completed reward job " + id + " for " + playerId
+                        + ", it is kept as granted");
+            }
+        });
+    }
+
+    private void retryFailedDeletes(long now) {
+        for (int i = failedDeletes.size(); i > 0; i--) {
+            DeleteRetry retry = failedDeletes.poll();
+            if (retry == null) {
+                return;
+            }
+            if (retry.retryAt <= now) {
+                deleteJob(retry.id, retry.playerId, retry.attempt);
+            } else {
+                failedDeletes.add(retry);
+            }
+        }
+    }
+
+    /**
+     * 关闭时不限预算发放在线玩家的剩余奖励（主线程）
+     * 离线玩家的任务已保存在数据库中，删除和进度写入由 DatabaseManager.close 等待完成
+     */
+    public void flush() {
+        retryFailedDeletes(Long.MAX_VALUE);
+        GrantJob submitted;
+        while ((submitted = incoming.poll()) != null) {
+            queue.add(submitted);
+        }
+        while (!queue.isEmpty()) {
+            drainStep();
+        }
+    }
+
+    // 统计信息
+    public int getQueuedJobs() {
+        return queuedJobs.get();
+    }
+
+    public long getPendingGrants() {
+        return pendingGrants.get();
+    }
+
+    public long getSavedJobs() {
+        return savedJobs;
+    }
+
+    public long getGranted() {
+        return granted;
+    }
+
+    public long getCarriedOverTicks() {
+        return carriedOverTicks;
+    }
+
+    public double getLastTickMillis() {
+        return lastTickNanos / 1_000_000.0;
+    }
+
+    public double getMaxTickMillis() {
+        return maxTickNanos / 1_000_000.0;
+    }
+
+    public double getAverageTickMillis() {
+        long ticks = busyTicks;
+        return ticks == 0 ? 0 : busyNanos / 1_000_000.0 / ticks;
+    }
+
+    private static final class DeleteRetry {
+        private final long id;
+        private final UUID playerId;
+        private final int attempt;
+        private final long retryAt;
+
+        DeleteRetry(long id, UUID playerId, int attempt, long retryAt) {
+            this.id = id;
+            this.playerId = playerId;
+            this.attempt = attempt;
+            this.retryAt = retryAt;
+        }
+    }
+
+    /**
+     * 一次领取产生的发放任务：按顺序逐项发放 copies 份奖励列表，合并发放时整个任务只有一项
+     */
+    private static final class GrantJob {
+        private final long id;
+        private final UUID playerId;
+        private final List<RewardTemplate> rewards;
+        private final int copies;
+        private final String completionMessage;
+        private final boolean aggregate;
+        private final long total;
+        private long savedProgress;
+        private long cursor;
+
+        GrantJob(RewardJob job, List<RewardTemplate> rewards, String completionMessage, boolean aggregate) {
+            this.id = job.getId();
+            this.playerId = job.getPlayerUuid();
+            this.rewards = rewards;
+            this.copies = Math.max(0, job.getCopies());
+            this.completionMessage = completionMessage;
+            this.aggregate = aggregate;
+            long grants = (long) rewards.size() * this.copies;
+            this.total = aggregate ? Math.min(1, grants) : grants;
+            // 重载后奖励列表变短时，超出的进度视为已发放完
+            this.savedProgress = aggregate ? 0 : Math.min(job.getProgress(), total);
+            this.cursor = savedProgress;
+        }
+
+        long remaining() {
+            return total - cursor;
+        }
+
+        RewardTemplate next() {
+            return rewards.get((int) (cursor++ % rewards.size()));
+        }
+    }
+}
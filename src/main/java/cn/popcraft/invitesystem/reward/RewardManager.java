@@ -1,20 +1,29 @@
 package cn.popcraft.invitesystem.reward;
 
 import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.data.PlayerSession;
+import cn.popcraft.invitesystem.database.PendingRewardDAO;
 import net.milkbowl.vault.economy.Economy;
 import org.black_ixx.playerpoints.PlayerPoints;
 import org.black_ixx.playerpoints.PlayerPointsAPI;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
-import org.bukkit.plugin.Plugin;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -23,7 +32,7 @@ import java.util.stream.Collectors;
  */
 public class RewardManager {
 
-    private final Plugin plugin;
+    private final InviteSystem plugin;
     private final Logger logger;
     private Economy economy;
     private PlayerPointsAPI playerPointsAPI;
@@ -31,11 +40,11 @@ public class RewardManager {
     private boolean vaultEnabled;
     private boolean playerPointsEnabled;
 
-    // 奖励配置（从 config.yml 加载）
-    private List<Reward> inviterRewards;
-    private List<Reward> inviteeRewards;
+    // 奖励模板（从 config.yml 加载并预编译）
+    private volatile List<RewardTemplate> inviterRewards = new ArrayList<>();
+    private volatile List<RewardTemplate> inviteeRewards = new ArrayList<>();
 
-    public RewardManager(Plugin plugin) {
+    public RewardManager(InviteSystem plugin) {
         this.plugin = plugin;
         this.logger = plugin.getLogger();
 
@@ -80,15 +89,19 @@ public class RewardManager {
     }
 
     // === 加载配置 ===
-    public void loadRewardsFromConfig() {
-        this.inviterRewards = loadRewardList("rewards.inviter");
-        this.inviteeRewards = loadRewardList("rewards.invitee");
+    public void loadRewardsFromConfig(ConfigurationSection config) {
+        this.inviterRewards = loadRewardList(config, "rewards.inviter");
+        this.inviteeRewards = loadRewardList(config, "rewards.invitee");
+        // ItemsAdder 已加载完数据时（例如重载配置）直接解析，否则等待 ItemsAdderLoadDataEvent
+        if (itemsAdderEnabled && dev.lone.itemsadder.api.ItemsAdder.areItemsLoaded()) {
+            resolveItemsAdderItems();
+        }
     }
 
     @SuppressWarnings("unchecked")
-    private List<Reward> loadRewardList(String path) {
-        List<Reward> rewards = new ArrayList<>();
-        List<Map<String, Object>> list = (List<Map<String, Object>>) plugin.getConfig().getList(path);
+    private List<RewardTemplate> loadRewardList(ConfigurationSection config, String path) {
+        List<RewardTemplate> rewards = new ArrayList<>();
+        List<Map<String, Object>> list = (List<Map<String, Object>>) config.getList(path);
         if (list == null) return rewards;
 
         for (Map<String, Object> map : list) {
@@ -101,29 +114,39 @@ public class RewardManager {
                 switch (type) {
                     case ITEM:
                         String matStr = (String) map.get("material");
-                        org.bukkit.Material mat = org.bukkit.Material.matchMaterial(matStr.toUpperCase());
+                        org.bukkit.Material mat = matStr == null ? null : org.bukkit.Material.matchMaterial(matStr.toUpperCase());
                         if (mat == null || !mat.isItem()) {
                             logger.warning("Invalid material in reward: " + matStr);
                             continue;
                         }
                         builder.material(mat)
-                               .amount((int) map.getOrDefault("amount", 1))
+                               .amount(readAmount(map))
                                .name((String) map.get("name"))
                                .lore((List<String>) map.get("lore"));
                         break;
 
                     case ITEMSADDER:
-                        builder.itemsAdderId((String) map.get("id"))
-                               .amount((int) map.getOrDefault("amount", 1));
+                        String id = (String) map.get("id");
+                        if (id == null || !id.contains(":")) {
+                            logger.warning("Invalid ItemsAdder id in reward (expected namespace:id): " + id);
+                            continue;
+                        }
+                        builder.itemsAdderId(id)
+                               .amount(readAmount(map));
                         break;
 
                     case VAULT:
                     case PLAYERPOINTS:
-                        builder.amountNumeric(((Number) map.get("amount")).doubleValue());
+                        double amount = ((Number) map.get("amount")).doubleValue();
+                        if (amount <= 0) {
+                            logger.warning("Reward amount must be positive: " + map);
+                            continue;
+                        }
+                        builder.amountNumeric(amount);
                         break;
                 }
 
-                rewards.add(builder.build());
+                rewards.add(compile(builder.build()));
             } catch (Exception e) {
                 logger.severe("Failed to load reward: " + map + " - " + e.getMessage());
             }
@@ -131,34 +154,41 @@ public class RewardManager {
         return rewards;
     }
 
-    // === 发放奖励 ===
-    public void grantRewards(Player player, boolean isInviter) {
-        List<Reward> rewards = isInviter ? inviterRewards : inviteeRewards;
-        for (Reward reward : rewards) {
-            grantSingleReward(player, reward);
+    private int readAmount(Map<String, Object> map) {
+        int amount = ((Number) map.getOrDefault("amount", 1)).intValue();
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive");
         }
+        return amount;
     }
 
-    private void grantSingleReward(Player player, Reward reward) {
-        switch (reward.getType()) {
+    /**
+     * 把奖励编译为模板：原版物品在这里构建好，发放时只复制
+     */
+    private RewardTemplate compile(Reward r) {
+        switch (r.getType()) {
             case ITEM:
-                giveVanillaItem(player, reward);
-                break;
-            case ITEMSADDER:
-                giveItemsAdderItem(player, reward);
-                break;
+                return new RewardTemplate(r, buildVanillaItem(r), null);
             case VAULT:
-                giveVaultMoney(player, reward);
-                break;
+                return new RewardTemplate(r, null, moneyMessage(r.getAmountNumeric()));
             case PLAYERPOINTS:
-                givePlayerPoints(player, reward);
-                break;
+                return new RewardTemplate(r, null, pointsMessage((int) r.getAmountNumeric()));
+            default:
+                return new RewardTemplate(r, null, null);
         }
     }
 
-    // --- 具体发放方法 ---
-    private void giveVanillaItem(Player player, Reward r) {
-        ItemStack item = new ItemStack(r.getMaterial(), Math.max(1, r.getAmount()));
+    private String moneyMessage(double amount) {
+        String currency = economy != null ? " " + economy.currencyNamePlural() : "";
+        return ChatColor.translateAlternateColorCodes('&', "&a获得经济奖励: &e" + amount + currency);
+    }
+
+    private String pointsMessage(long amount) {
+        return ChatColor.translateAlternateColorCodes('&', "&a获得点券奖励: &e" + amount + " 点");
+    }
+
+    private ItemStack buildVanillaItem(Reward r) {
+        ItemStack item = new ItemStack(r.getMaterial(), r.getAmount());
         if (r.getName() != null || r.getLore() != null) {
             ItemMeta meta = item.getItemMeta();
             if (meta != null) {
@@ -174,42 +204,297 @@ public class RewardManager {
                 item.setItemMeta(meta);
             }
         }
-        player.getInventory().addItem(item);
+        return item;
     }
 
-    private void giveItemsAdderItem(Player player, Reward r) {
+    /**
+     * 解析奖励中的 ItemsAdder 物品（ItemsAdder 每次加载完数据后调用，需在主线程执行）
+     */
+    public void resolveItemsAdderItems() {
         if (!itemsAdderEnabled) return;
-        try {
-            // 使用更通用的方式检查ItemsAdder API
-            if (dev.lone.itemsadder.api.ItemsAdder.isCustomItem(r.getItemsAdderId())) {
-                ItemStack item = dev.lone.itemsadder.api.CustomStack.getInstance(r.getItemsAdderId()).getItemStack().clone();
-                if (item != null) {
-                    // 支持堆叠
-                    item.setAmount(r.getAmount());
-                    player.getInventory().addItem(item);
-                } else {
-                    logger.warning("ItemsAdder item could not be cloned: " + r.getItemsAdderId());
+        int resolved = 0;
+        for (List<RewardTemplate> rewards : Arrays.asList(inviterRewards, inviteeRewards)) {
+            for (RewardTemplate template : rewards) {
+                if (template.getType() != RewardType.ITEMSADDER) {
+                    continue;
+                }
+                String id = template.getReward().getItemsAdderId();
+                try {
+                    dev.lone.itemsadder.api.CustomStack stack = dev.lone.itemsadder.api.CustomStack.getInstance(id);
+                    if (stack == null) {
+                        logger.warning("ItemsAdder item not found: " + id);
+                        template.resolve(null);
+                        continue;
+                    }
+                    ItemStack item = stack.getItemStack().clone();
+                    item.setAmount(template.getReward().getAmount());
+                    template.resolve(item);
+                    resolved++;
+                } catch (Exception e) {
+                    logger.severe("Error resolving ItemsAdder item: " + id + " - " + e.getMessage());
                 }
-            } else {
-                logger.warning("ItemsAdder item not found: " + r.getItemsAdderId());
             }
-        } catch (Exception e) {
-            logger.severe("Error giving ItemsAdder item: " + r.getItemsAdderId() + " - " + e.getMessage());
         }
+        if (resolved > 0) {
+            logger.info("Resolved " + resolved + " ItemsAdder reward items.");
+        }
+    }
+
+    // === 发放奖励 ===
+    public List<RewardTemplate> getRewards(boolean isInviter) {
+        return isInviter ? inviterRewards : inviteeRewards;
+    }
+
+    /**
+     * 发放单项奖励（需在主线程调用）
+     */
+    public void grantReward(Player player, RewardTemplate reward) {
+        switch (reward.getType()) {
+            case ITEM:
+            case ITEMSADDER:
+                giveItem(player, reward);
+                break;
+            case VAULT:
+                giveVaultMoney(player, reward);
+                break;
+            case PLAYERPOINTS:
+                givePlayerPoints(player, reward);
+                break;
+        }
+    }
+
+    // === 合并发放 ===
+
+    /**
+     * 把 copies 份奖励列表合并为一次发放（需在主线程调用）
+     * 经济和点券各只操作一次，相同物品合并后按最大堆叠数放入背包，放不下的部分保存为待补发
+     * @param player 玩家
+     * @param rewards 奖励模板
+     * @param copies 份数
+     */
+    public void grantAggregated(Player player, List<RewardTemplate> rewards, int copies) {
+        RewardPlan plan = new RewardPlan();
+        for (RewardTemplate reward : rewards) {
+            switch (reward.getType()) {
+                case ITEM:
+                case ITEMSADDER:
+                    if (reward.getType() == RewardType.ITEMSADDER && !itemsAdderEnabled) break;
+                    ItemStack item = reward.createItem();
+                    if (item == null) {
+                        logger.warning("ItemsAdder item is not available: " + reward.getReward().getItemsAdderId());
+                        break;
+                    }
+                    plan.addItem(item, copies);
+                    break;
+                case VAULT:
+                    if (vaultEnabled && economy != null) {
+                        plan.addMoney(reward.getReward().getAmountNumeric() * copies);
+                    }
+                    break;
+                case PLAYERPOINTS:
+                    if (playerPointsEnabled && playerPointsAPI != null) {
+                        plan.addPoints((long) (int) reward.getReward().getAmountNumeric() * copies);
+                    }
+                    break;
+            }
+        }
+        applyPlan(player, plan);
+    }
+
+    private void applyPlan(Player player, RewardPlan plan) {
+        if (plan.getMoney() > 0) {
+            economy.depositPlayer(player, plan.getMoney());
+            player.sendMessage(moneyMessage(plan.getMoney()));
+        }
+        if (plan.getPoints() > 0) {
+            // PlayerPoints 只接受 int，超出 int 范围的点数分多次发放
+            for (long remaining = plan.getPoints(); remaining > 0; ) {
+                int chunk = (int) Math.min(remaining, Integer.MAX_VALUE);
+                playerPointsAPI.give(player.getUniqueId(), chunk);
+                remaining -= chunk;
+            }
+            player.sendMessage(pointsMessage(plan.getPoints()));
+        }
+        if (!plan.getItems().isEmpty()) {
+            Map<String, Long> overflow = giveItems(player, plan.getItems());
+            if (!overflow.isEmpty()) {
+                savePending(player, overflow);
+            }
+        }
+    }
+
+    /**
+     * 按最大堆叠数拆分后一次放入背包
+     * @return 放不下的物品（序列化后的原型 -> 数量）
+     */
+    private Map<String, Long> giveItems(Player player, List<RewardPlan.PlanItem> items) {
+        // 背包最多放下这么多堆物品，多出的部分不必拆分，直接计入剩余
+        int slots = player.getInventory().getStorageContents().length;
+        List<ItemStack> stacks = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        long[] leftover = new long[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            ItemStack prototype = items.get(i).getPrototype();
+            int maxStack = Math.max(1, prototype.getMaxStackSize());
+            long remaining = items.get(i).getAmount();
+            while (remaining > 0 && stacks.size() < slots) {
+                int amount = (int) Math.min(maxStack, remaining);
+                ItemStack stack = prototype.clone();
+                stack.setAmount(amount);
+                stacks.add(stack);
+                owners.add(i);
+                remaining -= amount;
+            }
+            leftover[i] = remaining;
+        }
+
+        if (!stacks.isEmpty()) {
+            // addItem 返回的键是传入数组中的下标
+            for (Map.Entry<Integer, ItemStack> rejected
+                    : player.getInventory().addItem(stacks.toArray(new ItemStack[0])).entrySet()) {
+                leftover[owners.get(rejected.getKey())] += rejected.getValue().getAmount();
+            }
+        }
+
+        Map<String, Long> overflow = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (leftover[i] > 0) {
+                overflow.merge(serializeItem(items.get(i).getPrototype()), leftover[i], Long::sum);
+            }
+        }
+        return overflow;
+    }
+
+    // === 待补发物品 ===
+
+    private void savePending(Player player, Map<String, Long> overflow) {
+        long total = overflow.values().stream().mapToLong(Long::longValue).sum();
+        player.sendMessage("§e背包空间不足，§6" + total + " §e件物品已保存，腾出空间后输入 §6/invite claim §e领取。");
+        storePending(player.getUniqueId(), player.getName(), overflow, true);
+    }
+
+    /**
+     * 写入待补发的物品，写入失败的部分重试一次，仍失败时把物品数据记录到日志中以便手动补发
+     */
+    private void storePending(UUID uuid, String name, Map<String, Long> items, boolean retry) {
+        plugin.getSessionManager().onPendingDeliveryChanged(uuid, true);
+        plugin.getDatabaseManager().getPendingRewardDAO().add(uuid, items).thenAccept(failed -> {
+            if (failed.isEmpty()) return;
+            if (retry) {
+                logger.warning("Failed to save " + failed.size() + " pending reward entries for " + name + ", retrying");
+                storePending(uuid, name, failed, false);
+                return;
+            }
+            failed.forEach((data, amount) -> logger.severe("Lost pending reward for " + name + " (" + uuid + "): "
+                    + amount + " x " + data.replace('\n', ' ')));
+        });
+    }
+
+    /**
+     * 发放玩家待补发的物品，仍然放不下的部分重新保存；未发放完的奖励任务重新放入发放队列
+     * 会话中记录了是否有待补发的奖励，没有时不访问数据库；会话不可用时先做一次只读查询
+     * @param player 玩家
+     */
+    public void deliverPending(Player player) {
+        UUID uuid = player.getUniqueId();
+        PendingRewardDAO dao = plugin.getDatabaseManager().getPendingRewardDAO();
+        PlayerSession session = plugin.getSessionManager().getLoadedSession(uuid);
+        if (session != null && !session.hasPendingDelivery()) {
+            return;
+        }
+        CompletableFuture<Boolean> hasPending = session != null
+                ? CompletableFuture.completedFuture(true) : dao.hasPending(uuid);
+        hasPending.thenCompose(pending -> {
+            if (!pending) {
+                return CompletableFuture.completedFuture(Collections.<String, Long>emptyMap());
+            }
+            // 先清除标记再取出，取出之后新保存的物品会重新设置标记
+            plugin.getSessionManager().onPendingDeliveryChanged(uuid, false);
+            // 未发放完的奖励任务重新放入发放队列，发放完成后才从数据库删除
+            dao.getJobs(uuid).thenAccept(jobs -> jobs.forEach(job ->
+                    plugin.getRewardDispatcher().submit(job, "§a之前未发放完的邀请奖励已补发！")))
+                    .exceptionally(e -> {
+                        logger.warning("Failed to load reward jobs for " + player.getName() + ": " + e.getMessage());
+                        return null;
+                    });
+            return dao.takeAll(uuid);
+        }).thenAccept(stored -> {
+            if (stored.isEmpty()) return;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (!player.isOnline()) {
+                    storePending(uuid, player.getName(), stored, true);
+                    return;
+                }
+                List<RewardPlan.PlanItem> items = new ArrayList<>();
+                Map<String, Long> unreadable = new LinkedHashMap<>();
+                for (Map.Entry<String, Long> entry : stored.entrySet()) {
+                    ItemStack prototype = deserializeItem(entry.getKey());
+                    if (prototype == null) {
+                        // 无法解析的物品（例如物品所属插件已卸载）保留原样，不丢弃
+                        unreadable.put(entry.getKey(), entry.getValue());
+                    } else {
+                        items.add(new RewardPlan.PlanItem(prototype, entry.getValue()));
+                    }
+                }
+                Map<String, Long> overflow = giveItems(player, items);
+                long total = items.stream().mapToLong(RewardPlan.PlanItem::getAmount).sum();
+                long remaining = overflow.values().stream().mapToLong(Long::longValue).sum();
+                if (total > remaining) {
+                    player.sendMessage("§a已补发 §e" + (total - remaining) + " §a件奖励物品。");
+                }
+                unreadable.forEach((data, amount) -> overflow.merge(data, amount, Long::sum));
+                if (remaining > 0) {
+                    player.sendMessage("§e背包空间不足，还有 §6" + remaining + " §e件物品待领取，腾出空间后输入 §6/invite claim §e领取。");
+                }
+                if (!overflow.isEmpty()) {
+                    storePending(uuid, player.getName(), overflow, true);
+                }
+            });
+        }).exceptionally(e -> {
+            logger.warning("Failed to load pending rewards for " + player.getName() + ": " + e.getMessage());
+            return null;
+        });
+    }
+
+    private static String serializeItem(ItemStack item) {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("item", item);
+        return yaml.saveToString();
+    }
+
+    private ItemStack deserializeItem(String data) {
+        try {
+            YamlConfiguration yaml = new YamlConfiguration();
+            yaml.loadFromString(data);
+            return yaml.getItemStack("item");
+        } catch (InvalidConfigurationException e) {
+            logger.warning("Invalid pending reward item data: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // --- 具体发放方法 ---
+    private void giveItem(Player player, RewardTemplate r) {
+        if (r.getType() == RewardType.ITEMSADDER && !itemsAdderEnabled) return;
+        ItemStack item = r.createItem();
+        if (item == null) {
+            // ItemsAdder 尚未加载完数据或物品不存在
+            logger.warning("ItemsAdder item is not available: " + r.getReward().getItemsAdderId());
+            return;
+        }
+        player.getInventory().addItem(item);
     }
 
-    private void giveVaultMoney(Player player, Reward r) {
+    private void giveVaultMoney(Player player, RewardTemplate r) {
         if (!vaultEnabled || economy == null) return;
-        economy.depositPlayer(player, r.getAmountNumeric());
-        player.sendMessage(org.bukkit.ChatColor.translateAlternateColorCodes('&',
-                "&a获得经济奖励: &e" + r.getAmountNumeric() + " " + economy.currencyNamePlural()));
+        economy.depositPlayer(player, r.getReward().getAmountNumeric());
+        player.sendMessage(r.getMessage());
     }
 
-    private void givePlayerPoints(Player player, Reward r) {
+    private void givePlayerPoints(Player player, RewardTemplate r) {
         if (!playerPointsEnabled || playerPointsAPI == null) return;
-        playerPointsAPI.give(player.getUniqueId(), (int) r.getAmountNumeric());
-        player.sendMessage(org.bukkit.ChatColor.translateAlternateColorCodes('&',
-                "&a获得点券奖励: &e" + (int) r.getAmountNumeric() + " 点"));
+        playerPointsAPI.give(player.getUniqueId(), (int) r.getReward().getAmountNumeric());
+        player.sendMessage(r.getMessage());
     }
     
     // Getters
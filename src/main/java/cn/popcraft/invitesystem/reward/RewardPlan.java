@@ -0,0 +1,69 @@
+package cn.popcraft.invitesystem.reward;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 合并发放计划
+ * 把 N 份奖励列表折叠为一次发放：经济和点券奖励求和，相同的物品（isSimilar）合并为一个原型和总数量，
+ * 发放时再按最大堆叠数拆分
+ */
+public class RewardPlan {
+    private double money;
+    private long points;
+    private final List<PlanItem> items = new ArrayList<>();
+
+    public void addMoney(double amount) {
+        money += amount;
+    }
+
+    public void addPoints(long amount) {
+        points += amount;
+    }
+
+    /**
+     * 加入物品
+     * @param item 物品（数量为单份的数量）
+     * @param copies 份数
+     */
+    public void addItem(ItemStack item, int copies) {
+        long amount = (long) item.getAmount() * copies;
+        if (amount <= 0) return;
+        for (PlanItem planned : items) {
+            if (planned.prototype.isSimilar(item)) {
+                planned.amount += amount;
+                return;
+            }
+        }
+        ItemStack prototype = item.clone();
+        prototype.setAmount(1);
+        items.add(new PlanItem(prototype, amount));
+    }
+
+    public double getMoney() { return money; }
+    public long getPoints() { return points; }
+    public List<PlanItem> getItems() { return Collections.unmodifiableList(items); }
+
+    public boolean isEmpty() {
+        return money <= 0 && points <= 0 && items.isEmpty();
+    }
+
+    /**
+     * 合并后的物品：原型（数量为 1）和总数量
+     */
+    public static final class PlanItem {
+        private final ItemStack prototype;
+        private long amount;
+
+        public PlanItem(ItemStack prototype, long amount) {
+            this.prototype = prototype;
+            this.amount = amount;
+        }
+
+        public ItemStack getPrototype() { return prototype; }
+        public long getAmount() { return amount; }
+    }
+}
@@ -0,0 +1,44 @@
+package cn.popcraft.invitesystem.reward;
+
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * 预编译的奖励模板
+ * 加载配置时根据 Reward 构建好物品（名称和描述的颜色代码已转换）和提示消息，发放时只复制模板；
+ * ItemsAdder 物品在 ItemsAdder 加载完数据后才解析，解析前为 null
+ */
+public class RewardTemplate {
+    private final Reward reward;
+    private final String message;
+    private volatile ItemStack item;
+
+    public RewardTemplate(Reward reward, ItemStack item, String message) {
+        this.reward = reward;
+        this.item = item;
+        this.message = message;
+    }
+
+    public Reward getReward() { return reward; }
+    public RewardType getType() { return reward.getType(); }
+
+    // 发放给玩家的提示消息（VAULT / PLAYERPOINTS），没有时为 null
+    public String getMessage() { return message; }
+
+    /**
+     * 复制一份模板物品
+     * @return 物品，ItemsAdder 物品尚未解析时返回 null
+     */
+    public ItemStack createItem() {
+        ItemStack template = item;
+        return template == null ? null : template.clone();
+    }
+
+    public boolean isResolved() {
+        return item != null;
+    }
+
+    // 设置解析到的 ItemsAdder 物品
+    void resolve(ItemStack item) {
+        this.item = item;
+    }
+}
@@ -19,7 +19,7 @@ public class CleanupTask extends BukkitRunnable {
 
     @Override
     public void run() {
-        if (!plugin.getConfig().getBoolean("misc.auto-cleanup-expired-codes", true)) {
+        if (!plugin.getSettings().isAutoCleanupExpiredCodes()) {
             return;
         }
 
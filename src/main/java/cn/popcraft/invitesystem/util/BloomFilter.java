@@ -0,0 +1,114 @@
+package cn.popcraft.invitesystem.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 字符串布隆过滤器
+ * mightContain 返回 false 时元素一定不存在；返回 true 时可能存在（有一定误判率）。
+ * 添加和查询都不加锁，可在多个线程中并发使用
+ */
+public class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder setBits = new LongAdder();
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * @param expectedInsertions 预计元素数量
+     * @param bitsPerElement 每个元素占用的位数
+     */
+    public BloomFilter(long expectedInsertions, double bitsPerElement) {
+        long bits = (long) Math.ceil(Math.max(1, expectedInsertions) * Math.max(1.0, bitsPerElement));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round(bitsPerElement * LN2));
+    }
+
+    /**
+     * 根据目标误判率计算每个元素需要的位数
+     * @param falsePositiveRate 误判率（0~1）
+     * @return 每个元素的位数
+     */
+    public static double bitsPerElement(double falsePositiveRate) {
+        double p = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        return -Math.log(p) / (LN2 * LN2);
+    }
+
+    public void add(String value) {
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            while (true) {
+                long current = words.get(index);
+                if ((current & mask) != 0) {
+                    break;
+                }
+                if (words.compareAndSet(index, current, current | mask)) {
+                    setBits.increment();
+                    break;
+                }
+            }
+        }
+        insertions.increment();
+    }
+
+    public boolean mightContain(String value) {
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a 后接 64 位混合函数
+    private static long hash(String value, long seed) {
+        long h = 0xCBF29CE484222325L ^ seed;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // 统计信息
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    // 已置位的比例
+    public double getFillRatio() {
+        return setBits.sum() / (double) bitCount;
+    }
+
+    // 按当前填充率估算的误判率
+    public double getEstimatedFalsePositiveRate() {
+        return Math.pow(getFillRatio(), hashCount);
+    }
+}
@@ -0,0 +1,254 @@
+package cn.popcraft.invitesystem.util;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按条目过期时间淘汰的并发映射
+ * 每个条目按过期时间放入时间轮的一个槽位，sweep() 每次只处理到期的槽位，不需要扫描全部条目；
+ * 读取时也会检查过期时间。超出容量时优先淘汰最早过期的条目，保证内存有上限。
+ * 过期时间为毫秒时间戳（System.currentTimeMillis），可以直接保存到磁盘后重新载入
+ * @param <K> 键
+ * @param <V> 值
+ */
+public class ExpiringMap<K, V> {
+
+    // 时间轮每格一分钟，一圈一天；更晚过期的条目在槽位中停留多圈
+    private static final long TICK_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int WHEEL_SIZE = 1440;
+
+    private volatile int maxSize;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Set<K>[] wheel;
+    private volatile long lastSweptTick;
+
+    // 统计信息
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize 最大条目数
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiringMap(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        this.wheel = new Set[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.lastSweptTick = System.currentTimeMillis() / TICK_MILLIS - 1;
+    }
+
+    /**
+     * 读取未过期的值
+     * @param key 键
+     * @return 值，不存在或已过期时返回 null
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            if (entries.remove(key, entry)) {
+                expirations.increment();
+            }
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * 写入值
+     * @param key 键
+     * @param value 值
+     * @param expiresAt 过期时间（毫秒时间戳），已过期时不写入
+     */
+    public void put(K key, V value, long expiresAt) {
+        if (expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, expiresAt, slotOf(expiresAt));
+        entries.put(key, entry);
+        wheel[entry.slot].add(key);
+        trimToSize();
+    }
+
+    /**
+     * 原子地更新值
+     * @param key 键
+     * @param function 更新函数，参数为当前未过期的值（没有时为 null），返回 null 表示删除
+     * @param expiry 根据新值计算过期时间（毫秒时间戳）
+     * @return 新值
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function, ToLongFunction<? super V> expiry) {
+        long now = System.currentTimeMillis();
+        Entry<V> updated = entries.compute(key, (k, old) -> {
+            V current = old == null || old.expiresAt <= now ? null : old.value;
+            V value = function.apply(k, current);
+            if (value == null) {
+                return null;
+            }
+            long expiresAt = expiry.applyAsLong(value);
+            if (expiresAt <= now) {
+                return null;
+            }
+            if (old != null && old.value == value && old.expiresAt == expiresAt) {
+                return old;
+            }
+            return new Entry<>(value, expiresAt, slotOf(expiresAt));
+        });
+        if (updated == null) {
+            return null;
+        }
+        wheel[updated.slot].add(key);
+        trimToSize();
+        return updated.value;
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * 清理已到期的槽位
+     * @return 本次清理的条目数
+     */
+    public synchronized int sweep() {
+        long now = System.currentTimeMillis();
+        long target = now / TICK_MILLIS;
+        long from = Math.max(lastSweptTick + 1, target - WHEEL_SIZE + 1);
+        int removed = 0;
+        for (long tick = from; tick <= target; tick++) {
+            removed += sweepSlot((int) (tick % WHEEL_SIZE), now);
+        }
+        lastSweptTick = target;
+        return removed;
+    }
+
+    private int sweepSlot(int slot, long now) {
+        int removed = 0;
+        Iterator<K> it = wheel[slot].iterator();
+        while (it.hasNext()) {
+            K key = it.next();
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.slot == slot && entry.expiresAt > now) {
+                // 过期时间在之后某一圈
+                continue;
+            }
+            it.remove();
+            if (entry != null && entry.expiresAt <= now && entries.remove(key, entry)) {
+                expirations.increment();
+                removed++;
+                continue;
+            }
+            // 条目已更新到其他槽位；并发写入可能刚把同一个键放回本槽位，重新检查一次
+            Entry<V> current = entries.get(key);
+            if (current != null && current.slot == slot) {
+                wheel[slot].add(key);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 修改最大条目数，超出时立即淘汰
+     * @param maxSize 最大条目数
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        trimToSize();
+    }
+
+    /**
+     * 超出容量时从最早到期的槽位开始淘汰
+     */
+    private void trimToSize() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        synchronized (this) {
+            long start = lastSweptTick + 1;
+            // 第一遍只淘汰一圈内到期的条目，仍然超出时再淘汰更晚到期的条目
+            long horizon = (start + WHEEL_SIZE) * TICK_MILLIS;
+            for (int pass = 0; pass < 2 && entries.size() > maxSize; pass++) {
+                for (int i = 0; i < WHEEL_SIZE && entries.size() > maxSize; i++) {
+                    int slot = (int) ((start + i) % WHEEL_SIZE);
+                    Iterator<K> it = wheel[slot].iterator();
+                    while (it.hasNext() && entries.size() > maxSize) {
+                        K key = it.next();
+                        Entry<V> entry = entries.get(key);
+                        if (entry == null || entry.slot != slot || (pass == 0 && entry.expiresAt >= horizon)) {
+                            continue;
+                        }
+                        if (entries.remove(key, entry)) {
+                            evictions.increment();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private int slotOf(long expiresAt) {
+        // 落在已清理过的格子里的条目放到下一格，避免多停留一圈
+        long tick = Math.max(expiresAt / TICK_MILLIS, lastSweptTick + 1);
+        return (int) (tick % WHEEL_SIZE);
+    }
+
+    /**
+     * 遍历未过期的条目（用于保存快照）
+     * @param visitor 访问函数
+     */
+    public void forEach(EntryVisitor<K, V> visitor) throws IOException {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+            Entry<V> entry = e.getValue();
+            if (entry.expiresAt > now) {
+                visitor.visit(e.getKey(), entry.value, entry.expiresAt);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryVisitor<K, V> {
+        void visit(K key, V value, long expiresAt) throws IOException;
+    }
+
+    // 统计信息
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+        private final int slot;
+
+        private Entry(V value, long expiresAt, int slot) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.slot = slot;
+        }
+    }
+}
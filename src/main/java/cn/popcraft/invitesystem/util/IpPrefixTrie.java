@@ -0,0 +1,474 @@
+package cn.popcraft.invitesystem.util;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+/**
+ * 按网段统计邀请次数的二进制前缀树（路径压缩）
+ * 地址按 128 位整数处理，IPv4 映射到 ::ffff:0:0/96 下，IPv4 的 /24 即树中深度 120 的节点。
+ * 只在配置了上限的前缀长度上保存计数（冷却窗口内的邀请时间），中间只有分叉用的节点；
+ * 节点保存在并行数组中，查询只读取数组，不分配对象。所有方法在同一把锁下执行
+ */
+public class IpPrefixTrie {
+
+    private static final int NONE = -1;
+    private static final int IPV4_OFFSET = 96;
+    private static final long IPV4_MAPPED_LO = 0xFFFFL << 32;
+
+    private int maxEntries;
+
+    // 前缀长度 -> 上限，0 表示该长度没有限制
+    private int[] limits4 = new int[33];
+    private int[] limits6 = new int[129];
+    private int[] depths4 = new int[0];
+    private int[] depths6 = new int[0];
+
+    // 节点数组，下标 0 为根节点（长度 0）
+    private long[] prefixHi;
+    private long[] prefixLo;
+    private short[] prefixLen;
+    private int[] child0;
+    private int[] child1;
+    private long[][] times;
+    private int nodeCount;
+    private int entryCount;
+
+    // 统计信息
+    private long expirations;
+    private long evictions;
+
+    /**
+     * @param maxEntries 最多保存计数的网段数
+     */
+    public IpPrefixTrie(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        reset(64);
+    }
+
+    /**
+     * 修改最多保存计数的网段数（超出的部分在下次记录或清理时淘汰）
+     * @param maxEntries 最多保存计数的网段数
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * 设置各前缀长度的上限
+     * @param limits4 IPv4 前缀长度（0-32）-> 上限
+     * @param limits6 IPv6 前缀长度（0-128）-> 上限
+     */
+    public synchronized void setLimits(int[] limits4, int[] limits6) {
+        this.limits4 = Arrays.copyOf(limits4, 33);
+        this.limits6 = Arrays.copyOf(limits6, 129);
+        this.depths4 = depthsOf(this.limits4, IPV4_OFFSET);
+        this.depths6 = depthsOf(this.limits6, 0);
+    }
+
+    private static int[] depthsOf(int[] limits, int offset) {
+        int count = 0;
+        for (int limit : limits) {
+            if (limit > 0) {
+                count++;
+            }
+        }
+        int[] depths = new int[count];
+        for (int len = 0, i = 0; len < limits.length; len++) {
+            if (limits[len] > 0) {
+                depths[i++] = len + offset;
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * 检查地址所在的每个网段是否都未达到上限
+     * @param hi 地址高 64 位
+     * @param lo 地址低 64 位
+     * @param since 只统计此时间之后的邀请（毫秒时间戳）
+     * @return 是否允许
+     */
+    public synchronized boolean isAllowed(long hi, long lo, long since) {
+        boolean ipv4 = isIpv4(hi, lo);
+        int node = 0;
+        while (node != NONE) {
+            int len = prefixLen[node];
+            if (!samePrefix(prefixHi[node], prefixLo[node], hi, lo, len)) {
+                break;
+            }
+            long[] nodeTimes = times[node];
+            if (nodeTimes != null) {
+                int limit = limitAt(len, ipv4);
+                if (limit > 0 && countSince(nodeTimes, since) >= limit) {
+                    return false;
+                }
+            }
+            if (len == 128) {
+                break;
+            }
+            node = bitAt(hi, lo, len) == 0 ? child0[node] : child1[node];
+        }
+        return true;
+    }
+
+    /**
+     * 所有网段都未达到上限时，在每个有上限的网段上记录一次邀请（检查和记录为一次原子操作）
+     * @param hi 地址高 64 位
+     * @param lo 地址低 64 位
+     * @param time 邀请时间
+     * @param since 冷却窗口的起点
+     * @return 是否允许并已记录
+     */
+    public synchronized boolean tryRecord(long hi, long lo, long time, long since) {
+        if (!isAllowed(hi, lo, since)) {
+            return false;
+        }
+        record(hi, lo, time, since);
+        return true;
+    }
+
+    /**
+     * 在每个有上限的网段上记录一次邀请（不检查上限，用于载入快照）
+     */
+    public synchronized void record(long hi, long lo, long time, long since) {
+        for (int depth : isIpv4(hi, lo) ? depths4 : depths6) {
+            int node = insert(maskHi(hi, depth), maskLo(lo, depth), depth);
+            long[] current = times[node] == null ? new long[0] : prune(times[node], since);
+            long[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = time;
+            if (times[node] == null) {
+                entryCount++;
+            }
+            times[node] = updated;
+        }
+        if (entryCount > maxEntries) {
+            // 超出上限时重建，保留最近有邀请的网段，留出余量避免每次插入都重建
+            rebuild(since, maxEntries - maxEntries / 10);
+        }
+    }
+
+    /**
+     * 撤销一次邀请记录
+     * @param time tryRecord 时使用的邀请时间
+     */
+    public synchronized void remove(long hi, long lo, long time) {
+        boolean ipv4 = isIpv4(hi, lo);
+        int node = 0;
+        while (node != NONE) {
+            int len = prefixLen[node];
+            if (!samePrefix(prefixHi[node], prefixLo[node], hi, lo, len)) {
+                break;
+            }
+            long[] nodeTimes = times[node];
+            if (nodeTimes != null && limitAt(len, ipv4) > 0) {
+                for (int i = 0; i < nodeTimes.length; i++) {
+                    if (nodeTimes[i] == time) {
+                        long[] updated = new long[nodeTimes.length - 1];
+                        System.arraycopy(nodeTimes, 0, updated, 0, i);
+                        System.arraycopy(nodeTimes, i + 1, updated, i, nodeTimes.length - i - 1);
+                        times[node] = updated;
+                        break;
+                    }
+                }
+            }
+            if (len == 128) {
+                break;
+            }
+            node = bitAt(hi, lo, len) == 0 ? child0[node] : child1[node];
+        }
+    }
+
+    /**
+     * 去掉冷却窗口外的邀请和已取消上限的网段，重新紧凑地构建整棵树
+     * @param since 冷却窗口的起点
+     * @return 清理的网段数
+     */
+    public synchronized int sweep(long since) {
+        int before = entryCount;
+        rebuild(since, maxEntries);
+        return before - entryCount;
+    }
+
+    private void rebuild(long since, int keep) {
+        int live = 0;
+        int[] liveNodes = new int[entryCount];
+        for (int node = 0; node < nodeCount; node++) {
+            if (times[node] == null || limitOf(node) <= 0) {
+                continue;
+            }
+            long[] pruned = prune(times[node], since);
+            if (pruned.length > 0) {
+                times[node] = pruned;
+                liveNodes[live++] = node;
+            }
+        }
+        expirations += entryCount - live;
+        if (live > keep) {
+            // 按最近一次邀请的时间保留最新的网段
+            long[][] nodeTimes = times;
+            Integer[] order = new Integer[live];
+            for (int i = 0; i < live; i++) {
+                order[i] = liveNodes[i];
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(newest(nodeTimes[b]), newest(nodeTimes[a])));
+            for (int i = 0; i < keep; i++) {
+                liveNodes[i] = order[i];
+            }
+            evictions += live - keep;
+            live = keep;
+        }
+
+        long[] oldHi = prefixHi;
+        long[] oldLo = prefixLo;
+        short[] oldLen = prefixLen;
+        long[][] oldTimes = times;
+        reset(Math.max(64, live * 2));
+        for (int i = 0; i < live; i++) {
+            int old = liveNodes[i];
+            int node = insert(oldHi[old], oldLo[old], oldLen[old]);
+            times[node] = oldTimes[old];
+            entryCount++;
+        }
+    }
+
+    /**
+     * 遍历有计数的网段（用于保存快照）
+     */
+    public synchronized void forEach(EntryVisitor visitor) throws IOException {
+        for (int node = 0; node < nodeCount; node++) {
+            if (times[node] != null && times[node].length > 0) {
+                visitor.visit(prefixHi[node], prefixLo[node], prefixLen[node], times[node].clone());
+            }
+        }
+    }
+
+    /**
+     * 载入快照中的网段计数
+     */
+    public synchronized void restore(long hi, long lo, int len, long[] entryTimes, long since) {
+        long[] pruned = prune(entryTimes, since);
+        if (pruned.length == 0 || len < 0 || len > 128) {
+            return;
+        }
+        int node = insert(maskHi(hi, len), maskLo(lo, len), len);
+        if (times[node] == null) {
+            entryCount++;
+        }
+        times[node] = pruned;
+    }
+
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(long hi, long lo, int len, long[] times) throws IOException;
+    }
+
+    // === 树操作 ===
+
+    private void reset(int capacity) {
+        prefixHi = new long[capacity];
+        prefixLo = new long[capacity];
+        prefixLen = new short[capacity];
+        child0 = new int[capacity];
+        child1 = new int[capacity];
+        times = new long[capacity][];
+        nodeCount = 0;
+        entryCount = 0;
+        newNode(0, 0, 0);
+    }
+
+    /**
+     * 找到或创建长度为 len 的前缀节点（hi/lo 已按 len 截断）
+     */
+    private int insert(long hi, long lo, int len) {
+        int node = 0;
+        while (true) {
+            int nodeLen = prefixLen[node];
+            if (nodeLen == len) {
+                return node;
+            }
+            int bit = bitAt(hi, lo, nodeLen);
+            int child = bit == 0 ? child0[node] : child1[node];
+            if (child == NONE) {
+                int created = newNode(hi, lo, len);
+                setChild(node, bit, created);
+                return created;
+            }
+            int childLen = prefixLen[child];
+            int common = Math.min(commonPrefix(prefixHi[child], prefixLo[child], hi, lo), Math.min(childLen, len));
+            if (common == childLen) {
+                node = child;
+                continue;
+            }
+            // 新前缀与子节点在 common 位之后分叉，或者是子节点的前缀
+            int split = common == len ? newNode(hi, lo, len) : newNode(maskHi(hi, common), maskLo(lo, common), common);
+            setChild(split, bitAt(prefixHi[child], prefixLo[child], common), child);
+            setChild(node, bit, split);
+            if (common == len) {
+                return split;
+            }
+            int created = newNode(hi, lo, len);
+            setChild(split, bitAt(hi, lo, common), created);
+            return created;
+        }
+    }
+
+    private int newNode(long hi, long lo, int len) {
+        if (nodeCount == prefixHi.length) {
+            int capacity = nodeCount * 2;
+            prefixHi = Arrays.copyOf(prefixHi, capacity);
+            prefixLo = Arrays.copyOf(prefixLo, capacity);
+            prefixLen = Arrays.copyOf(prefixLen, capacity);
+            child0 = Arrays.copyOf(child0, capacity);
+            child1 = Arrays.copyOf(child1, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        int node = nodeCount++;
+        prefixHi[node] = hi;
+        prefixLo[node] = lo;
+        prefixLen[node] = (short) len;
+        child0[node] = NONE;
+        child1[node] = NONE;
+        times[node] = null;
+        return node;
+    }
+
+    private void setChild(int node, int bit, int child) {
+        if (bit == 0) {
+            child0[node] = child;
+        } else {
+            child1[node] = child;
+        }
+    }
+
+    private int limitOf(int node) {
+        int len = prefixLen[node];
+        return limitAt(len, len >= IPV4_OFFSET && isIpv4(prefixHi[node], prefixLo[node]));
+    }
+
+    private int limitAt(int len, boolean ipv4) {
+        if (ipv4) {
+            return len >= IPV4_OFFSET ? limits4[len - IPV4_OFFSET] : 0;
+        }
+        return limits6[len];
+    }
+
+    // === 地址位运算 ===
+
+    /**
+     * 把地址转换为 128 位整数，IPv4 映射到 ::ffff:0:0/96
+     * @return {高 64 位, 低 64 位}
+     */
+    public static long[] toBits(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            long v4 = ((bytes[0] & 0xFFL) << 24) | ((bytes[1] & 0xFFL) << 16) | ((bytes[2] & 0xFFL) << 8) | (bytes[3] & 0xFFL);
+            return new long[]{0L, IPV4_MAPPED_LO | v4};
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = (hi << 8) | (bytes[i] & 0xFFL);
+            lo = (lo << 8) | (bytes[i + 8] & 0xFFL);
+        }
+        return new long[]{hi, lo};
+    }
+
+    private static boolean isIpv4(long hi, long lo) {
+        return hi == 0 && (lo >>> 32) == 0xFFFFL;
+    }
+
+    private static int bitAt(long hi, long lo, int index) {
+        return (int) (index < 64 ? (hi >>> (63 - index)) & 1 : (lo >>> (127 - index)) & 1);
+    }
+
+    private static boolean samePrefix(long aHi, long aLo, long bHi, long bLo, int len) {
+        if (len == 0) {
+            return true;
+        }
+        if (len <= 64) {
+            return ((aHi ^ bHi) >>> (64 - len)) == 0;
+        }
+        return aHi == bHi && (len == 128 ? aLo == bLo : ((aLo ^ bLo) >>> (128 - len)) == 0);
+    }
+
+    private static int commonPrefix(long aHi, long aLo, long bHi, long bLo) {
+        long diff = aHi ^ bHi;
+        if (diff != 0) {
+            return Long.numberOfLeadingZeros(diff);
+        }
+        diff = aLo ^ bLo;
+        return diff == 0 ? 128 : 64 + Long.numberOfLeadingZeros(diff);
+    }
+
+    private static long maskHi(long hi, int len) {
+        if (len >= 64) {
+            return hi;
+        }
+        return len == 0 ? 0 : hi & (-1L << (64 - len));
+    }
+
+    private static long maskLo(long lo, int len) {
+        if (len <= 64) {
+            return 0;
+        }
+        return len == 128 ? lo : lo & (-1L << (128 - len));
+    }
+
+    // === 计数 ===
+
+    private static int countSince(long[] entryTimes, long since) {
+        int count = 0;
+        for (long time : entryTimes) {
+            if (time > since) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long[] prune(long[] entryTimes, long since) {
+        int live = countSince(entryTimes, since);
+        if (live == entryTimes.length) {
+            return entryTimes;
+        }
+        long[] pruned = new long[live];
+        int i = 0;
+        for (long time : entryTimes) {
+            if (time > since) {
+                pruned[i++] = time;
+            }
+        }
+        return pruned;
+    }
+
+    private static long newest(long[] entryTimes) {
+        long newest = Long.MIN_VALUE;
+        for (long time : entryTimes) {
+            newest = Math.max(newest, time);
+        }
+        return newest;
+    }
+
+    // 统计信息
+    public synchronized int size() {
+        return entryCount;
+    }
+
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized long getExpirations() {
+        return expirations;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,200 @@
+package cn.popcraft.invitesystem.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 有容量上限和过期时间的异步读取缓存
+ * 超出容量时淘汰最久未访问的条目；加载结果为 null 时按较短的时间缓存（负缓存）；
+ * 同一个键同时只有一次加载，并发的未命中共享同一个结果
+ * @param <K> 键
+ * @param <V> 值
+ */
+public class LoadingCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 统计信息
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize 最大条目数
+     * @param ttl 有值结果的缓存时间
+     * @param negativeTtl 空结果的缓存时间，0 表示不缓存空结果
+     * @param unit 时间单位
+     */
+    public LoadingCache(int maxSize, long ttl, long negativeTtl, TimeUnit unit) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = unit.toNanos(Math.max(0, ttl));
+        this.negativeTtlNanos = unit.toNanos(Math.max(0, negativeTtl));
+    }
+
+    /**
+     * 读取缓存，未命中时调用 loader 加载
+     * @param key 键
+     * @param loader 加载函数，加载失败的结果不会被缓存
+     * @return 缓存或加载的结果
+     */
+    public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null) {
+                if (entry.isExpired(System.nanoTime())) {
+                    entries.remove(key);
+                    expirations.increment();
+                } else {
+                    hits.increment();
+                    if (entry.future.isDone() && entry.future.getNow(null) == null) {
+                        negativeHits.increment();
+                    }
+                    return entry.future;
+                }
+            }
+
+            misses.increment();
+            entry = new Entry<>();
+            entries.put(key, entry);
+            evictOverflow();
+        }
+
+        Entry<V> loading = entry;
+        CompletableFuture<V> source;
+        try {
+            source = loader.apply(key);
+        } catch (RuntimeException e) {
+            source = CompletableFuture.failedFuture(e);
+        }
+        source.whenComplete((value, e) -> {
+            synchronized (this) {
+                if (entries.get(key) == loading) {
+                    long ttl = value != null ? ttlNanos : negativeTtlNanos;
+                    if (e != null || ttl == 0) {
+                        entries.remove(key);
+                    } else {
+                        loading.expiresAt = System.nanoTime() + ttl;
+                    }
+                }
+            }
+            if (e != null) {
+                loading.future.completeExceptionally(e);
+            } else {
+                loading.future.complete(value);
+            }
+        });
+        return loading.future;
+    }
+
+    /**
+     * 读取缓存，不触发加载
+     * @param key 键
+     * @return 缓存中的结果（可能仍在加载中），不存在或已过期时返回 null
+     */
+    public synchronized CompletableFuture<V> getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (entry.future.isDone() && entry.future.getNow(null) == null) {
+            negativeHits.increment();
+        }
+        return entry.future;
+    }
+
+    /**
+     * 直接写入一个已知的值
+     */
+    public synchronized void put(K key, V value) {
+        long ttl = value != null ? ttlNanos : negativeTtlNanos;
+        if (ttl == 0) {
+            entries.remove(key);
+            return;
+        }
+        Entry<V> entry = new Entry<>();
+        entry.future.complete(value);
+        entry.expiresAt = System.nanoTime() + ttl;
+        entries.put(key, entry);
+        evictOverflow();
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    // 统计信息
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public double getHitRate() {
+        long total = hits.sum() + misses.sum();
+        return total == 0 ? 0 : hits.sum() / (double) total;
+    }
+
+    private static class Entry<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        // 加载完成前为 Long.MAX_VALUE（加载中的条目不会过期）
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private boolean isExpired(long now) {
+            return expiresAt != Long.MAX_VALUE && now - expiresAt > 0;
+        }
+    }
+}
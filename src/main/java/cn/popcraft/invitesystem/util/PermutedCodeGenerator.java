@@ -0,0 +1,114 @@
+package cn.popcraft.invitesystem.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 基于序号置换的邀请码生成器
+ * 用带密钥的 Feistel 网络把序号一一映射到 [0, 字符集大小^长度) 中的另一个数，再编码为固定长度的字符串。
+ * 映射是双射，不同序号得到的邀请码一定不同；不知道密钥时，相邻序号的邀请码之间看不出规律
+ */
+public class PermutedCodeGenerator {
+
+    public static final String BASE62 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    // 不区分大小写的数据库（如 MySQL 默认排序规则）中使用，避免只有大小写不同的邀请码互相冲突
+    public static final String BASE36 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private static final int ROUNDS = 8;
+
+    private final String alphabet;
+    private final int length;
+    private final long capacity;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    /**
+     * @param secret 密钥（同一数据库上的所有服务器必须相同）
+     * @param alphabet 字符集
+     * @param length 邀请码长度
+     */
+    public PermutedCodeGenerator(String secret, String alphabet, int length) {
+        this.alphabet = alphabet;
+        this.length = length;
+
+        long cap = 1;
+        for (int i = 0; i < length; i++) {
+            if (cap > Long.MAX_VALUE / 4 / alphabet.length()) {
+                throw new IllegalArgumentException("Invite code length too large: " + length);
+            }
+            cap *= alphabet.length();
+        }
+        this.capacity = cap;
+
+        // Feistel 网络作用于偶数位宽，超出范围的结果继续置换（cycle walking）直到落入范围内
+        int bits = 64 - Long.numberOfLeadingZeros(cap - 1);
+        this.halfBits = Math.max(1, (bits + 1) / 2);
+        this.halfMask = (1L << halfBits) - 1;
+
+        ByteBuffer digest = ByteBuffer.wrap(sha256(secret + "|" + alphabet + "|" + length));
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = digest.getLong((i % 4) * 8) + i * 0x9E3779B97F4A7C15L;
+        }
+    }
+
+    /**
+     * 可生成的邀请码总数
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 根据序号生成邀请码
+     * @param sequence 序号（0 ~ capacity - 1）
+     * @return 邀请码
+     */
+    public String generate(long sequence) {
+        if (sequence < 0 || sequence >= capacity) {
+            throw new IllegalArgumentException("Invite code sequence exhausted: " + sequence);
+        }
+        long value = sequence;
+        do {
+            value = permute(value);
+        } while (value >= capacity);
+
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = alphabet.charAt((int) (value % alphabet.length()));
+            value /= alphabet.length();
+        }
+        return new String(chars);
+    }
+
+    private long permute(long value) {
+        long left = (value >>> halfBits) & halfMask;
+        long right = value & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ (round(right, roundKeys[i]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private static long round(long value, long key) {
+        long h = value ^ key;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
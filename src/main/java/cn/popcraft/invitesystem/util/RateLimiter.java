@@ -0,0 +1,124 @@
+package cn.popcraft.invitesystem.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁令牌桶限流器
+ * 每个键一个桶，桶中只保存一个时间值（令牌用完的时刻），获取令牌时按经过的时间惰性补充，一次 CAS 完成，不需要定时补充；
+ * 令牌补满后的桶视为空闲，由 sweep() 移除
+ * @param <K> 键
+ */
+public class RateLimiter<K> {
+
+    // 已被 sweep() 移除的桶，获取令牌时遇到需要换一个新桶
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private final ConcurrentHashMap<K, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private volatile long intervalNanos;
+    private volatile long burstNanos;
+
+    // 统计信息
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param capacity 桶容量（允许连续执行的次数），小于 1 表示不限制
+     * @param refillTime 补充一个令牌所需的时间
+     * @param unit 时间单位
+     */
+    public RateLimiter(int capacity, long refillTime, TimeUnit unit) {
+        configure(capacity, refillTime, unit);
+    }
+
+    /**
+     * 修改桶容量和补充速度（已有的桶保留当前状态）
+     */
+    public void configure(int capacity, long refillTime, TimeUnit unit) {
+        long interval = capacity < 1 ? 0 : unit.toNanos(Math.max(0, refillTime));
+        this.burstNanos = interval * Math.max(0, capacity - 1);
+        this.intervalNanos = interval;
+    }
+
+    /**
+     * 获取一个令牌
+     * @param key 键
+     * @return 0 表示获取成功，否则为距离下一个令牌的纳秒数
+     */
+    public long tryAcquire(K key) {
+        long interval = intervalNanos;
+        if (interval <= 0) {
+            return 0;
+        }
+        long burst = burstNanos;
+        while (true) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+            }
+            long emptyAt = bucket.get();
+            if (emptyAt == REMOVED) {
+                buckets.remove(key, bucket);
+                continue;
+            }
+            long now = System.nanoTime();
+            long base = emptyAt - now > 0 ? emptyAt : now;
+            long wait = base - burst - now;
+            if (wait > 0) {
+                rejected.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(emptyAt, base + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 退还一个令牌（同一次请求的其他限流器拒绝时调用）
+     * @param key 键
+     */
+    public void refund(K key) {
+        long interval = intervalNanos;
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null || interval <= 0) {
+            return;
+        }
+        while (true) {
+            long emptyAt = bucket.get();
+            if (emptyAt == REMOVED || bucket.compareAndSet(emptyAt, emptyAt - interval)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 移除令牌已补满的桶
+     * @return 移除的桶数
+     */
+    public int sweep() {
+        long now = System.nanoTime();
+        int removed = 0;
+        for (Map.Entry<K, AtomicLong> entry : buckets.entrySet()) {
+            AtomicLong bucket = entry.getValue();
+            long emptyAt = bucket.get();
+            // 先标记再移除，标记之后的获取会换一个新桶，不会丢失已消耗的令牌
+            if (emptyAt != REMOVED && emptyAt - now <= 0 && bucket.compareAndSet(emptyAt, REMOVED)) {
+                buckets.remove(entry.getKey(), bucket);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // 统计信息
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,210 @@
+package cn.popcraft.invitesystem.config;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PluginSettingsTest {
+
+    private YamlConfiguration config;
+    private Logger logger;
+    // 记录的警告
+    private final List<String> warnings = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        config = new YamlConfiguration();
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                warnings.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @Test
+    public void emptyConfigUsesDefaults() {
+        PluginSettings settings = load();
+
+        assertEquals(600, settings.getMinPlayTimeSeconds());
+        assertEquals(0, settings.getMaxPlayTimeSeconds());
+        assertEquals(8, settings.getCodeLength());
+        assertEquals(0, settings.getCodeExpireAfterSeconds());
+        assertEquals(1, settings.getMaxUsesPerCode());
+        assertTrue(settings.isFirstTimeOnly());
+        assertEquals(0, settings.getCreateCooldownMillis());
+        assertTrue(settings.isIpLimitEnabled());
+        assertEquals(TimeUnit.HOURS.toMillis(24), settings.getIpWindowMillis());
+        assertEquals(3, settings.getSubnetLimits4()[32]);
+        assertEquals(3, settings.getSubnetLimits6()[128]);
+        assertEquals(50000, settings.getAntiCheatMaxEntries());
+        assertEquals(5, settings.getAntiCheatSnapshotMinutes());
+        assertTrue(settings.getRateLimits().isEmpty());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(500), settings.getRewardDispatchBudgetNanos());
+        assertTrue(settings.isAggregateRewards());
+        assertTrue(settings.isSessionCacheEnabled());
+        assertEquals(60, settings.getCodeFilterRebuildMinutes());
+        // 默认值不产生警告
+        assertTrue(warnings.toString(), warnings.isEmpty());
+    }
+
+    @Test
+    public void durationsAreParsed() {
+        config.set("invite.min-play-time", "90s");
+        config.set("invite.max-play-time", "2h");
+        config.set("invite.code-expire-after", "7d");
+
+        PluginSettings settings = load();
+        assertEquals(90, settings.getMinPlayTimeSeconds());
+        assertEquals(7200, settings.getMaxPlayTimeSeconds());
+        assertEquals(7 * 86400, settings.getCodeExpireAfterSeconds());
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    public void invalidDurationFallsBackToDefault() {
+        config.set("invite.min-play-time", "ten minutes");
+        config.set("invite.max-play-time", "forever");
+
+        PluginSettings settings = load();
+        assertEquals(600, settings.getMinPlayTimeSeconds());
+        // 默认 -1 表示无限制
+        assertEquals(0, settings.getMaxPlayTimeSeconds());
+        assertEquals(2, warnings.size());
+        assertTrue(warnings.get(0).contains("invite.min-play-time"));
+    }
+
+    @Test
+    public void outOfRangeNumbersFallBackToDefault() {
+        config.set("invite.code-length", 2);
+        config.set("invite.max-uses-per-code", 0);
+        config.set("anti-cheat.max-entries", -5);
+        config.set("reward-dispatch.tick-budget-micros", 100_000);
+        config.set("database.code-filter.rebuild-interval-minutes", -1);
+
+        PluginSettings settings = load();
+        assertEquals(8, settings.getCodeLength());
+        assertEquals(1, settings.getMaxUsesPerCode());
+        assertEquals(50000, settings.getAntiCheatMaxEntries());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(500), settings.getRewardDispatchBudgetNanos());
+        assertEquals(60, settings.getCodeFilterRebuildMinutes());
+        assertEquals(5, warnings.size());
+    }
+
+    @Test
+    public void inRangeNumbersAreKept() {
+        config.set("invite.code-length", 12);
+        config.set("invite.create-cooldown-minutes", 10);
+        config.set("reward-dispatch.tick-budget-micros", 2000);
+        config.set("anti-cheat.snapshot-interval-minutes", 0);
+
+        PluginSettings settings = load();
+        assertEquals(12, settings.getCodeLength());
+        assertEquals(TimeUnit.MINUTES.toMillis(10), settings.getCreateCooldownMillis());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2), settings.getRewardDispatchBudgetNanos());
+        assertEquals(0, settings.getAntiCheatSnapshotMinutes());
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    public void negativeInviteesPerIpDisablesIpLimit() {
+        config.set("invite.max-invitees-per-ip", -1);
+        config.set("anti-cheat.subnet-limits.ipv4.24", 6);
+
+        PluginSettings settings = load();
+        assertFalse(settings.isIpLimitEnabled());
+        // 关闭后子网上限也不生效
+        for (int limit : settings.getSubnetLimits4()) {
+            assertEquals(0, limit);
+        }
+        for (int limit : settings.getSubnetLimits6()) {
+            assertEquals(0, limit);
+        }
+    }
+
+    @Test
+    public void subnetLimitsAreParsed() {
+        config.set("invite.max-invitees-per-ip", 2);
+        config.set("anti-cheat.subnet-limits.ipv4./24", 6);
+        config.set("anti-cheat.subnet-limits.ipv4.16", 20);
+        config.set("anti-cheat.subnet-limits.ipv6.64", 4);
+        config.set("anti-cheat.subnet-limits.ipv6.48", -3);
+
+        PluginSettings settings = load();
+        int[] limits4 = settings.getSubnetLimits4();
+        int[] limits6 = settings.getSubnetLimits6();
+        assertEquals(2, limits4[32]);
+        assertEquals(6, limits4[24]);
+        assertEquals(20, limits4[16]);
+        assertEquals(2, limits6[128]);
+        assertEquals(4, limits6[64]);
+        // 负数按 0（不限制）处理
+        assertEquals(0, limits6[48]);
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    public void invalidPrefixLengthsAreSkipped() {
+        config.set("anti-cheat.subnet-limits.ipv4.33", 5);
+        config.set("anti-cheat.subnet-limits.ipv4.abc", 5);
+        config.set("anti-cheat.subnet-limits.ipv4.24", 6);
+        config.set("anti-cheat.subnet-limits.ipv6.129", 5);
+
+        PluginSettings settings = load();
+        assertEquals(6, settings.getSubnetLimits4()[24]);
+        assertEquals(3, warnings.size());
+    }
+
+    @Test
+    public void rateLimitsUseLowerCaseNamesAndClampNegatives() {
+        config.set("rate-limit.commands.Submit.capacity", 3);
+        config.set("rate-limit.commands.Submit.refill-seconds", 20);
+        config.set("rate-limit.commands.create.capacity", -1);
+        config.set("rate-limit.commands.create.ip-capacity", 5);
+        config.set("rate-limit.commands.create.ip-refill-seconds", 60);
+
+        PluginSettings settings = load();
+        assertEquals(2, settings.getRateLimits().size());
+        PluginSettings.RateLimitBudget submit = settings.getRateLimits().get("submit");
+        assertEquals(3, submit.getCapacity());
+        assertEquals(20, submit.getRefillSeconds());
+        assertEquals(0, submit.getIpCapacity());
+        PluginSettings.RateLimitBudget create = settings.getRateLimits().get("create");
+        assertEquals(0, create.getCapacity());
+        assertEquals(5, create.getIpCapacity());
+        assertEquals(60, create.getIpRefillSeconds());
+    }
+
+    @Test
+    public void subnetLimitArraysAreCopies() {
+        PluginSettings settings = load();
+        settings.getSubnetLimits4()[32] = 100;
+
+        assertEquals(3, settings.getSubnetLimits4()[32]);
+    }
+
+    private PluginSettings load() {
+        return PluginSettings.load(config, logger);
+    }
+}
@@ -0,0 +1,76 @@
+package cn.popcraft.invitesystem.data;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageCursorTest {
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        PageCursor cursor = new PageCursor(3, false, "2024-05-01 12:30:45.123", 42);
+        PageCursor decoded = PageCursor.decode(cursor.encode());
+
+        assertNotNull(decoded);
+        assertEquals(3, decoded.getPage());
+        assertFalse(decoded.isBackward());
+        assertEquals("2024-05-01 12:30:45.123", decoded.getCreatedAt());
+        assertEquals(42, decoded.getId());
+    }
+
+    @Test
+    public void backwardCursorRoundTrip() {
+        PageCursor decoded = PageCursor.decode(new PageCursor(1, true, "1714566645123", 7).encode());
+
+        assertNotNull(decoded);
+        assertTrue(decoded.isBackward());
+        assertEquals(1, decoded.getPage());
+        assertEquals("1714566645123", decoded.getCreatedAt());
+        assertEquals(7, decoded.getId());
+    }
+
+    @Test
+    public void createdAtMayContainSeparator() {
+        // created_at 是最后一段，其中的分隔符原样保留
+        PageCursor decoded = PageCursor.decode(new PageCursor(2, false, "a|b", 1).encode());
+
+        assertNotNull(decoded);
+        assertEquals("a|b", decoded.getCreatedAt());
+    }
+
+    @Test
+    public void encodedTokenIsUrlSafe() {
+        String token = new PageCursor(99, true, "2024-05-01 12:30:45.123?>>", Integer.MAX_VALUE).encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void decodeRejectsTamperedTokens() {
+        // 不是合法的 Base64
+        assertNull(PageCursor.decode("not a cursor!"));
+        assertNull(PageCursor.decode(""));
+        // 方向标记不正确
+        assertNull(PageCursor.decode(token("X|1|5|2024-05-01")));
+        // 缺少字段
+        assertNull(PageCursor.decode(token("N|1|5")));
+        // 页码或 ID 不是数字
+        assertNull(PageCursor.decode(token("N|one|5|2024-05-01")));
+        assertNull(PageCursor.decode(token("N|1|5x|2024-05-01")));
+        // 页码超出范围
+        assertNull(PageCursor.decode(token("N|0|5|2024-05-01")));
+        assertNull(PageCursor.decode(token("P|-3|5|2024-05-01")));
+        assertNull(PageCursor.decode(token("N|99999999999|5|2024-05-01")));
+    }
+
+    private static String token(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,173 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.data.Invitation;
+import cn.popcraft.invitesystem.data.InvitationSummary;
+import cn.popcraft.invitesystem.data.InviteCode;
+import cn.popcraft.invitesystem.data.RewardJob;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InvitationDAOTest {
+
+    private static final UUID INVITER = UUID.randomUUID();
+
+    private TestDatabase db;
+
+    @Before
+    public void setUp() throws IOException {
+        db = new TestDatabase();
+        assertTrue(db.open("legacy"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        db.delete();
+    }
+
+    @Test
+    public void submitReservesUseAndWritesMarker() throws Exception {
+        createCode("ABC", 2, null);
+        UUID invitee = UUID.randomUUID();
+
+        assertEquals(InvitationDAO.SubmitResult.SUCCESS, submit(invitee, "ABC", true));
+        assertEquals(1, usedCount("ABC"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitees WHERE invitee_uuid = ?", invitee.toString()));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitations WHERE invitee_uuid = ?", invitee.toString()));
+
+        InvitationSummary summary = dao().getSummary(INVITER).join();
+        assertEquals(1, summary.getInviterTotal());
+        assertEquals(1, summary.getInviterUnclaimed());
+        InvitationSummary inviteeSummary = dao().getSummary(invitee).join();
+        assertEquals(1, inviteeSummary.getInviteeTotal());
+        assertEquals(1, inviteeSummary.getInviteeUnclaimed());
+    }
+
+    @Test
+    public void secondSubmitIsRejectedAndRolledBack() throws Exception {
+        createCode("ABC", 5, null);
+        UUID invitee = UUID.randomUUID();
+        submit(invitee, "ABC", true);
+
+        assertEquals(InvitationDAO.SubmitResult.ALREADY_SUBMITTED, submit(invitee, "ABC", true));
+        // 预留的使用次数随事务回滚
+        assertEquals(1, usedCount("ABC"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitations"));
+        assertEquals(1, dao().getSummary(INVITER).join().getInviterTotal());
+    }
+
+    @Test
+    public void repeatSubmitAllowedWhenNotFirstTimeOnly() throws Exception {
+        createCode("ABC", 5, null);
+        UUID invitee = UUID.randomUUID();
+
+        assertEquals(InvitationDAO.SubmitResult.SUCCESS, submit(invitee, "ABC", false));
+        assertEquals(InvitationDAO.SubmitResult.SUCCESS, submit(invitee, "ABC", false));
+        assertEquals(2, usedCount("ABC"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitees"));
+
+        // 之后开启限制时已有标记，仍然拒绝
+        assertEquals(InvitationDAO.SubmitResult.ALREADY_SUBMITTED, submit(invitee, "ABC", true));
+    }
+
+    @Test
+    public void exhaustedCodeIsUnavailable() throws Exception {
+        createCode("ONCE", 1, null);
+        assertEquals(InvitationDAO.SubmitResult.SUCCESS, submit(UUID.randomUUID(), "ONCE", true));
+
+        UUID late = UUID.randomUUID();
+        assertEquals(InvitationDAO.SubmitResult.CODE_UNAVAILABLE, submit(late, "ONCE", true));
+        assertEquals(1, usedCount("ONCE"));
+        // 没有留下标记，换一个邀请码仍可提交
+        assertEquals(0, db.queryLong("SELECT COUNT(*) FROM invitees WHERE invitee_uuid = ?", late.toString()));
+        createCode("OTHER", 1, null);
+        assertEquals(InvitationDAO.SubmitResult.SUCCESS, submit(late, "OTHER", true));
+    }
+
+    @Test
+    public void expiredOrUnknownCodeIsUnavailable() throws Exception {
+        createCode("OLD", 5, LocalDateTime.now().minusMinutes(1));
+
+        assertEquals(InvitationDAO.SubmitResult.CODE_UNAVAILABLE, submit(UUID.randomUUID(), "OLD", true));
+        assertEquals(InvitationDAO.SubmitResult.CODE_UNAVAILABLE, submit(UUID.randomUUID(), "MISSING", true));
+        assertEquals(0, usedCount("OLD"));
+        assertEquals(0, db.queryLong("SELECT COUNT(*) FROM invitations"));
+    }
+
+    @Test
+    public void claimAllClaimsOnceAndWritesJob() throws Exception {
+        createCode("ABC", 5, null);
+        submit(UUID.randomUUID(), "ABC", true);
+        submit(UUID.randomUUID(), "ABC", true);
+
+        RewardJob job = dao().claimAll(INVITER, true).join();
+        assertEquals(2, job.getCopies());
+        assertTrue(job.getId() > 0);
+        List<RewardJob> jobs = db.get().getPendingRewardDAO().getJobs(INVITER).join();
+        assertEquals(1, jobs.size());
+        assertEquals(job.getId(), jobs.get(0).getId());
+        assertEquals(2, jobs.get(0).getCopies());
+        assertEquals(0, dao().getSummary(INVITER).join().getInviterUnclaimed());
+
+        // 已领取的记录不会再次领取，也不写入任务
+        assertEquals(0, dao().claimAll(INVITER, true).join().getCopies());
+        assertEquals(1, db.get().getPendingRewardDAO().getJobs(INVITER).join().size());
+    }
+
+    @Test
+    public void claimAsInviteeLeavesInviterSideUnclaimed() throws Exception {
+        createCode("ABC", 5, null);
+        UUID invitee = UUID.randomUUID();
+        submit(invitee, "ABC", true);
+
+        assertEquals(1, dao().claimAll(invitee, false).join().getCopies());
+        assertEquals(0, dao().getSummary(invitee).join().getInviteeUnclaimed());
+        assertEquals(1, dao().getSummary(INVITER).join().getInviterUnclaimed());
+    }
+
+    @Test
+    public void compactLayoutSubmitAndClaim() throws Exception {
+        db.close();
+        assertTrue(db.open("compact"));
+        createCode("ABC", 1, null);
+        UUID invitee = UUID.randomUUID();
+
+        assertEquals(InvitationDAO.SubmitResult.SUCCESS, submit(invitee, "ABC", true));
+        assertEquals(InvitationDAO.SubmitResult.ALREADY_SUBMITTED, submit(invitee, "ABC", true));
+        assertEquals(InvitationDAO.SubmitResult.CODE_UNAVAILABLE, submit(UUID.randomUUID(), "ABC", true));
+        assertEquals(1, usedCount("ABC"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitees_v2"));
+        // 旧表不再写入
+        assertEquals(0, db.queryLong("SELECT COUNT(*) FROM invitations"));
+
+        assertEquals(1, dao().claimAll(INVITER, true).join().getCopies());
+        assertEquals(1, dao().getSummary(INVITER).join().getInviterTotal());
+        assertEquals(0, dao().getSummary(INVITER).join().getInviterUnclaimed());
+    }
+
+    private InvitationDAO dao() {
+        return db.get().getInvitationDAO();
+    }
+
+    private void createCode(String code, int maxUses, LocalDateTime expiresAt) {
+        assertEquals(InviteCodeDAO.CreateResult.CREATED, db.get().getInviteCodeDAO().createInviteCode(
+                new InviteCode(code, INVITER, LocalDateTime.now(), expiresAt, maxUses, 0)).join());
+    }
+
+    private InvitationDAO.SubmitResult submit(UUID invitee, String code, boolean firstTimeOnly) {
+        Invitation inv = new Invitation(0, invitee, INVITER, code, 600, false, false, LocalDateTime.now());
+        return dao().submitInvitation(inv, firstTimeOnly).join();
+    }
+
+    private int usedCount(String code) {
+        return db.get().getInviteCodeDAO().getInviteCode(code).join().getUsedCount();
+    }
+}
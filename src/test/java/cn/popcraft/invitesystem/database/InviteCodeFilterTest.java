@@ -0,0 +1,158 @@
+package cn.popcraft.invitesystem.database;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InviteCodeFilterTest {
+
+    private DatabaseManager dbManager;
+    private InviteCodeFilter filter;
+    // 数据库中的邀请码
+    private final List<String> stored = new ArrayList<>();
+    // 扫描邀请码时执行的操作（模拟重建期间的并发写入）
+    private Runnable duringScan = () -> { };
+
+    @Before
+    public void setUp() throws SQLException {
+        dbManager = mock(DatabaseManager.class);
+        when(dbManager.getStorageLayout()).thenReturn(StorageLayout.legacy(""));
+        // 后台任务在调用线程中同步执行
+        when(dbManager.supplyAsync(any(), any())).thenAnswer(inv ->
+                CompletableFuture.completedFuture(((Supplier<?>) inv.getArgument(0)).get()));
+
+        Connection conn = mock(Connection.class);
+        when(dbManager.getReadConnection()).thenReturn(conn);
+        when(conn.prepareStatement(anyString())).thenAnswer(inv -> {
+            String sql = inv.getArgument(0);
+            PreparedStatement stmt = mock(PreparedStatement.class);
+            ResultSet rs = sql.contains("COUNT(*)") ? countResult() : codeResult();
+            when(stmt.executeQuery()).thenReturn(rs);
+            return stmt;
+        });
+
+        filter = new InviteCodeFilter(dbManager, Logger.getLogger("InviteCodeFilterTest"), 10);
+    }
+
+    @Test
+    public void everythingMightExistBeforeFirstBuild() {
+        assertTrue(filter.mightExist("ANYCODE1"));
+        assertTrue(filter.mightExist("other"));
+    }
+
+    @Test
+    public void storedCodesAreFoundAfterRebuild() {
+        stored.addAll(Arrays.asList("AbC12345", "ZZZZ0000", "k9k9k9k9"));
+        filter.rebuildAsync().join();
+
+        for (String code : stored) {
+            assertTrue(filter.mightExist(code));
+        }
+        // MySQL 默认不区分大小写，任意大小写都不能被判定为不存在
+        assertTrue(filter.mightExist("abc12345"));
+        assertTrue(filter.mightExist("ABC12345"));
+    }
+
+    @Test
+    public void unknownCodesAreMostlyRejected() {
+        for (int i = 0; i < 200; i++) {
+            stored.add("STORED" + i);
+        }
+        filter.rebuildAsync().join();
+
+        int passed = 0;
+        for (int i = 0; i < 200; i++) {
+            if (filter.mightExist("MISSING" + i)) {
+                passed++;
+            }
+        }
+        assertTrue("too many false positives: " + passed, passed < 20);
+    }
+
+    @Test
+    public void codeAddedBeforeCommitSurvivesRebuild() {
+        // 邀请码先加入过滤器再写入数据库，重建扫描时写入可能还没有提交
+        stored.add("OLD00001");
+        filter.add("NEW00001");
+        filter.rebuildAsync().join();
+
+        assertTrue(filter.mightExist("OLD00001"));
+        assertTrue(filter.mightExist("NEW00001"));
+    }
+
+    @Test
+    public void codeAddedDuringScanSurvivesRebuild() {
+        stored.add("OLD00001");
+        duringScan = () -> filter.add("MIDSCAN1");
+        filter.rebuildAsync().join();
+
+        assertTrue(filter.mightExist("MIDSCAN1"));
+    }
+
+    @Test
+    public void codesAddedAfterBuildAreFound() {
+        filter.rebuildAsync().join();
+        assertFalse(filter.mightExist("LATER001"));
+
+        filter.add("LATER001");
+        assertTrue(filter.mightExist("LATER001"));
+        assertTrue(filter.mightExist("later001"));
+    }
+
+    @Test
+    public void failedRebuildKeepsRecentAddsForNextRebuild() throws SQLException {
+        filter.rebuildAsync().join();
+        filter.add("KEEPME01");
+
+        Connection working = dbManager.getReadConnection();
+        doThrow(new SQLException("connection refused")).when(dbManager).getReadConnection();
+        filter.rebuildAsync().join();
+        doReturn(working).when(dbManager).getReadConnection();
+        filter.rebuildAsync().join();
+
+        assertTrue(filter.mightExist("KEEPME01"));
+    }
+
+    private ResultSet countResult() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getLong("total")).thenReturn((long) stored.size());
+        return rs;
+    }
+
+    private ResultSet codeResult() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        Iterator<String> rows = new ArrayList<>(stored).iterator();
+        String[] current = new String[1];
+        when(rs.next()).thenAnswer(inv -> {
+            duringScan.run();
+            if (!rows.hasNext()) {
+                return false;
+            }
+            current[0] = rows.next();
+            return true;
+        });
+        when(rs.getString("code")).thenAnswer(inv -> current[0]);
+        return rs;
+    }
+}
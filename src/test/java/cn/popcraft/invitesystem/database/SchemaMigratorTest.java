@@ -0,0 +1,105 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.data.Invitation;
+import cn.popcraft.invitesystem.data.InviteCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaMigratorTest {
+
+    private static final UUID INVITER = UUID.randomUUID();
+
+    private TestDatabase db;
+
+    @Before
+    public void setUp() throws IOException {
+        db = new TestDatabase();
+        assertTrue(db.open("legacy"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        db.delete();
+    }
+
+    @Test
+    public void freshDatabaseAppliesWholeChain() throws Exception {
+        assertEquals(10, db.queryLong("SELECT COUNT(*) FROM schema_version"));
+        assertEquals(10, db.queryLong("SELECT MAX(version) FROM schema_version"));
+        // 各版本创建的表都可以查询
+        for (String table : new String[]{"invite_codes", "invitations", "player_first_join", "plugin_meta",
+                "invite_codes_v2", "invitations_v2", "player_first_join_v2", "invite_counters", "invitees",
+                "invitees_v2", "player_names", "player_names_v2", "pending_rewards", "pending_rewards_v2",
+                "reward_jobs", "reward_jobs_v2"}) {
+            assertEquals(table, 0, db.queryLong("SELECT COUNT(*) FROM " + table));
+        }
+    }
+
+    @Test
+    public void migrateAgainIsNoOp() throws Exception {
+        submitInvitation(UUID.randomUUID());
+
+        migrator().migrate();
+        migrator().migrate();
+        assertEquals(10, db.queryLong("SELECT COUNT(*) FROM schema_version"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitations"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitees"));
+    }
+
+    @Test
+    public void reopenKeepsVersions() throws Exception {
+        db.close();
+        assertTrue(db.open("legacy"));
+
+        assertEquals(10, db.queryLong("SELECT COUNT(*) FROM schema_version"));
+    }
+
+    @Test
+    public void inviteeBackfillFillsMissingMarkers() throws Exception {
+        UUID invitee = UUID.randomUUID();
+        submitInvitation(invitee);
+        // 模拟 v5 之前的数据：只有邀请记录，没有被邀请人标记
+        db.execute("DELETE FROM invitees");
+        db.execute("DELETE FROM schema_version WHERE version >= 5");
+
+        migrator().migrate();
+        assertEquals(10, db.queryLong("SELECT COUNT(*) FROM schema_version"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitees WHERE invitee_uuid = ?", invitee.toString()));
+    }
+
+    @Test
+    public void inviteeBackfillSkipsExistingMarkers() throws Exception {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        submitInvitation(first);
+        submitInvitation(second);
+        // 中途失败后重新执行 v5：一部分标记已经存在
+        db.execute("DELETE FROM invitees WHERE invitee_uuid = ?", second.toString());
+        db.execute("DELETE FROM schema_version WHERE version >= 5");
+
+        migrator().migrate();
+        assertEquals(10, db.queryLong("SELECT COUNT(*) FROM schema_version"));
+        assertEquals(2, db.queryLong("SELECT COUNT(*) FROM invitees"));
+    }
+
+    private SchemaMigrator migrator() {
+        return new SchemaMigrator(db.get(), Logger.getLogger("SchemaMigratorTest"));
+    }
+
+    private void submitInvitation(UUID invitee) {
+        String code = invitee.toString().substring(0, 8);
+        db.get().getInviteCodeDAO().createInviteCode(
+                new InviteCode(code, INVITER, LocalDateTime.now(), null, 1, 0)).join();
+        assertEquals(InvitationDAO.SubmitResult.SUCCESS, db.get().getInvitationDAO().submitInvitation(
+                new Invitation(0, invitee, INVITER, code, 600, false, false, LocalDateTime.now()), true).join());
+    }
+}
@@ -0,0 +1,130 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.data.Invitation;
+import cn.popcraft.invitesystem.data.InvitationSummary;
+import cn.popcraft.invitesystem.data.InviteCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StorageLayoutMigratorTest {
+
+    private static final UUID INVITER = UUID.randomUUID();
+
+    private TestDatabase db;
+
+    @Before
+    public void setUp() throws IOException {
+        db = new TestDatabase();
+        assertTrue(db.open("legacy"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        db.delete();
+    }
+
+    @Test
+    public void legacyDataIsCopiedToCompact() throws Exception {
+        UUID invitee = UUID.randomUUID();
+        createCode("ABC", 3);
+        submit(invitee, "ABC");
+        assertFalse(migrator().isCopyDone());
+
+        db.close();
+        assertTrue(db.open("compact"));
+        assertTrue(migrator().isCopyDone());
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invite_codes_v2"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitations_v2"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invitees_v2"));
+
+        // 复制后的数据通过紧凑结构读取
+        InviteCode code = db.get().getInviteCodeDAO().getInviteCode("ABC").join();
+        assertEquals(INVITER, code.getCreatorUuid());
+        assertEquals(1, code.getUsedCount());
+        InvitationSummary summary = db.get().getInvitationDAO().getSummary(INVITER).join();
+        assertEquals(1, summary.getInviterTotal());
+        assertEquals(1, db.get().getInvitationDAO().getSummary(invitee).join().getInviteeTotal());
+        // 复制过来的标记仍然拒绝重复提交
+        assertEquals(InvitationDAO.SubmitResult.ALREADY_SUBMITTED, submit(invitee, "ABC"));
+    }
+
+    @Test
+    public void copyIsNotRepeated() throws Exception {
+        createCode("ABC", 3);
+        db.close();
+        assertTrue(db.open("compact"));
+        createCode("NEW", 3);
+
+        db.close();
+        assertTrue(db.open("compact"));
+        assertEquals(2, db.queryLong("SELECT COUNT(*) FROM invite_codes_v2"));
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invite_codes"));
+    }
+
+    @Test
+    public void partialCopyIsDiscarded() throws Exception {
+        createCode("ABC", 3);
+        // 模拟中断的复制：已复制一部分并记录了进度
+        assertTrue(migrator().copyLegacyData());
+        db.execute("DELETE FROM plugin_meta WHERE meta_key = 'compact_copy_done'");
+
+        assertTrue(migrator().discardPartialCopy());
+        assertEquals(0, db.queryLong("SELECT COUNT(*) FROM invite_codes_v2"));
+        assertEquals(0, db.queryLong("SELECT COUNT(*) FROM plugin_meta WHERE meta_key LIKE 'compact_copy_%'"));
+        // 旧表保留
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invite_codes"));
+    }
+
+    @Test
+    public void legacyStartDiscardsPartialCopyAndCopiesAgainLater() throws Exception {
+        createCode("ABC", 3);
+        assertTrue(migrator().copyLegacyData());
+        db.execute("DELETE FROM plugin_meta WHERE meta_key = 'compact_copy_done'");
+
+        db.close();
+        assertTrue(db.open("legacy"));
+        assertEquals(0, db.queryLong("SELECT COUNT(*) FROM invite_codes_v2"));
+        // 继续使用旧结构期间写入的数据在下次切换时一并复制
+        createCode("LATER", 3);
+
+        db.close();
+        assertTrue(db.open("compact"));
+        assertEquals(2, db.queryLong("SELECT COUNT(*) FROM invite_codes_v2"));
+    }
+
+    @Test
+    public void legacyRefusedAfterCopyFinished() throws Exception {
+        createCode("ABC", 3);
+        db.close();
+        assertTrue(db.open("compact"));
+
+        db.close();
+        assertFalse(db.open("legacy"));
+        // 紧凑结构中的数据保持不变
+        assertEquals(1, db.queryLong("SELECT COUNT(*) FROM invite_codes_v2"));
+    }
+
+    private StorageLayoutMigrator migrator() {
+        return new StorageLayoutMigrator(db.get(), Logger.getLogger("StorageLayoutMigratorTest"));
+    }
+
+    private void createCode(String code, int maxUses) {
+        assertEquals(InviteCodeDAO.CreateResult.CREATED, db.get().getInviteCodeDAO().createInviteCode(
+                new InviteCode(code, INVITER, LocalDateTime.now(), null, maxUses, 0)).join());
+    }
+
+    private InvitationDAO.SubmitResult submit(UUID invitee, String code) {
+        return db.get().getInvitationDAO().submitInvitation(
+                new Invitation(0, invitee, INVITER, code, 600, false, false, LocalDateTime.now()), true).join();
+    }
+}
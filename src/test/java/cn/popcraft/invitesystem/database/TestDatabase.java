@@ -0,0 +1,95 @@
+package cn.popcraft.invitesystem.database;
+
+import cn.popcraft.invitesystem.InviteSystem;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 测试用的临时 SQLite 数据库（插件数据目录中的 invitesystem.db）
+ */
+class TestDatabase {
+
+    private final File dataFolder;
+    private DatabaseManager dbManager;
+
+    TestDatabase() throws IOException {
+        this.dataFolder = Files.createTempDirectory("invitesystem-test").toFile();
+    }
+
+    /**
+     * 按指定存储结构打开数据库（迁移、复制和初始化与插件启动时相同）
+     * @return 初始化是否成功
+     */
+    boolean open(String storageLayout) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        config.set("database.storage-layout", storageLayout);
+        config.set("database.first-join-index.enabled", false);
+        config.set("database.first-join-batch.enabled", false);
+        config.set("database.code-filter.enabled", false);
+
+        InviteSystem plugin = mock(InviteSystem.class);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("TestDatabase"));
+
+        dbManager = new DatabaseManager(plugin);
+        return dbManager.init();
+    }
+
+    DatabaseManager get() {
+        return dbManager;
+    }
+
+    void close() {
+        if (dbManager != null) {
+            dbManager.close();
+            dbManager = null;
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        try (Stream<Path> files = Files.walk(dataFolder.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    void execute(String sql, Object... params) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, params);
+            stmt.executeUpdate();
+        }
+    }
+
+    long queryLong(String sql, Object... params) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package cn.popcraft.invitesystem.reward;
+
+import cn.popcraft.invitesystem.InviteSystem;
+import cn.popcraft.invitesystem.config.PluginSettings;
+import cn.popcraft.invitesystem.data.RewardJob;
+import cn.popcraft.invitesystem.database.DatabaseManager;
+import cn.popcraft.invitesystem.database.PendingRewardDAO;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RewardDispatcherTest {
+
+    private static final UUID PLAYER_ID = UUID.randomUUID();
+
+    private PluginSettings settings;
+    private Server server;
+    private Player player;
+    private RewardManager rewardManager;
+    private PendingRewardDAO dao;
+    private RewardDispatcher dispatcher;
+    private final List<RewardTemplate> rewards = Arrays.asList(
+            new RewardTemplate(null, null, "a"), new RewardTemplate(null, null, "b"));
+
+    @Before
+    public void setUp() {
+        InviteSystem plugin = mock(InviteSystem.class);
+        settings = mock(PluginSettings.class);
+        server = mock(Server.class);
+        player = mock(Player.class);
+        rewardManager = mock(RewardManager.class);
+        DatabaseManager dbManager = mock(DatabaseManager.class);
+        dao = mock(PendingRewardDAO.class);
+
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("RewardDispatcherTest"));
+        when(plugin.getSettings()).thenReturn(settings);
+        when(plugin.getServer()).thenReturn(server);
+        when(plugin.getRewardManager()).thenReturn(rewardManager);
+        when(plugin.getDatabaseManager()).thenReturn(dbManager);
+        when(dbManager.getPendingRewardDAO()).thenReturn(dao);
+        when(dao.saveJobProgress(anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(1));
+        when(dao.completeJob(anyLong())).thenReturn(CompletableFuture.completedFuture(1));
+        when(rewardManager.getRewards(true)).thenReturn(rewards);
+        when(server.getPlayer(PLAYER_ID)).thenReturn(player);
+        when(player.isOnline()).thenReturn(true);
+
+        dispatcher = new RewardDispatcher(plugin);
+    }
+
+    @Test
+    public void zeroBudgetGrantsOnePerTickAndCarriesOver() {
+        budget(0);
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 2, 0), "done");
+        assertEquals(1, dispatcher.getQueuedJobs());
+        assertEquals(4, dispatcher.getPendingGrants());
+
+        dispatcher.run();
+        // 每 tick 至少发放一项，剩余的留到下一个 tick
+        verify(rewardManager, times(1)).grantReward(eq(player), any());
+        assertEquals(3, dispatcher.getPendingGrants());
+        assertEquals(1, dispatcher.getCarriedOverTicks());
+        // 发放到一半的队首任务保存进度
+        verify(dao).saveJobProgress(1L, 1L);
+
+        dispatcher.run();
+        dispatcher.run();
+        verify(dao).saveJobProgress(1L, 3L);
+        dispatcher.run();
+
+        verify(rewardManager, times(4)).grantReward(eq(player), any());
+        assertEquals(4, dispatcher.getGranted());
+        assertEquals(3, dispatcher.getCarriedOverTicks());
+        assertEquals(0, dispatcher.getQueuedJobs());
+        assertEquals(0, dispatcher.getPendingGrants());
+        verify(dao).completeJob(1L);
+        verify(player).sendMessage("done");
+
+        // 队列为空时不再发放
+        dispatcher.run();
+        assertEquals(4, dispatcher.getGranted());
+    }
+
+    @Test
+    public void largeBudgetDrainsQueueInOneTick() {
+        budget(Long.MAX_VALUE);
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 2, 0), null);
+        dispatcher.submit(new RewardJob(2, PLAYER_ID, true, 1, 0), null);
+
+        dispatcher.run();
+        verify(rewardManager, times(6)).grantReward(eq(player), any());
+        assertEquals(0, dispatcher.getCarriedOverTicks());
+        assertEquals(0, dispatcher.getQueuedJobs());
+        verify(dao).completeJob(1L);
+        verify(dao).completeJob(2L);
+        // 当前 tick 内全部发放完，不需要保存进度
+        verify(dao, never()).saveJobProgress(anyLong(), anyLong());
+        verify(player, never()).sendMessage(anyString());
+    }
+
+    @Test
+    public void offlinePlayerJobIsSavedAndDropped() {
+        budget(Long.MAX_VALUE);
+        // 发放第一项后玩家离线
+        when(server.getPlayer(PLAYER_ID)).thenReturn(player, (Player) null);
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 2, 0), "done");
+
+        dispatcher.run();
+        verify(rewardManager, times(1)).grantReward(eq(player), any());
+        verify(dao).saveJobProgress(1L, 1L);
+        verify(dao, never()).completeJob(anyLong());
+        assertEquals(1, dispatcher.getSavedJobs());
+        assertEquals(0, dispatcher.getQueuedJobs());
+        assertEquals(0, dispatcher.getPendingGrants());
+
+        // 移出队列后同一任务可以在下次进服时重新提交
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 2, 1), "done");
+        assertEquals(1, dispatcher.getQueuedJobs());
+        assertEquals(3, dispatcher.getPendingGrants());
+    }
+
+    @Test
+    public void duplicateSubmitIsIgnored() {
+        budget(Long.MAX_VALUE);
+        RewardJob job = new RewardJob(1, PLAYER_ID, true, 1, 0);
+        dispatcher.submit(job, null);
+        dispatcher.submit(job, null);
+
+        assertEquals(1, dispatcher.getQueuedJobs());
+        assertEquals(2, dispatcher.getPendingGrants());
+        dispatcher.run();
+        verify(rewardManager, times(2)).grantReward(eq(player), any());
+    }
+
+    @Test
+    public void aggregateGrantsWholeJobAtOnce() {
+        budget(0);
+        when(settings.isAggregateRewards()).thenReturn(true);
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 3, 0), "done");
+        // 合并发放时整个任务只有一项
+        assertEquals(1, dispatcher.getPendingGrants());
+
+        dispatcher.run();
+        verify(rewardManager).grantAggregated(player, rewards, 3);
+        verify(rewardManager, never()).grantReward(any(), any());
+        assertEquals(0, dispatcher.getCarriedOverTicks());
+        verify(dao).completeJob(1L);
+        verify(player).sendMessage("done");
+    }
+
+    @Test
+    public void resumedJobIsNotAggregated() {
+        budget(Long.MAX_VALUE);
+        when(settings.isAggregateRewards()).thenReturn(true);
+        // 上次逐项发放到第 3 项时中断
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 2, 3), null);
+        assertEquals(1, dispatcher.getPendingGrants());
+
+        dispatcher.run();
+        verify(rewardManager, never()).grantAggregated(any(), any(), anyInt());
+        verify(rewardManager).grantReward(player, rewards.get(1));
+        verify(dao).completeJob(1L);
+    }
+
+    @Test
+    public void flushIgnoresBudget() {
+        budget(0);
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 3, 0), null);
+
+        dispatcher.flush();
+        verify(rewardManager, times(6)).grantReward(eq(player), any());
+        assertEquals(0, dispatcher.getQueuedJobs());
+        verify(dao).completeJob(1L);
+    }
+
+    @Test
+    public void completedJobReadBeforeDeleteIsNotGrantedAgain() {
+        budget(Long.MAX_VALUE);
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 1, 0), null);
+        dispatcher.run();
+        verify(dao).completeJob(1L);
+
+        // 进服补发时在删除提交之前读到的任务
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 1, 0), null);
+        assertEquals(0, dispatcher.getQueuedJobs());
+        dispatcher.run();
+        verify(rewardManager, times(2)).grantReward(eq(player), any());
+    }
+
+    @Test
+    public void failedDeleteMarksJobGrantedAndRetries() {
+        budget(Long.MAX_VALUE);
+        // 写入失败时 WriteBatcher 返回 0
+        when(dao.completeJob(1L)).thenReturn(CompletableFuture.completedFuture(0), CompletableFuture.completedFuture(1));
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 1, 0), null);
+        dispatcher.run();
+
+        verify(dao).saveJobProgress(1L, Long.MAX_VALUE);
+        // 删除成功之前任务不能再次提交
+        dispatcher.submit(new RewardJob(1, PLAYER_ID, true, 1, 0), null);
+        assertEquals(0, dispatcher.getQueuedJobs());
+
+        dispatcher.flush();
+        verify(dao, times(2)).completeJob(1L);
+        verify(rewardManager, times(2)).grantReward(eq(player), any());
+    }
+
+    @Test
+    public void jobMarkedGrantedIsOnlyDeleted() {
+        budget(Long.MAX_VALUE);
+        dispatcher.submit(new RewardJob(5, PLAYER_ID, true, 2, Long.MAX_VALUE), "done");
+
+        assertEquals(0, dispatcher.getQueuedJobs());
+        assertEquals(0, dispatcher.getPendingGrants());
+        verify(dao).completeJob(5L);
+        dispatcher.run();
+        verify(rewardManager, never()).grantReward(any(), any());
+        verify(player, never()).sendMessage(anyString());
+    }
+
+    private void budget(long nanos) {
+        when(settings.getRewardDispatchBudgetNanos()).thenReturn(nanos);
+    }
+}
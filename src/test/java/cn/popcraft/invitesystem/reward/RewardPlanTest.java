@@ -0,0 +1,116 @@
+package cn.popcraft.invitesystem.reward;
+
+import org.bukkit.inventory.ItemStack;
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RewardPlanTest {
+
+    // 物品种类，isSimilar 按种类比较（真实的 isSimilar 需要服务端的 ItemFactory）
+    private final Map<ItemStack, String> kinds = new IdentityHashMap<>();
+
+    @Test
+    public void emptyPlan() {
+        RewardPlan plan = new RewardPlan();
+        assertTrue(plan.isEmpty());
+
+        plan.addMoney(0);
+        plan.addPoints(0);
+        plan.addItem(item("diamond", 0), 5);
+        assertTrue(plan.isEmpty());
+    }
+
+    @Test
+    public void moneyAndPointsAreSummed() {
+        RewardPlan plan = new RewardPlan();
+        for (int i = 0; i < 3; i++) {
+            plan.addMoney(12.5);
+            plan.addPoints(100);
+        }
+
+        assertEquals(37.5, plan.getMoney(), 1e-9);
+        assertEquals(300, plan.getPoints());
+        assertFalse(plan.isEmpty());
+    }
+
+    @Test
+    public void pointsBeyondIntRange() {
+        RewardPlan plan = new RewardPlan();
+        plan.addPoints(Integer.MAX_VALUE);
+        plan.addPoints(Integer.MAX_VALUE);
+
+        assertEquals(2L * Integer.MAX_VALUE, plan.getPoints());
+    }
+
+    @Test
+    public void similarItemsAreMerged() {
+        RewardPlan plan = new RewardPlan();
+        plan.addItem(item("diamond", 3), 1);
+        plan.addItem(item("diamond", 2), 1);
+
+        assertEquals(1, plan.getItems().size());
+        RewardPlan.PlanItem merged = plan.getItems().get(0);
+        assertEquals(5, merged.getAmount());
+        assertEquals("diamond", kinds.get(merged.getPrototype()));
+        // 原型数量为 1，发放时再按总数量拆分
+        verify(merged.getPrototype()).setAmount(1);
+    }
+
+    @Test
+    public void differentItemsAreKeptApart() {
+        RewardPlan plan = new RewardPlan();
+        plan.addItem(item("diamond", 1), 1);
+        plan.addItem(item("emerald", 4), 1);
+        plan.addItem(item("diamond", 2), 1);
+
+        assertEquals(2, plan.getItems().size());
+        assertEquals("diamond", kinds.get(plan.getItems().get(0).getPrototype()));
+        assertEquals(3, plan.getItems().get(0).getAmount());
+        assertEquals("emerald", kinds.get(plan.getItems().get(1).getPrototype()));
+        assertEquals(4, plan.getItems().get(1).getAmount());
+    }
+
+    @Test
+    public void copiesMultiplyAmount() {
+        RewardPlan plan = new RewardPlan();
+        plan.addItem(item("diamond", 64), 100);
+        plan.addItem(item("diamond", 1), 36);
+
+        assertEquals(1, plan.getItems().size());
+        assertEquals(6436, plan.getItems().get(0).getAmount());
+    }
+
+    @Test
+    public void zeroCopiesAreIgnored() {
+        RewardPlan plan = new RewardPlan();
+        plan.addItem(item("diamond", 5), 0);
+
+        assertTrue(plan.getItems().isEmpty());
+        assertTrue(plan.isEmpty());
+    }
+
+    private ItemStack item(String kind, int amount) {
+        ItemStack item = stack(kind);
+        when(item.getAmount()).thenReturn(amount);
+        ItemStack prototype = stack(kind);
+        when(item.clone()).thenReturn(prototype);
+        return item;
+    }
+
+    private ItemStack stack(String kind) {
+        ItemStack stack = mock(ItemStack.class);
+        kinds.put(stack, kind);
+        when(stack.isSimilar(any())).thenAnswer(inv -> kind.equals(kinds.get(inv.<ItemStack>getArgument(0))));
+        return stack;
+    }
+}
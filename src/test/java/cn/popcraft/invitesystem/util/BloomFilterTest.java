@@ -0,0 +1,107 @@
+package cn.popcraft.invitesystem.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void addedValuesAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(10_000, BloomFilter.bitsPerElement(0.01));
+        List<String> codes = randomCodes(10_000, 1);
+        codes.forEach(filter::add);
+
+        for (String code : codes) {
+            assertTrue("false negative for " + code, filter.mightContain(code));
+        }
+        assertEquals(10_000, filter.getInsertions());
+    }
+
+    @Test
+    public void noFalseNegativesWhenOverfilled() {
+        // 超出预计数量时误判率上升，但不会漏判
+        BloomFilter filter = new BloomFilter(100, BloomFilter.bitsPerElement(0.01));
+        List<String> codes = randomCodes(5_000, 2);
+        codes.forEach(filter::add);
+
+        for (String code : codes) {
+            assertTrue("false negative for " + code, filter.mightContain(code));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearTarget() {
+        BloomFilter filter = new BloomFilter(10_000, BloomFilter.bitsPerElement(0.01));
+        randomCodes(10_000, 3).forEach(filter::add);
+
+        int falsePositives = 0;
+        for (String code : randomCodes(10_000, 4)) {
+            if (filter.mightContain("absent-" + code)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positive rate too high: " + falsePositives, falsePositives < 300);
+        assertTrue(filter.getEstimatedFalsePositiveRate() < 0.03);
+    }
+
+    @Test
+    public void concurrentAddsAreAllVisible() throws InterruptedException {
+        BloomFilter filter = new BloomFilter(40_000, BloomFilter.bitsPerElement(0.01));
+        List<List<String>> batches = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            List<String> batch = randomCodes(10_000, 10 + t);
+            batches.add(batch);
+            threads.add(new Thread(() -> batch.forEach(filter::add)));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (List<String> batch : batches) {
+            for (String code : batch) {
+                assertTrue("false negative for " + code, filter.mightContain(code));
+            }
+        }
+        assertEquals(40_000, filter.getInsertions());
+    }
+
+    @Test
+    public void bitsPerElementMatchesFormula() {
+        assertEquals(9.585, BloomFilter.bitsPerElement(0.01), 0.001);
+        assertEquals(14.378, BloomFilter.bitsPerElement(0.001), 0.001);
+        // 超出范围的误判率按边界处理
+        assertEquals(BloomFilter.bitsPerElement(0.5), BloomFilter.bitsPerElement(0.9), 0.0);
+    }
+
+    @Test
+    public void sizesFromExpectedInsertions() {
+        BloomFilter filter = new BloomFilter(1_000, 10);
+
+        assertTrue(filter.getBitCount() >= 10_000);
+        assertEquals(0, filter.getBitCount() % 64);
+        assertEquals(7, filter.getHashCount());
+        assertEquals(0.0, filter.getFillRatio(), 0.0);
+    }
+
+    private static List<String> randomCodes(int count, long seed) {
+        Random random = new Random(seed);
+        String alphabet = PermutedCodeGenerator.BASE62;
+        List<String> codes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            char[] chars = new char[8];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            codes.add(new String(chars));
+        }
+        return codes;
+    }
+}
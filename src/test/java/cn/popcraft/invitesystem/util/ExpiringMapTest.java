@@ -0,0 +1,149 @@
+package cn.popcraft.invitesystem.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiringMapTest {
+
+    @Test
+    public void returnsValueBeforeExpiry() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(10);
+        map.put("a", "1", System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+        assertEquals("1", map.get("a"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void getReturnsNullAfterExpiry() throws InterruptedException {
+        ExpiringMap<String, String> map = new ExpiringMap<>(10);
+        map.put("a", "1", System.currentTimeMillis() + 50);
+
+        Thread.sleep(100);
+        assertNull(map.get("a"));
+        assertEquals(0, map.size());
+        assertEquals(1, map.getExpirations());
+    }
+
+    @Test
+    public void alreadyExpiredPutIsIgnored() {
+        ExpiringMap<String, String> map = new ExpiringMap<>(10);
+        map.put("a", "1", System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        map.put("a", "2", System.currentTimeMillis() - 1);
+
+        // 过期的写入等同于删除
+        assertNull(map.get("a"));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void sweepRemovesExpiredEntriesOnly() throws InterruptedException {
+        ExpiringMap<String, String> map = new ExpiringMap<>(10);
+        long now = System.currentTimeMillis();
+        map.put("short", "1", now + 50);
+        map.put("long", "2", now + TimeUnit.HOURS.toMillis(1));
+
+        Thread.sleep(100);
+        assertEquals(1, map.sweep());
+        assertEquals(1, map.size());
+        assertEquals("2", map.get("long"));
+        // 再次清理不会重复计数
+        assertEquals(0, map.sweep());
+    }
+
+    @Test
+    public void sweepKeepsEntriesMovedToLaterExpiry() throws InterruptedException {
+        ExpiringMap<String, String> map = new ExpiringMap<>(10);
+        map.put("a", "1", System.currentTimeMillis() + 50);
+        map.put("a", "2", System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+        Thread.sleep(100);
+        assertEquals(0, map.sweep());
+        assertEquals("2", map.get("a"));
+    }
+
+    @Test
+    public void computeSeesOnlyLiveValues() throws InterruptedException {
+        ExpiringMap<String, Integer> map = new ExpiringMap<>(10);
+        long expiresAt = System.currentTimeMillis() + 50;
+        map.put("a", 5, expiresAt);
+
+        Integer updated = map.compute("a", (k, v) -> v == null ? 1 : v + 1, v -> System.currentTimeMillis() + 60_000);
+        assertEquals(Integer.valueOf(6), updated);
+
+        map.put("b", 5, System.currentTimeMillis() + 50);
+        Thread.sleep(100);
+        // 已过期的值按不存在处理
+        updated = map.compute("b", (k, v) -> v == null ? 1 : v + 1, v -> System.currentTimeMillis() + 60_000);
+        assertEquals(Integer.valueOf(1), updated);
+
+        // 返回 null 表示删除
+        assertNull(map.compute("a", (k, v) -> null, v -> 0));
+        assertNull(map.get("a"));
+    }
+
+    @Test
+    public void evictsEarliestExpiringEntriesWhenFull() {
+        ExpiringMap<Integer, String> map = new ExpiringMap<>(3);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            // 越晚放入的条目越早过期
+            map.put(i, "v" + i, now + TimeUnit.MINUTES.toMillis(50 - i * 10));
+        }
+
+        assertEquals(3, map.size());
+        assertEquals(2, map.getEvictions());
+        assertEquals("v0", map.get(0));
+        assertEquals("v1", map.get(1));
+        assertEquals("v2", map.get(2));
+    }
+
+    @Test
+    public void shrinkingMaxSizeEvictsImmediately() {
+        ExpiringMap<Integer, String> map = new ExpiringMap<>(10);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            map.put(i, "v" + i, now + TimeUnit.MINUTES.toMillis(10 + i));
+        }
+
+        map.setMaxSize(4);
+        assertEquals(4, map.getMaxSize());
+        assertEquals(4, map.size());
+        assertEquals("v9", map.get(9));
+    }
+
+    @Test
+    public void entriesBeyondOneDayAreKept() throws InterruptedException {
+        // 时间轮一圈一天，更晚过期的条目在清理时不能被提前移除
+        ExpiringMap<String, String> map = new ExpiringMap<>(10);
+        map.put("far", "1", System.currentTimeMillis() + TimeUnit.DAYS.toMillis(3));
+
+        Thread.sleep(20);
+        assertEquals(0, map.sweep());
+        assertEquals("1", map.get("far"));
+    }
+
+    @Test
+    public void forEachVisitsLiveEntriesWithExpiry() throws IOException, InterruptedException {
+        ExpiringMap<String, String> map = new ExpiringMap<>(10);
+        long expiresAt = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        map.put("live", "1", expiresAt);
+        map.put("dead", "2", System.currentTimeMillis() + 50);
+        Thread.sleep(100);
+
+        Map<String, Long> visited = new HashMap<>();
+        map.forEach((k, v, at) -> visited.put(k, at));
+
+        assertEquals(1, visited.size());
+        assertTrue(visited.containsKey("live"));
+        assertEquals(Long.valueOf(expiresAt), visited.get("live"));
+    }
+}
@@ -0,0 +1,182 @@
+package cn.popcraft.invitesystem.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IpPrefixTrieTest {
+
+    private static final long SINCE = 0;
+
+    @Test
+    public void ipv4AddressesMapIntoV6Space() throws UnknownHostException {
+        assertArrayEquals(new long[]{0L, 0x0000FFFF01020304L}, bits("1.2.3.4"));
+        assertArrayEquals(new long[]{0x20010DB800000000L, 1L}, bits("2001:db8::1"));
+    }
+
+    @Test
+    public void ipv4SingleAddressLimit() throws UnknownHostException {
+        IpPrefixTrie trie = trie(limits(32, 2), new int[129]);
+
+        assertTrue(record(trie, "1.2.3.4", 1));
+        assertTrue(record(trie, "1.2.3.4", 2));
+        assertFalse(record(trie, "1.2.3.4", 3));
+        // 同一网段的其他地址不受单地址上限影响
+        assertTrue(record(trie, "1.2.3.5", 4));
+    }
+
+    @Test
+    public void ipv4SubnetLimitCountsWholePrefix() throws UnknownHostException {
+        int[] limits4 = limits(32, 2);
+        limits4[24] = 3;
+        IpPrefixTrie trie = trie(limits4, new int[129]);
+
+        assertTrue(record(trie, "10.0.0.1", 1));
+        assertTrue(record(trie, "10.0.0.2", 2));
+        assertTrue(record(trie, "10.0.0.3", 3));
+        // /24 已有 3 次邀请
+        assertFalse(record(trie, "10.0.0.4", 4));
+        assertFalse(trie.isAllowed(bits("10.0.0.200")[0], bits("10.0.0.200")[1], SINCE));
+        // 相邻的 /24 不受影响
+        assertTrue(record(trie, "10.0.1.1", 5));
+    }
+
+    @Test
+    public void ipv6PrefixLimits() throws UnknownHostException {
+        int[] limits6 = limits(128, 1);
+        limits6[64] = 2;
+        IpPrefixTrie trie = trie(new int[33], limits6);
+
+        assertTrue(record(trie, "2001:db8::1", 1));
+        assertFalse(record(trie, "2001:db8::1", 2));
+        assertTrue(record(trie, "2001:db8::2", 3));
+        // 同一 /64 已有 2 次邀请
+        assertFalse(record(trie, "2001:db8::ffff:1", 4));
+        // 其他 /64
+        assertTrue(record(trie, "2001:db8:0:1::1", 5));
+    }
+
+    @Test
+    public void ipv4LimitsDoNotApplyToIpv6() throws UnknownHostException {
+        IpPrefixTrie trie = trie(limits(24, 1), new int[129]);
+
+        assertTrue(record(trie, "192.168.1.1", 1));
+        assertFalse(record(trie, "192.168.1.2", 2));
+        // 没有配置 IPv6 上限时不限制
+        for (int i = 0; i < 5; i++) {
+            assertTrue(record(trie, "2001:db8::1", 10 + i));
+        }
+    }
+
+    @Test
+    public void countsOnlyInvitesInsideWindow() throws UnknownHostException {
+        IpPrefixTrie trie = trie(limits(32, 1), new int[129]);
+        long[] addr = bits("1.2.3.4");
+        trie.record(addr[0], addr[1], 1_000, SINCE);
+
+        assertFalse(trie.isAllowed(addr[0], addr[1], 500));
+        // 冷却窗口从 2000 开始，1000 的邀请不再计数
+        assertTrue(trie.isAllowed(addr[0], addr[1], 2_000));
+        assertTrue(trie.tryRecord(addr[0], addr[1], 3_000, 2_000));
+    }
+
+    @Test
+    public void removeReleasesReservedSlot() throws UnknownHostException {
+        int[] limits4 = limits(32, 1);
+        limits4[24] = 1;
+        IpPrefixTrie trie = trie(limits4, new int[129]);
+        long[] addr = bits("1.2.3.4");
+
+        assertTrue(trie.tryRecord(addr[0], addr[1], 100, SINCE));
+        assertFalse(trie.isAllowed(addr[0], addr[1], SINCE));
+
+        trie.remove(addr[0], addr[1], 100);
+        assertTrue(trie.isAllowed(addr[0], addr[1], SINCE));
+        assertTrue(trie.isAllowed(bits("1.2.3.9")[0], bits("1.2.3.9")[1], SINCE));
+    }
+
+    @Test
+    public void sweepDropsExpiredPrefixes() throws UnknownHostException {
+        int[] limits4 = limits(32, 5);
+        limits4[24] = 5;
+        IpPrefixTrie trie = trie(limits4, new int[129]);
+        record(trie, "1.1.1.1", 100);
+        record(trie, "2.2.2.2", 100);
+        record(trie, "3.3.3.3", 5_000);
+
+        // 每个地址在 /24 和 /32 上各有一个计数
+        assertEquals(6, trie.size());
+        assertEquals(4, trie.sweep(1_000));
+        assertEquals(2, trie.size());
+        assertEquals(4, trie.getExpirations());
+        assertEquals(0, trie.sweep(1_000));
+    }
+
+    @Test
+    public void evictsOldestPrefixesBeyondMaxEntries() throws UnknownHostException {
+        IpPrefixTrie trie = new IpPrefixTrie(10);
+        trie.setLimits(limits(32, 1), new int[129]);
+        for (int i = 1; i <= 20; i++) {
+            assertTrue(record(trie, "10.0.0." + i, i));
+        }
+
+        assertTrue(trie.size() <= 10);
+        assertTrue(trie.getEvictions() > 0);
+        // 最新的记录保留，最早的记录已被淘汰
+        assertFalse(trie.isAllowed(bits("10.0.0.20")[0], bits("10.0.0.20")[1], SINCE));
+        assertTrue(trie.isAllowed(bits("10.0.0.1")[0], bits("10.0.0.1")[1], SINCE));
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws IOException {
+        int[] limits4 = limits(32, 1);
+        limits4[24] = 3;
+        int[] limits6 = limits(64, 1);
+        IpPrefixTrie trie = trie(limits4, limits6);
+        record(trie, "1.2.3.4", 100);
+        record(trie, "2001:db8::1", 200);
+
+        List<Object[]> entries = new ArrayList<>();
+        trie.forEach((hi, lo, len, times) -> entries.add(new Object[]{hi, lo, len, times}));
+        assertEquals(3, entries.size());
+
+        IpPrefixTrie restored = trie(limits4, limits6);
+        for (Object[] e : entries) {
+            restored.restore((Long) e[0], (Long) e[1], (Integer) e[2], (long[]) e[3], SINCE);
+        }
+        assertEquals(3, restored.size());
+        assertFalse(restored.isAllowed(bits("1.2.3.4")[0], bits("1.2.3.4")[1], SINCE));
+        assertTrue(restored.isAllowed(bits("1.2.3.5")[0], bits("1.2.3.5")[1], SINCE));
+        assertFalse(restored.isAllowed(bits("2001:db8::9")[0], bits("2001:db8::9")[1], SINCE));
+    }
+
+    private static IpPrefixTrie trie(int[] limits4, int[] limits6) {
+        IpPrefixTrie trie = new IpPrefixTrie(1000);
+        trie.setLimits(limits4, limits6);
+        return trie;
+    }
+
+    private static int[] limits(int len, int limit) {
+        int[] limits = new int[len <= 32 ? 33 : 129];
+        limits[len] = limit;
+        return limits;
+    }
+
+    private static boolean record(IpPrefixTrie trie, String ip, long time) throws UnknownHostException {
+        long[] addr = bits(ip);
+        return trie.tryRecord(addr[0], addr[1], time, SINCE);
+    }
+
+    private static long[] bits(String ip) throws UnknownHostException {
+        return IpPrefixTrie.toBits(InetAddress.getByName(ip));
+    }
+}
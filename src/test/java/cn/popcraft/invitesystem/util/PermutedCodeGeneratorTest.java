@@ -0,0 +1,109 @@
+package cn.popcraft.invitesystem.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PermutedCodeGeneratorTest {
+
+    @Test
+    public void capacityIsAlphabetPowerOfLength() {
+        assertEquals(243, new PermutedCodeGenerator("s", "ABC", 5).getCapacity());
+        assertEquals(62L * 62 * 62 * 62 * 62 * 62, new PermutedCodeGenerator("s", PermutedCodeGenerator.BASE62, 6).getCapacity());
+    }
+
+    @Test
+    public void everySequenceMapsToADistinctCode() {
+        // 243 = 3^5 不是 4 的幂，Feistel 网络作用于 [0, 256)，超出范围的结果需要 cycle walking
+        assertBijective(new PermutedCodeGenerator("secret", "ABC", 5));
+        // 36^3 = 46656，位宽 16，同样需要 cycle walking
+        assertBijective(new PermutedCodeGenerator("secret", PermutedCodeGenerator.BASE36, 3));
+    }
+
+    @Test
+    public void bijectiveForPowerOfTwoCapacity() {
+        // 2^8 = 256，位宽恰好为偶数，不需要 cycle walking
+        assertBijective(new PermutedCodeGenerator("secret", "01", 8));
+    }
+
+    @Test
+    public void bijectiveForTinyDomains() {
+        assertBijective(new PermutedCodeGenerator("secret", "AB", 1));
+        assertBijective(new PermutedCodeGenerator("secret", "ABC", 1));
+        assertBijective(new PermutedCodeGenerator("secret", "ABCDE", 2));
+    }
+
+    @Test
+    public void sameSecretGivesSameCodes() {
+        PermutedCodeGenerator a = new PermutedCodeGenerator("secret", PermutedCodeGenerator.BASE62, 8);
+        PermutedCodeGenerator b = new PermutedCodeGenerator("secret", PermutedCodeGenerator.BASE62, 8);
+        for (long i = 0; i < 1000; i++) {
+            assertEquals(a.generate(i), b.generate(i));
+        }
+    }
+
+    @Test
+    public void differentSecretsGiveDifferentCodes() {
+        PermutedCodeGenerator a = new PermutedCodeGenerator("secret-a", PermutedCodeGenerator.BASE62, 8);
+        PermutedCodeGenerator b = new PermutedCodeGenerator("secret-b", PermutedCodeGenerator.BASE62, 8);
+        int same = 0;
+        for (long i = 0; i < 1000; i++) {
+            if (a.generate(i).equals(b.generate(i))) {
+                same++;
+            }
+        }
+        assertEquals(0, same);
+    }
+
+    @Test
+    public void consecutiveSequencesDoNotLookSequential() {
+        PermutedCodeGenerator generator = new PermutedCodeGenerator("secret", PermutedCodeGenerator.BASE62, 8);
+        String first = generator.generate(0);
+        String second = generator.generate(1);
+
+        assertNotEquals(first, second);
+        // 相邻序号的邀请码不应只有最后一位不同
+        assertNotEquals(first.substring(0, 7), second.substring(0, 7));
+    }
+
+    @Test
+    public void codesUseOnlyTheAlphabetAndFixedLength() {
+        PermutedCodeGenerator generator = new PermutedCodeGenerator("secret", PermutedCodeGenerator.BASE36, 8);
+        for (long i = 0; i < 1000; i++) {
+            String code = generator.generate(i);
+            assertEquals(8, code.length());
+            assertTrue(code, code.matches("[A-Z0-9]+"));
+        }
+        // 最后一个序号也能生成
+        assertEquals(8, generator.generate(generator.getCapacity() - 1).length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSequenceBeyondCapacity() {
+        PermutedCodeGenerator generator = new PermutedCodeGenerator("secret", "ABC", 5);
+        generator.generate(generator.getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeSequence() {
+        new PermutedCodeGenerator("secret", "ABC", 5).generate(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLengthThatOverflows() {
+        new PermutedCodeGenerator("secret", PermutedCodeGenerator.BASE62, 12);
+    }
+
+    private static void assertBijective(PermutedCodeGenerator generator) {
+        Set<String> codes = new HashSet<>();
+        for (long i = 0; i < generator.getCapacity(); i++) {
+            assertTrue("duplicate code at sequence " + i, codes.add(generator.generate(i)));
+        }
+        assertEquals(generator.getCapacity(), codes.size());
+    }
+}
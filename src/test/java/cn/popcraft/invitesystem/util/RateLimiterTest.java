@@ -0,0 +1,150 @@
+package cn.popcraft.invitesystem.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    @Test
+    public void allowsBurstUpToCapacity() {
+        RateLimiter<String> limiter = new RateLimiter<>(3, 1, TimeUnit.HOURS);
+
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        long wait = limiter.tryAcquire("a");
+        assertTrue(wait > 0);
+        assertTrue(wait <= TimeUnit.HOURS.toNanos(1));
+        assertEquals(1, limiter.getRejected());
+        // 不同的键互不影响
+        assertEquals(0, limiter.tryAcquire("b"));
+    }
+
+    @Test
+    public void refillsOneTokenPerInterval() throws InterruptedException {
+        RateLimiter<String> limiter = new RateLimiter<>(2, 100, TimeUnit.MILLISECONDS);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+
+        Thread.sleep(150);
+        // 只补充了一个令牌
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+
+        Thread.sleep(250);
+        // 补满后最多连续执行 capacity 次
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void refundReturnsToken() {
+        RateLimiter<String> limiter = new RateLimiter<>(1, 1, TimeUnit.HOURS);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+
+        limiter.refund("a");
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void refundOfUnknownKeyIsIgnored() {
+        RateLimiter<String> limiter = new RateLimiter<>(1, 1, TimeUnit.HOURS);
+        limiter.refund("missing");
+
+        assertEquals(0, limiter.size());
+        assertEquals(0, limiter.tryAcquire("missing"));
+        assertTrue(limiter.tryAcquire("missing") > 0);
+    }
+
+    @Test
+    public void zeroCapacityDisablesLimit() {
+        RateLimiter<String> limiter = new RateLimiter<>(0, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.tryAcquire("a"));
+        }
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    public void sweepRemovesOnlyRefilledBuckets() throws InterruptedException {
+        RateLimiter<String> limiter = new RateLimiter<>(1, 50, TimeUnit.MILLISECONDS);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("b"));
+        assertEquals(2, limiter.size());
+
+        // 令牌还没补满，不能移除
+        assertEquals(0, limiter.sweep());
+
+        Thread.sleep(100);
+        assertEquals(2, limiter.sweep());
+        assertEquals(0, limiter.size());
+        // 移除后重新获取得到一个新桶
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    public void sweptBucketDoesNotLoseConsumedTokens() {
+        RateLimiter<String> limiter = new RateLimiter<>(1, 1, TimeUnit.HOURS);
+        assertEquals(0, limiter.tryAcquire("a"));
+
+        // 桶还在冷却中，清理不会把它重置
+        assertEquals(0, limiter.sweep());
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void reconfigureKeepsExistingBuckets() {
+        RateLimiter<String> limiter = new RateLimiter<>(1, 1, TimeUnit.HOURS);
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+
+        limiter.configure(3, 1, TimeUnit.HOURS);
+        // 容量增加后可以继续获取
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void concurrentAcquiresNeverExceedCapacity() throws InterruptedException {
+        RateLimiter<String> limiter = new RateLimiter<>(50, 1, TimeUnit.HOURS);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100; i++) {
+                    if (limiter.tryAcquire("shared") == 0) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(50, granted.get());
+        assertEquals(750, limiter.getRejected());
+    }
+}